@@ -62,6 +62,7 @@ public class Annotations {
     public static final String MARSHALS_POINTER = "Lorg/robovm/rt/bro/annotation/MarshalsPointer;";
     public static final String MARSHALS_VALUE = "Lorg/robovm/rt/bro/annotation/MarshalsValue;";
     public static final String MARSHALS_ARRAY = "Lorg/robovm/rt/bro/annotation/MarshalsArray;";
+    public static final String USES_ARENA = "Lorg/robovm/rt/bro/annotation/UsesArena;";
     public static final String AFTER_BRIDGE_CALL = "Lorg/robovm/rt/bro/annotation/AfterBridgeCall;";
     public static final String AFTER_CALLBACK_CALL = "Lorg/robovm/rt/bro/annotation/AfterCallbackCall;";
     public static final String BY_VAL = "Lorg/robovm/rt/bro/annotation/ByVal;";
@@ -69,6 +70,7 @@ public class Annotations {
     public static final String VARIADIC = "Lorg/robovm/rt/bro/annotation/Variadic;";
     public static final String WEAKLY_LINKED = "Lorg/robovm/rt/annotation/WeaklyLinked;";
     public static final String STRONGLY_LINKED = "Lorg/robovm/rt/annotation/StronglyLinked;";
+    public static final String LEAF_NATIVE = "Lorg/robovm/rt/annotation/LeafNative;";
 
     public static boolean hasAnnotation(Host host, String annotationType) {
         return getAnnotation(host, annotationType) != null;
@@ -174,6 +176,10 @@ public class Annotations {
         return hasAnnotation(method, STRUCT_MEMBER);
     }
     
+    public static boolean hasUsesArenaAnnotation(SootMethod method) {
+        return hasAnnotation(method, USES_ARENA);
+    }
+    
     public static boolean hasGlobalValueAnnotation(SootMethod method) {
         return hasAnnotation(method, GLOBAL_VALUE);
     }
@@ -250,6 +256,10 @@ public class Annotations {
         return hasAnnotation(host, STRONGLY_LINKED);
     }
 
+    public static boolean hasLeafNativeAnnotation(SootMethod method) {
+        return hasAnnotation(method, LEAF_NATIVE);
+    }
+
     public static int getVariadicParameterIndex(SootMethod method) {
         AnnotationTag annotation = getAnnotation(method, VARIADIC);
         return readIntElem(annotation, "value", 0);
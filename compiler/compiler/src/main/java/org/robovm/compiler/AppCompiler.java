@@ -490,6 +490,9 @@ public class AppCompiler {
         if (!Thread.currentThread().isInterrupted()) {
             long duration = System.currentTimeMillis() - start;
             config.getLogger().info("Compiled %d classes in %.2f seconds", compiledCount, duration / 1000.0);
+            // Makes loading the ClazzInfos of these classes cheap in the
+            // next build
+            config.getClazzes().updateClazzInfoIndexes(linkClasses);
         }
 
         return linkClasses;
@@ -684,6 +687,8 @@ public class AppCompiler {
                     builder.installDir(new File(args[++i]));
                 } else if ("-cache".equals(args[i])) {
                     builder.cacheDir(new File(args[++i]));
+                } else if ("-sharedcache".equals(args[i])) {
+                    builder.sharedCacheDir(new File(args[++i]));
                 } else if ("-home".equals(args[i])) {
                     builder.home(new Config.Home(new File(args[++i])));
                 } else if ("-tmp".equals(args[i])) {
@@ -719,6 +724,8 @@ public class AppCompiler {
                     builder.addProperty(name, value);
                 } else if ("-debug".equals(args[i])) {
                     builder.debug(true);
+                } else if ("-lto".equals(args[i])) {
+                    builder.lto(true);
                 } else if ("-use-debug-libs".equals(args[i])) {
                     builder.useDebugLibs(true);
                 } else if ("-dump-intermediates".equals(args[i])) {
@@ -1072,6 +1079,10 @@ public class AppCompiler {
                          + "                        archives to search for class files.");
         System.err.println("  -cache <dir>          Directory where cached compiled class files will be placed.\n" 
                          + "                        Default is ~/.robovm/cache");
+        System.err.println("  -sharedcache <dir>    Shared object file cache consulted for classes not found\n" 
+                         + "                        in -cache, e.g. one populated by a CI server. Entries are\n" 
+                         + "                        keyed on class contents and are added to the shared cache\n" 
+                         + "                        if it's writable.");
         System.err.println("  -clean                Compile class files even if a compiled version already \n" 
                          + "                        exists in the cache.");
         System.err.println("  -d <dir>              Install the generated executable and other files in <dir>.\n" 
@@ -1128,6 +1139,8 @@ public class AppCompiler {
                          + "                        file for iOS apps). The archive will be created in the\n" 
                          + "                        install dir specified using -d.");
         System.err.println("  -debug                Generates debug information");
+        System.err.println("  -lto                  Inlines small methods across class boundaries when\n" 
+                         + "                        linking. Ignored in debug builds.");
         System.err.println("  -use-debug-libs       Links against debug versions of the RoboVM VM libraries");
         System.err.println("  -libs <list>          : separated list of static library files (.a), object\n"
                          + "                        files (.o) and system libraries that should be included\n" 
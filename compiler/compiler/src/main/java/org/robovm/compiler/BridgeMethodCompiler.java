@@ -236,6 +236,8 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
         boolean dynamic = readBooleanElem(bridgeAnnotation, "dynamic", false);
         boolean optional = readBooleanElem(bridgeAnnotation, "optional", false);
         boolean useCWrapper = requiresCWrapper(method);
+        boolean arena = readBooleanElem(bridgeAnnotation, "arena", true) && needsArena(method, dynamic);
+        long flags = MarshalerFlags.CALL_TYPE_BRIDGE | (arena ? MarshalerFlags.ARENA : 0);
         
         Function fn = createMethodFunction(method);
         moduleBuilder.addFunction(fn);
@@ -292,13 +294,27 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
         FunctionType targetFnType = getBridgeFunctionType(method, dynamic, false);
         Type[] targetParameterTypes = targetFnType.getParameterTypes();
         
+        // Remember the position of the thread's bridge call Arena. Any native
+        // memory allocated from it while marshaling the arguments is released
+        // once the return value has been marshaled or an exception has been
+        // thrown by a marshaler or the native function.
+        Value arenaMark = null;
+        BasicBlockRef bbArenaFailure = null;
+        if (arena) {
+            arenaMark = call(fn, arenaInvokestatic("markBridgeCall", "()J").getFunctionRef(), env);
+            BasicBlockRef bbArenaSuccess = fn.newBasicBlockRef(new Label("arenaSuccess"));
+            bbArenaFailure = fn.newBasicBlockRef(new Label("arenaFailure"));
+            trycatchAllEnter(fn, env, bbArenaSuccess, bbArenaFailure);
+            fn.newBasicBlock(bbArenaSuccess.getLabel());
+        }
+
         if (!method.isStatic()) {
             MarshalerMethod marshalerMethod = config.getMarshalerLookup().findMarshalerMethod(new MarshalSite(method, MarshalSite.RECEIVER));
             Type nativeType = targetParameterTypes[0];
             // in case of EnumValue native type will be primitive, handle it as primitive type with marshaller
             if (nativeType instanceof PrimitiveType) {
                 Value nativeValue = marshalValueObjectToNative(fn, marshalerMethod, nativeType, env,
-                        args.get(0).getValue(), MarshalerFlags.CALL_TYPE_BRIDGE);
+                        args.get(0).getValue(), flags);
                 args.set(0, new Argument(nativeValue));
             } else {
                 MarshaledArg marshaledArg = new MarshaledArg();
@@ -306,7 +322,7 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
                 marshaledArgs.add(marshaledArg);
                 Value nativeValue = marshalObjectToNative(fn, marshalerMethod, marshaledArg,
                         useCWrapper ? I8_PTR : nativeType, env, args.get(0).getValue(),
-                        MarshalerFlags.CALL_TYPE_BRIDGE);
+                        flags);
                 args.set(0, new Argument(nativeValue));
             }
         }
@@ -330,7 +346,7 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
 
                 if (nativeType instanceof PrimitiveType) {
                     Value nativeValue = marshalValueObjectToNative(fn, marshalerMethod, nativeType, env, 
-                            args.get(argIdx).getValue(), MarshalerFlags.CALL_TYPE_BRIDGE);
+                            args.get(argIdx).getValue(), flags);
                     args.set(argIdx, new Argument(nativeValue));
                 } else {
                     ParameterAttribute[] parameterAttributes = new ParameterAttribute[0];
@@ -346,7 +362,7 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
                     marshaledArgs.add(marshaledArg);
                     Value nativeValue = marshalObjectToNative(fn, marshalerMethod, marshaledArg, 
                             useCWrapper ? I8_PTR : nativeType, env, args.get(argIdx).getValue(),
-                            MarshalerFlags.CALL_TYPE_BRIDGE);
+                            flags);
                     args.set(argIdx, new Argument(nativeValue, parameterAttributes));
                 }
                 
@@ -356,7 +372,7 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
             
             argIdx++;
         }        
-        
+
         Variable structResult = null;
         Value targetFnRef = null;
         
@@ -395,7 +411,7 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
         trycatchLeave(fn, env);
         popNativeFrame(fn);
 
-        updateObject(method, fn, env, MarshalerFlags.CALL_TYPE_BRIDGE, marshaledArgs);
+        updateObject(method, fn, env, flags, marshaledArgs);
         
         // Marshal the return value
         if (needsMarshaler(method.getReturnType())) {
@@ -420,6 +436,13 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
             result = marshalNativeToPrimitive(fn, method, result);
         }
         
+        // The return value may point into memory allocated for an argument
+        // so the Arena must not be reset until it has been marshaled.
+        if (arena) {
+            trycatchLeave(fn, env);
+            leaveArena(fn, env, arenaMark);
+        }
+        
         fn.add(new Ret(result));
         
         fn.newBasicBlock(bbFailure.getLabel());
@@ -430,14 +453,57 @@ public class BridgeMethodCompiler extends BroMethodCompiler {
         
         // Call Marshaler.updateObject() for each object that was marshaled before
         // the call.
-        updateObject(method, fn, env, MarshalerFlags.CALL_TYPE_BRIDGE, marshaledArgs);
+        updateObject(method, fn, env, flags, marshaledArgs);
         
         call(fn, BC_THROW, env, ex);
         fn.add(new Unreachable());
         
+        if (arena) {
+            // Reached if the native function, a marshaler or updateObject()
+            // has thrown an exception.
+            fn.newBasicBlock(bbArenaFailure.getLabel());
+            trycatchLeave(fn, env);
+            Value arenaEx = call(fn, BC_EXCEPTION_CLEAR, env);
+            leaveArena(fn, env, arenaMark);
+            call(fn, BC_THROW, env, arenaEx);
+            fn.add(new Unreachable());
+        }
+        
         return fn;
     }
 
+    /**
+     * Returns {@code true} if any of the arguments of the specified
+     * {@code @Bridge} method is marshaled using a marshaler method which
+     * allocates native memory from the {@code @Bridge} call arena, i.e. which
+     * has the {@code @UsesArena} annotation.
+     */
+    private boolean needsArena(SootMethod method, boolean dynamic) {
+        for (int i = dynamic ? 1 : 0; i < method.getParameterCount(); i++) {
+            if (needsMarshaler(method.getParameterType(i))) {
+                MarshalerMethod marshalerMethod = config.getMarshalerLookup()
+                        .findMarshalerMethod(new MarshalSite(method, i));
+                if (hasUsesArenaAnnotation(marshalerMethod.getMethod())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Invokestatic arenaInvokestatic(String name, String desc) {
+        Invokestatic invokestatic = new Invokestatic(getInternalName(sootMethod.getDeclaringClass()),
+                "org/robovm/rt/bro/Arena", name, desc);
+        trampolines.add(invokestatic);
+        return invokestatic;
+    }
+
+    private void leaveArena(Function fn, Value env, Value arenaMark) {
+        if (arenaMark != null) {
+            call(fn, arenaInvokestatic("leaveBridgeCall", "(J)V").getFunctionRef(), env, arenaMark);
+        }
+    }
+
     private void updateObject(SootMethod method, Function fn, Value env, long flags, List<MarshaledArg> marshaledArgs) {
         for (MarshaledArg value : marshaledArgs) {
             MarshalerMethod marshalerMethod = config.getMarshalerLookup().findMarshalerMethod(new MarshalSite(method, value.paramIndex));
@@ -44,6 +44,8 @@ public abstract class Bro {
         public static final long CALL_TYPE_STRUCT_MEMBER        = 2 << 0;
         public static final long CALL_TYPE_GLOBAL_VALUE         = 3 << 0;
         public static final long CALL_TYPE_PTR                  = 4 << 0;
+
+        public static final long ARENA                          = 1 << 3;
     }
     
     public static boolean needsMarshaler(soot.Type t) {
@@ -17,11 +17,9 @@
 package org.robovm.compiler;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Triple;
 import org.robovm.compiler.clazz.Clazz;
 import org.robovm.compiler.clazz.ClazzInfo;
-import org.robovm.compiler.clazz.Dependency;
 import org.robovm.compiler.clazz.MethodInfo;
 import org.robovm.compiler.config.Arch;
 import org.robovm.compiler.config.Config;
@@ -105,14 +103,9 @@ import soot.jimple.internal.JReturnVoidStmt;
 import soot.tagkit.ConstantValueTag;
 import soot.tagkit.Tag;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
@@ -127,8 +120,6 @@ import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.robovm.compiler.Annotations.*;
 import static org.robovm.compiler.Functions.*;
@@ -141,7 +132,6 @@ import static org.robovm.compiler.llvm.Type.*;
  * @version $Id$
  */
 public class ClassCompiler {
-    private static final int DUMMY_METHOD_SIZE = 0x01abcdef;
     public static final int CI_PUBLIC = 0x1;
     public static final int CI_FINAL = 0x2;
     public static final int CI_INTERFACE = 0x4;
@@ -242,50 +232,22 @@ public class ClassCompiler {
         this.objcMethodCompiler = new ObjCMemberPlugin.MethodCompiler(config);
     }
     
-    public boolean mustCompile(Clazz clazz) {
+    public boolean mustCompile(Clazz clazz) throws IOException {
         File oFile = config.getOFile(clazz);
-        if (!oFile.exists() || oFile.lastModified() < clazz.lastModified() || oFile.length() == 0) {
-            return true;
-        }
-        
-        ClazzInfo ci = clazz.getClazzInfo();
-        if (ci == null) {
-            return true;
-        }
-        
-        Set<Dependency> dependencies = ci.getAllDependencies();
-        for (Dependency dep : dependencies) {
-            Clazz depClazz = config.getClazzes().load(dep.getClassName());
-            if (depClazz == null) {
-                if (dep.getPath() != null) {
-                    // depClazz was available the last time clazz was compiled but is now gone
-                    return true;
-                }
-            } else {
-                if (dep.getPath() == null) {
-                    // depClazz was not available the last time clazz was compiled but is now available
-                    return true;
-                }
-                if (!dep.getPath().equals(depClazz.getPath().getFile().getAbsolutePath())) {
-                    // depClazz was located in another place the last time clazz was built
-                    return true;
-                }
-                if (depClazz.isInBootClasspath() != dep.isInBootClasspath()) {
-                    // depClazz has moved to/from the bootclasspath since the last time clazz was built
-                    return true;
-                }
-                if (depClazz.lastModified() > oFile.lastModified()) {
-                    // depClazz has been changed since the last time clazz was built 
-                    return true;
-                }
-            }
-        }
-        
+        ClazzInfo ci = oFile.exists() && oFile.length() > 0 ? clazz.getClazzInfo() : null;
         // No class or interface has zero dependencies (we always add java.lang.Object as a dependency)
         // If dependencies is empty it probably means that an error occurred while reading the
-        // serialized dependencies. By returning true here in that case the class will be recompiled
-        // and the dependencies regenerated.
-        return dependencies.isEmpty();
+        // serialized dependencies. The class will be recompiled and the dependencies regenerated.
+        // The cache key covers the bytes of the class and of all its dependencies so unlike
+        // timestamps it isn't affected by touching or re-extracting unchanged class files.
+        // In LTO mode the object file is generated at link time from the bitcode
+        // file which therefore also has to be present.
+        if (ci != null && ci.getCacheKey() != null && !ci.getAllDependencies().isEmpty()
+                && (!config.isLto() || config.getLtoBcFile(clazz).exists())
+                && ci.getCacheKey().equals(ObjectFileCache.getCacheKey(config, clazz, ci))) {
+            return false;
+        }
+        return !ObjectFileCache.restore(config, clazz);
     }
     
     public void compile(Clazz clazz, Executor executor, ClassCompilerListener listener) throws IOException {
@@ -324,6 +286,7 @@ public class ClassCompiler {
             public void run() {
                 try {
                     generateMachineCode(config, clazz, llData, cCode);
+                    ObjectFileCache.publish(config, clazz);
                     listener.success(clazz);
                 } catch (Throwable t) {
                     listener.failure(clazz, t);
@@ -390,90 +353,14 @@ public class ClassCompiler {
                     passManager.run(module);
                 }
 
-                if (config.isDumpIntermediates()) {
-                    File bcFile = config.getBcFile(clazz);
-                    bcFile.getParentFile().mkdirs();
-                    module.writeBitcode(bcFile);
-                }
-
-                String triple = config.getTriple();
-                Target target = Target.lookupTarget(triple);
-                try (TargetMachine targetMachine = target.createTargetMachine(triple,
-                        config.getArch().getLlvmCpu(), null, 
-                        config.isDebug()? CodeGenOptLevel.CodeGenLevelNone: null,
-                        RelocMode.RelocPIC, null)) {
-                    targetMachine.setAsmVerbosityDefault(true);
-                    targetMachine.setFunctionSections(true);
-                    targetMachine.setDataSections(true);
-                    targetMachine.getOptions().setNoFramePointerElim(true);
-                    targetMachine.getOptions().setPositionIndependentExecutable(!config.isDebug()); // NOTE: Doesn't have any effect on x86. See #503.
-
-                    ByteArrayOutputStream output = new ByteArrayOutputStream(256 * 1024);
-                    targetMachine.emit(module, output, CodeGenFileType.AssemblyFile);
-
-                    byte[] asm = output.toByteArray();
-                    output.reset();
-                    patchAsmWithFunctionSizes(config, clazz, new ByteArrayInputStream(asm), output);
-                    asm = output.toByteArray();
-
-                    if (config.isDumpIntermediates()) {
-                        File sFile = config.getSFile(clazz);
-                        sFile.getParentFile().mkdirs();
-                        FileUtils.writeByteArrayToFile(sFile, asm);
-                    }
-
-                    oFile.getParentFile().mkdirs();
-                    ByteArrayOutputStream oFileBytes = new ByteArrayOutputStream();
-                    targetMachine.assemble(asm, clazz.getClassName(), oFileBytes);                                                                                               
-                    new HfsCompressor().compress(oFile, oFileBytes.toByteArray(), config);
-
-                    ModuleBuilder linesMb;
-                    ModuleBuilder debugInfoMb = null;
-                    try (ObjectFile objectFile = ObjectFile.load(oFile)) {
-                        // notify plugins
-                        for (CompilerPlugin plugin : config.getCompilerPlugins()) {
-                            plugin.afterObjectFile(config, clazz, oFile, objectFile);
-                        }
-
-                        /*
-                         * Read out line number info from the .o file if any and
-                         * assemble into a separate .o file.
-                         */
-                        linesMb = buildLineNumberData(config, clazz, objectFile);
-
-                        /*
-                         * read out debug info binary data amd assemble into a separate .o file
-                         */
-                        if (config.isDebug()) {
-                            debugInfoMb = buildDebugInfoData(config, clazz, objectFile);
-                        }
-                    }
-
-                    if (linesMb != null) {
-                        File linesLlFile = config.isDumpIntermediates() ? config.getLinesLlFile(clazz) : null;
-                        File linesOFile = config.getLinesOFile(clazz);
-                        createObjectFileFromData(config, context, targetMachine, linesMb, clazz.getClassName() + ".lines",
-                                linesLlFile, linesOFile);
-                    } else {
-                        // Make sure there's no stale lines.o file lingering
-                        File linesOFile = config.getLinesOFile(clazz);
-                        if (linesOFile.exists()) {
-                            linesOFile.delete();
-                        }
-                    }
-
-                    if (debugInfoMb != null) {
-                        File debugInfoLlFile = config.isDumpIntermediates() ? config.getDebugInfoLlFile(clazz) : null;
-                        File debugInfoOFile = config.getDebugInfoOFile(clazz);
-                        createObjectFileFromData(config, context, targetMachine, debugInfoMb, clazz.getClassName() + ".debuginfo",
-                                debugInfoLlFile, debugInfoOFile);
-                    } else {
-                        // Make sure there's no stale debuginfo.o file lingering
-                        File debugInfoOFile = config.getDebugInfoOFile(clazz);
-                        if (debugInfoOFile.exists()) {
-                            debugInfoOFile.delete();
-                        }
-                    }
+                if (config.isLto()) {
+                    // Keep the optimized bitcode. LtoCompiler generates the object
+                    // file once the set of linked classes is known.
+                    File ltoBcFile = config.getLtoBcFile(clazz);
+                    ltoBcFile.getParentFile().mkdirs();
+                    module.writeBitcode(ltoBcFile);
+                } else {
+                    generateObjectFile(config, clazz, context, module);
                 }
             }
         } catch (Throwable t) {
@@ -493,6 +380,95 @@ public class ClassCompiler {
         }
     }
 
+    /**
+     * Generates the object file of the specified class from an optimized
+     * {@link Module}. Also generates the line number and debug info object
+     * files and notifies the {@link CompilerPlugin}s.
+     */
+    static void generateObjectFile(Config config, Clazz clazz, Context context, Module module)
+            throws IOException, InterruptedException {
+
+        File oFile = config.getOFile(clazz);
+        if (config.isDumpIntermediates()) {
+            File bcFile = config.getBcFile(clazz);
+            bcFile.getParentFile().mkdirs();
+            module.writeBitcode(bcFile);
+        }
+
+        String triple = config.getTriple();
+        Target target = Target.lookupTarget(triple);
+        try (TargetMachine targetMachine = target.createTargetMachine(triple,
+                config.getArch().getLlvmCpu(), null, 
+                config.isDebug()? CodeGenOptLevel.CodeGenLevelNone: null,
+                RelocMode.RelocPIC, null)) {
+            targetMachine.setAsmVerbosityDefault(true);
+            targetMachine.setFunctionSections(true);
+            targetMachine.setDataSections(true);
+            targetMachine.getOptions().setNoFramePointerElim(true);
+            targetMachine.getOptions().setPositionIndependentExecutable(!config.isDebug()); // NOTE: Doesn't have any effect on x86. See #503.
+
+            oFile.getParentFile().mkdirs();
+            ByteArrayOutputStream oFileBytes = new ByteArrayOutputStream(256 * 1024);
+            targetMachine.emit(module, oFileBytes, CodeGenFileType.ObjectFile);
+            new HfsCompressor().compress(oFile, oFileBytes.toByteArray(), config);
+
+            if (config.isDumpIntermediates()) {
+                // Only for inspection. The .o file isn't assembled from it.
+                File sFile = config.getSFile(clazz);
+                sFile.getParentFile().mkdirs();
+                targetMachine.emit(module, sFile, CodeGenFileType.AssemblyFile);
+            }
+
+            ModuleBuilder linesMb;
+            ModuleBuilder debugInfoMb = null;
+            try (ObjectFile objectFile = ObjectFile.load(oFile)) {
+                // notify plugins
+                for (CompilerPlugin plugin : config.getCompilerPlugins()) {
+                    plugin.afterObjectFile(config, clazz, oFile, objectFile);
+                }
+
+                /*
+                 * Read out line number info and function sizes from the .o
+                 * file and assemble into a separate .o file.
+                 */
+                linesMb = buildLineNumberData(config, clazz, objectFile);
+
+                /*
+                 * read out debug info binary data amd assemble into a separate .o file
+                 */
+                if (config.isDebug()) {
+                    debugInfoMb = buildDebugInfoData(config, clazz, objectFile);
+                }
+            }
+
+            if (linesMb != null) {
+                File linesLlFile = config.isDumpIntermediates() ? config.getLinesLlFile(clazz) : null;
+                File linesOFile = config.getLinesOFile(clazz);
+                createObjectFileFromData(config, context, targetMachine, linesMb, clazz.getClassName() + ".lines",
+                        linesLlFile, linesOFile);
+            } else {
+                // Make sure there's no stale lines.o file lingering
+                File linesOFile = config.getLinesOFile(clazz);
+                if (linesOFile.exists()) {
+                    linesOFile.delete();
+                }
+            }
+
+            if (debugInfoMb != null) {
+                File debugInfoLlFile = config.isDumpIntermediates() ? config.getDebugInfoLlFile(clazz) : null;
+                File debugInfoOFile = config.getDebugInfoOFile(clazz);
+                createObjectFileFromData(config, context, targetMachine, debugInfoMb, clazz.getClassName() + ".debuginfo",
+                        debugInfoLlFile, debugInfoOFile);
+            } else {
+                // Make sure there's no stale debuginfo.o file lingering
+                File debugInfoOFile = config.getDebugInfoOFile(clazz);
+                if (debugInfoOFile.exists()) {
+                    debugInfoOFile.delete();
+                }
+            }
+        }
+    }
+
     private static void createObjectFileFromData(Config config, Context context, TargetMachine targetMachine, ModuleBuilder mb,
                                                  String dataName, File llFile, File oFile) throws IOException, InterruptedException {
         byte[] data = mb.build().toString().getBytes(StandardCharsets.UTF_8);
@@ -512,8 +488,17 @@ public class ClassCompiler {
         ModuleBuilder linesMb = null;
         String symbolPrefix = config.getOs().getFamily() == OS.Family.darwin ? "_" : "";
         symbolPrefix += Symbols.EXTERNAL_SYMBOL_PREFIX;
+        Map<String, String> sizeSymbols = getFunctionSizeSymbols(config, clazz);
 
         for (Symbol symbol : objectFile.getSymbols()) {
+            String sizeSymbol = sizeSymbols.get(symbol.getName());
+            if (sizeSymbol != null && symbol.getSize() > 0) {
+                // Override the weak size the info struct points to.
+                if (linesMb == null) {
+                    linesMb = new ModuleBuilder();
+                }
+                linesMb.addGlobal(new Global(sizeSymbol, new IntegerConstant((int) symbol.getSize()), true));
+            }
             if (symbol.getSize() > 0 && symbol.getName().startsWith(symbolPrefix)) {
                 List<LineInfo> lineInfos = objectFile.getLineInfos(symbol);
                 if (!lineInfos.isEmpty()) {
@@ -641,7 +626,7 @@ public class ClassCompiler {
         return debugInfoMb;
     }
 
-    private static PassManager createPassManager(Config config) {
+    static PassManager createPassManager(Config config) {
         PassManager passManager = new PassManager();
         
         if (config.isDebug()) {
@@ -659,85 +644,25 @@ public class ClassCompiler {
         return passManager;
     }
     
-    private static void patchAsmWithFunctionSizes(Config config, Clazz clazz, InputStream inStream, OutputStream outStream) throws IOException {
-        String labelPrefix = config.getOs().getFamily() == OS.Family.darwin ? "_" : "";
-        String localLabelPrefix = config.getOs().getFamily() == OS.Family.darwin ? "L" : ".L";
-        
-        Set<String> functionNames = new HashSet<String>();
-        for (SootMethod method : clazz.getSootClass().getMethods()) {
-            if (!method.isAbstract()) {
-                String name = labelPrefix + Symbols.methodSymbol(method);
-                functionNames.add(name);
-            }
-        }
-        
-        String infoStructLabel = labelPrefix + Symbols.infoStructSymbol(clazz.getInternalName());
-        Pattern methodImplPattern = Pattern.compile("\\s*\\.(?:quad|long)\\s+\"?(" 
-                + Pattern.quote(labelPrefix + Symbols.methodSymbolPrefix(clazz.getInternalName())) 
-                + "[^\\s\"]+)\"?.*");
-        
-        BufferedReader in = null;
-        BufferedWriter out = null;
-        try {
-            in = new BufferedReader(new InputStreamReader(inStream, StandardCharsets.UTF_8));
-            out = new BufferedWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8));
-            String line = null;
-            String currentFunction = null;
-            while ((line = in.readLine()) != null) {
-                if (currentFunction == null) {
-                    out.write(line);
-                    out.write('\n');
-                    int colon = line.indexOf(':');
-                    if (colon != -1) {
-                        String label = line.substring(0, colon);
-                        if (label.startsWith("\"") && label.endsWith("\"")) {
-                            label = label.substring(1, label.length() - 1);
-                        }
-                        if (functionNames.contains(label)) {
-                            currentFunction = label;
-                        } else if (label.equals(infoStructLabel)) {
-                            break;
-                        }
-                    }
-                } else if (line.trim().equals(".cfi_endproc") || line.trim().startsWith(".section") || line.trim().startsWith(".globl")) {
-                    out.write("\"");
-                    out.write(localLabelPrefix);
-                    out.write(currentFunction);
-                    out.write("_end\":\n\n");
-                    currentFunction = null;
-                    out.write(line);
-                    out.write('\n');
-                } else {
-                    out.write(line);
-                    out.write('\n');
-                }
-            }
-            
-            while ((line = in.readLine()) != null) {
-                out.write(line);
-                out.write('\n');
-                Matcher matcher = methodImplPattern.matcher(line);
-                if (matcher.matches()) {
-                    String functionName = matcher.group(1);
-                    if (functionNames.contains(functionName)) {
-                        line = in.readLine();
-                        if (line.contains(String.valueOf(DUMMY_METHOD_SIZE))) {
-                            out.write("\t.long\t");
-                            out.write("\"" + localLabelPrefix + functionName + "_end\" - \"" + functionName + "\"");
-                            out.write('\n');
-                        } else {
-                            out.write(line);
-                            out.write('\n');
-                        }
-                    }
-                }
+    /**
+     * Returns the object file symbols of all functions in the specified class
+     * which have a size in the class' info struct mapped to the symbols of
+     * their sizes. Uses the {@link ClazzInfo} rather than the
+     * {@link SootClass} since this runs on the machine code generation
+     * threads.
+     */
+    private static Map<String, String> getFunctionSizeSymbols(Config config, Clazz clazz) {
+        String symbolPrefix = config.getOs().getFamily() == OS.Family.darwin ? "_" : "";
+        Map<String, String> sizeSymbols = new HashMap<>();
+        for (MethodInfo mi : clazz.getClazzInfo().getMethods()) {
+            if (!mi.isAbstract()) {
+                sizeSymbols.put(symbolPrefix + Symbols.methodSymbol(clazz.getInternalName(), mi.getName(), mi.getDesc()),
+                        Symbols.functionSizeSymbol(clazz.getInternalName(), mi.getName(), mi.getDesc()));
             }
-        } finally {
-            IOUtils.closeQuietly(in);
-            IOUtils.closeQuietly(out);
         }
+        return sizeSymbols;
     }
-    
+
     private void reset() {
         output.reset();
         sootClass = null;
@@ -1035,6 +960,7 @@ public class ClassCompiler {
                 ci.addInvoke(t.getTarget() + "." + ((Invoke) t).getMethodName() + ((Invoke) t).getMethodDesc());
             }
         }
+        ci.setCacheKey(ObjectFileCache.getCacheKey(config, clazz, ci));
         clazz.saveClazzInfo();
     }
 
@@ -1498,7 +1424,11 @@ public class ClassCompiler {
             }
             if (!m.isAbstract()) {
                 body.add(new ConstantBitcast(new FunctionRef(Symbols.methodSymbol(m), getFunctionType(m)), I8_PTR));
-                body.add(new IntegerConstant(DUMMY_METHOD_SIZE)); // Size of function. This value will be modified later by patching the .s file.
+                // Add a weak pointer to the size of the function. The size is 0 until overridden by the
+                // strong definition in the class' lines .o file once the function has been compiled.
+                Global sizeGlobal = new Global(Symbols.functionSizeSymbol(m), Linkage.weak, new IntegerConstant(0));
+                mb.addGlobal(sizeGlobal);
+                body.add(sizeGlobal.ref());
                 if (m.isSynchronized()) {
                     body.add(new ConstantBitcast(new FunctionRef(Symbols.synchronizedWrapperSymbol(m), getFunctionType(m)), I8_PTR));
                 }
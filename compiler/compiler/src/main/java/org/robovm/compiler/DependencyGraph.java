@@ -51,12 +51,35 @@ public class DependencyGraph {
      */
     private final Map<String, MethodNode> methodNodes = new HashMap<>();
     /**
-     * Used to cache reachable nodes between calls to
-     * {@link #findReachableClasses(TreeShakerMode)} /
-     * {@link #findReachableMethods(TreeShakerMode)} when no call to
-     * {@link #add(Clazz, boolean)} has been done in between.
+     * All {@link Node}s indexed by {@link Node#id}.
      */
-    private final Set<Node> reachableNodes = new HashSet<>();
+    private final List<Node> nodes = new ArrayList<>();
+    /**
+     * Ids of the {@link Node}s found to be reachable so far. Edges added by
+     * {@link #add(Clazz, boolean, Collection)} only ever make more nodes
+     * reachable so this is updated incrementally by propagating from the
+     * nodes in {@link #worklist} rather than by traversing the whole graph
+     * from the roots again.
+     */
+    private final BitSet reachable = new BitSet();
+    /**
+     * Ids of the {@link Node}s which are the target of a weak edge from a
+     * reachable node which wasn't followed. Such a node becomes reachable if
+     * it is later found to be strongly linked.
+     */
+    private final BitSet weaklyReached = new BitSet();
+    /**
+     * Ids of the reachable {@link Node}s whose edges haven't been followed
+     * yet.
+     */
+    private int[] worklist = new int[256];
+    private int worklistSize = 0;
+    /**
+     * Set when a reachable {@link MethodNode} turns out to be weakly linked.
+     * This is the only change which can make a reachable node unreachable.
+     * The reachable nodes will then be recalculated from the roots.
+     */
+    private boolean invalid = false;
 
     private final TreeShakerMode treeShakerMode;
 
@@ -72,11 +95,9 @@ public class DependencyGraph {
      *                            survive aggressive tree shaker
      */
     public void add(Clazz clazz, boolean root, Collection<MethodInfo> forcedLinkedMethods) {
-        reachableNodes.clear();
-
         ClassNode classNode = getClassNode(clazz.getInternalName());
-        if (root) {
-            roots.add(classNode);
+        if (root && roots.add(classNode)) {
+            markReachable(classNode);
         }
 
         ClazzInfo ci = clazz.getClazzInfo();
@@ -84,12 +105,12 @@ public class DependencyGraph {
         for (Dependency dep : ci.getDependencies()) {
             if (dep instanceof InvokeMethodDependency) {
                 InvokeMethodDependency mdep = (InvokeMethodDependency) dep;
-                classNode.addEgde(getMethodNode(mdep), mdep.isWeak());
+                addEdge(classNode, getMethodNode(mdep), mdep.isWeak());
             } else if (dep instanceof SuperMethodDependency) {
                 SuperMethodDependency mdep = (SuperMethodDependency) dep;
-                classNode.addEgde(getMethodNode(mdep), mdep.isWeak());
+                addEdge(classNode, getMethodNode(mdep), mdep.isWeak());
             } else {
-                classNode.addEgde(getClassNode(dep.getClassName()), dep.isWeak());
+                addEdge(classNode, getClassNode(dep.getClassName()), dep.isWeak());
             }
         }
 
@@ -112,20 +133,20 @@ public class DependencyGraph {
                     || forcedLinkedMethods.contains(mi));
 
             MethodNode methodNode = getMethodNode(clazz, mi);
-            classNode.addEgde(methodNode, !strong);
-            methodNode.addEgde(classNode, false);
+            addEdge(classNode, methodNode, !strong);
+            addEdge(methodNode, classNode, false);
 
             for (Dependency dep : mi.getDependencies()) {
                 if (dep instanceof InvokeMethodDependency) {
                     InvokeMethodDependency mdep = (InvokeMethodDependency) dep;
-                    methodNode.addEgde(getMethodNode(mdep), mdep.isWeak());
+                    addEdge(methodNode, getMethodNode(mdep), mdep.isWeak());
                 } else if (dep instanceof SuperMethodDependency) {
                     // Reverse the dependency so that the method is strongly
                     // linked if the super method is invoked.
                     SuperMethodDependency mdep = (SuperMethodDependency) dep;
-                    getMethodNode(mdep).addEgde(methodNode, false);
+                    addEdge(getMethodNode(mdep), methodNode, false);
                 } else {
-                    methodNode.addEgde(getClassNode(dep.getClassName()), dep.isWeak());
+                    addEdge(methodNode, getClassNode(dep.getClassName()), dep.isWeak());
                 }
             }
         }
@@ -134,7 +155,8 @@ public class DependencyGraph {
     private ClassNode getClassNode(String className) {
         ClassNode node = classNodes.get(className);
         if (node == null) {
-            node = new ClassNode(className);
+            node = new ClassNode(nodes.size(), className);
+            nodes.add(node);
             classNodes.put(className, node);
         }
         return node;
@@ -145,19 +167,65 @@ public class DependencyGraph {
         String key = owner + "." + name + desc;
         MethodNode node = methodNodes.get(key);
         if (node == null) {
-            node = new MethodNode(owner, name, desc, weaklyLinked, stronglyLinked);
+            node = new MethodNode(nodes.size(), owner, name, desc, weaklyLinked, stronglyLinked);
+            nodes.add(node);
             methodNodes.put(key, node);
         } else {
-            if (weaklyLinked) {
+            if (weaklyLinked && !node.weaklyLinked) {
                 node.weaklyLinked = true;
+                if (treeShakerMode != TreeShakerMode.none && reachable.get(node.id)) {
+                    // May have been reached through a weak edge which
+                    // shouldn't have been followed.
+                    invalid = true;
+                }
             }
-            if (stronglyLinked) {
+            if (stronglyLinked && !node.stronglyLinked) {
                 node.stronglyLinked = true;
+                if (weaklyReached.get(node.id) && isWeakEdgeFollowed(node)) {
+                    markReachable(node);
+                }
             }
         }
         return node;
     }
 
+    private void addEdge(Node from, Node to, boolean weak) {
+        if ((weak ? from.weakEdges : from.strongEdges).add(to) && reachable.get(from.id)) {
+            followEdge(to, weak);
+        }
+    }
+
+    private boolean isWeakEdgeFollowed(Node to) {
+        if (to instanceof MethodNode) {
+            MethodNode mnode = (MethodNode) to;
+            if (treeShakerMode == TreeShakerMode.conservative) {
+                return !mnode.isWeaklyLinked();
+            } else if (treeShakerMode == TreeShakerMode.aggressive) {
+                return mnode.isStronglyLinked() || (!mnode.isWeaklyLinked() && "<init>".equals(mnode.name));
+            }
+            return true;
+        }
+        return treeShakerMode != TreeShakerMode.aggressive;
+    }
+
+    private void followEdge(Node to, boolean weak) {
+        if (!weak || isWeakEdgeFollowed(to)) {
+            markReachable(to);
+        } else {
+            weaklyReached.set(to.id);
+        }
+    }
+
+    private void markReachable(Node node) {
+        if (!reachable.get(node.id)) {
+            reachable.set(node.id);
+            if (worklistSize == worklist.length) {
+                worklist = Arrays.copyOf(worklist, worklistSize << 1);
+            }
+            worklist[worklistSize++] = node.id;
+        }
+    }
+
     private MethodNode getMethodNode(Clazz clazz, MethodInfo mi) {
         return getMethodNode(clazz.getInternalName(), mi.getName(), mi.getDesc(), mi.isWeaklyLinked(),
                 mi.isStronglyLinked());
@@ -174,7 +242,8 @@ public class DependencyGraph {
     public Set<String> findReachableClasses() {
         validateReachableNodes();
         Set<String> classes = new HashSet<>();
-        for (Node node : reachableNodes) {
+        for (int id = reachable.nextSetBit(0); id >= 0; id = reachable.nextSetBit(id + 1)) {
+            Node node = nodes.get(id);
             if (node instanceof ClassNode) {
                 classes.add(((ClassNode) node).className);
             }
@@ -190,7 +259,8 @@ public class DependencyGraph {
     public Set<Triple<String, String, String>> findReachableMethods() {
         validateReachableNodes();
         Set<Triple<String, String, String>> methods = new HashSet<>();
-        for (Node node : reachableNodes) {
+        for (int id = reachable.nextSetBit(0); id >= 0; id = reachable.nextSetBit(id + 1)) {
+            Node node = nodes.get(id);
             if (node instanceof MethodNode) {
                 MethodNode mnode = (MethodNode) node;
                 methods.add(new ImmutableTriple<String, String, String>(mnode.owner, mnode.name, mnode.desc));
@@ -200,51 +270,22 @@ public class DependencyGraph {
     }
 
     private void validateReachableNodes() {
-        if (reachableNodes.isEmpty()) {
+        if (invalid) {
+            invalid = false;
+            reachable.clear();
+            weaklyReached.clear();
+            worklistSize = 0;
             for (ClassNode node : roots) {
-                visitReachableNodes(node, reachableNodes);
+                markReachable(node);
             }
         }
-    }
-
-    private void visitReachableNodes(Node node, Set<Node> visited) {
-        Set<Node> pending = new HashSet<>();
-        Queue<Node> queue = new LinkedList<>();
-        pending.add(node);
-        queue.add(node);
-        Node visiting;
-        while ((visiting = queue.poll()) != null) {
-            if (!pending.remove(visiting))
-                throw new IllegalStateException();
-            if (visited.add(visiting)) {
-                for (Node child : visiting.strongEdges) {
-                    if (pending.add(child)) {
-                        queue.add(child);
-                    }
-                }
-                for (Node child : visiting.weakEdges) {
-                    if (treeShakerMode == TreeShakerMode.conservative && child instanceof MethodNode) {
-                        MethodNode mnode = (MethodNode) child;
-                        if (!mnode.isWeaklyLinked()) {
-                            if (pending.add(child)) {
-                                queue.add(child);
-                            }
-                        }
-                    } else if (treeShakerMode == TreeShakerMode.aggressive) {
-                        if (child instanceof MethodNode) {
-                            MethodNode mnode = (MethodNode) child;
-                            if (mnode.isStronglyLinked() || (!mnode.isWeaklyLinked() && "<init>".equals(mnode.name))) {
-                                if (pending.add(child)) {
-                                    queue.add(child);
-                                }
-                            }
-                        }
-                    } else {
-                        if (pending.add(child)) {
-                            queue.add(child);
-                        }
-                    }
-                }
+        while (worklistSize > 0) {
+            Node node = nodes.get(worklist[--worklistSize]);
+            for (Node child : node.strongEdges) {
+                markReachable(child);
+            }
+            for (Node child : node.weakEdges) {
+                followEdge(child, true);
             }
         }
     }
@@ -257,51 +298,32 @@ public class DependencyGraph {
         return result;
     }
 
+    /**
+     * There's only ever one {@link Node} per class or method in a graph so
+     * nodes use identity equality and their ids as hash codes.
+     */
     private static abstract class Node {
+        final int id;
         private final Set<Node> weakEdges = new HashSet<>();
         private final Set<Node> strongEdges = new HashSet<>();
 
-        public void addEgde(Node to, boolean weak) {
-            (weak ? weakEdges : strongEdges).add(to);
+        Node(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public final int hashCode() {
+            return id;
         }
     }
 
     private static class ClassNode extends Node {
         private final String className;
 
-        private ClassNode(String className) {
+        private ClassNode(int id, String className) {
+            super(id);
             this.className = className;
         }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((className == null) ? 0 : className.hashCode());
-            return result;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            ClassNode other = (ClassNode) obj;
-            if (className == null) {
-                if (other.className != null) {
-                    return false;
-                }
-            } else if (!className.equals(other.className)) {
-                return false;
-            }
-            return true;
-        }
     }
 
     private static class MethodNode extends Node {
@@ -311,7 +333,9 @@ public class DependencyGraph {
         private boolean weaklyLinked;
         private boolean stronglyLinked;
 
-        private MethodNode(String owner, String name, String desc, boolean weaklyLinked, boolean stronglyLinked) {
+        private MethodNode(int id, String owner, String name, String desc, boolean weaklyLinked,
+                boolean stronglyLinked) {
+            super(id);
             this.owner = owner;
             this.name = name;
             this.desc = desc;
@@ -326,51 +350,5 @@ public class DependencyGraph {
         public boolean isStronglyLinked() {
             return stronglyLinked;
         }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((desc == null) ? 0 : desc.hashCode());
-            result = prime * result + ((name == null) ? 0 : name.hashCode());
-            result = prime * result + ((owner == null) ? 0 : owner.hashCode());
-            return result;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            MethodNode other = (MethodNode) obj;
-            if (desc == null) {
-                if (other.desc != null) {
-                    return false;
-                }
-            } else if (!desc.equals(other.desc)) {
-                return false;
-            }
-            if (name == null) {
-                if (other.name != null) {
-                    return false;
-                }
-            } else if (!name.equals(other.name)) {
-                return false;
-            }
-            if (owner == null) {
-                if (other.owner != null) {
-                    return false;
-                }
-            } else if (!owner.equals(other.owner)) {
-                return false;
-            }
-            return true;
-        }
     }
 }
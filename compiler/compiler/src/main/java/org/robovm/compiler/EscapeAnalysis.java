@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.Local;
+import soot.Modifier;
+import soot.RefLikeType;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.VoidType;
+import soot.jimple.AssignStmt;
+import soot.jimple.CastExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.IdentityStmt;
+import soot.jimple.IfStmt;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InstanceOfExpr;
+import soot.jimple.InterfaceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+import soot.jimple.NeExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StaticInvokeExpr;
+import soot.jimple.ThisRef;
+import soot.jimple.VirtualInvokeExpr;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Finds the {@code new} expressions in a method whose objects never escape
+ * the method and can be allocated on the stack by {@link MethodCompiler}.
+ * <p>
+ * An object escapes if it is stored in a field, an array or a static, if it
+ * is returned or thrown, if it is used as a monitor or if it is passed to a
+ * method which lets it escape. Methods are analyzed on demand using their
+ * Jimple bodies. Calls which can't be resolved to a single method (virtual
+ * calls on objects of unknown type, native and abstract methods) let all
+ * their arguments escape. Virtual calls on an object allocated in the
+ * analyzed method are resolved using its exact type.
+ * <p>
+ * Allocations inside loops are never stack allocated since each iteration
+ * would reuse the same stack memory while objects from earlier iterations
+ * may still be referenced.
+ * <p>
+ * Instances of this class aren't thread safe.
+ */
+public class EscapeAnalysis {
+    private static final int MAX_CALL_DEPTH = 6;
+    private static final int MAX_CALLEE_UNITS = 300;
+    private static final int MAX_FIELDS = 32;
+    private static final int MAX_STACK_OBJECTS = 8;
+
+    enum Escape {
+        /** The value doesn't escape. */
+        NONE,
+        /** The value doesn't escape but may be returned to the caller. */
+        RETURNED,
+        /** The value escapes. */
+        ESCAPES;
+
+        Escape merge(Escape other) {
+            return other.ordinal() > ordinal() ? other : this;
+        }
+    }
+
+    private static class Summary {
+        final Escape[] params;
+        final Set<SootClass> classes;
+
+        Summary(Escape[] params, Set<SootClass> classes) {
+            this.params = params;
+            this.classes = classes;
+        }
+    }
+
+    private final Map<SootMethod, Summary> summaries = new HashMap<>();
+    private final Set<SootMethod> inProgress = new HashSet<>();
+    private int depth;
+    private boolean truncated;
+    private Set<SootClass> consulted;
+
+    /**
+     * Forgets the summaries of the methods analyzed so far.
+     */
+    public void reset() {
+        summaries.clear();
+    }
+
+    /**
+     * Returns the {@code new} statements in the specified body which can be
+     * stack allocated. The classes whose method bodies were used to reach
+     * that conclusion are added to {@code dependencies}.
+     */
+    public Set<AssignStmt> findStackAllocations(Body body, Set<SootClass> dependencies) {
+        List<AssignStmt> candidates = null;
+        for (Unit unit : body.getUnits()) {
+            if (unit instanceof AssignStmt && ((AssignStmt) unit).getRightOp() instanceof NewExpr
+                    && ((AssignStmt) unit).getLeftOp() instanceof Local) {
+                SootClass sc = ((NewExpr) ((AssignStmt) unit).getRightOp()).getBaseType().getSootClass();
+                if (canStackAllocate(sc)) {
+                    if (candidates == null) {
+                        candidates = new ArrayList<>();
+                    }
+                    candidates.add((AssignStmt) unit);
+                }
+            }
+        }
+        if (candidates == null) {
+            return Collections.emptySet();
+        }
+
+        UnitGraph graph = new ExceptionalUnitGraph(body);
+        Set<AssignStmt> result = new LinkedHashSet<>();
+        for (AssignStmt stmt : candidates) {
+            if (result.size() == MAX_STACK_OBJECTS) {
+                break;
+            }
+            if (isInCycle(graph, stmt)) {
+                continue;
+            }
+            consulted = new HashSet<>();
+            SootClass sc = ((NewExpr) stmt.getRightOp()).getBaseType().getSootClass();
+            Escape e = analyze(body, (Local) stmt.getLeftOp(), sc);
+            if (e == Escape.NONE) {
+                result.add(stmt);
+                dependencies.addAll(consulted);
+            }
+        }
+        consulted = null;
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if instances of the specified class may be
+     * allocated on the stack if they don't escape.
+     */
+    static boolean canStackAllocate(SootClass sc) {
+        if (sc.isPhantom() || sc.isInterface() || sc.isAbstract()) {
+            return false;
+        }
+        int fieldCount = 0;
+        for (SootClass c = sc; c != null; c = c.hasSuperclass() ? c.getSuperclass() : null) {
+            String name = c.getName();
+            if (name.equals("java.lang.ref.Reference") || name.equals("java.lang.Throwable")
+                    || name.equals("java.lang.Thread") || name.equals("java.lang.Class")
+                    || name.equals("java.lang.String") || name.equals("org.robovm.rt.bro.NativeObject")) {
+                // Classes the VM treats specially
+                return false;
+            }
+            if (c.isPhantom()) {
+                return false;
+            }
+            if (c.hasSuperclass() && c.declaresMethod("finalize", Collections.emptyList(), VoidType.v())) {
+                return false;
+            }
+            fieldCount += c.getFieldCount();
+        }
+        return fieldCount <= MAX_FIELDS;
+    }
+
+    private static boolean isInCycle(UnitGraph graph, Unit start) {
+        Deque<Unit> stack = new ArrayDeque<>(graph.getSuccsOf(start));
+        Set<Unit> visited = new HashSet<>();
+        while (!stack.isEmpty()) {
+            Unit u = stack.pop();
+            if (u == start) {
+                return true;
+            }
+            if (visited.add(u)) {
+                stack.addAll(graph.getSuccsOf(u));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether the value in the specified local escapes the
+     * specified body. {@code exactType} is the exact type of the value if
+     * known or {@code null}.
+     */
+    private Escape analyze(Body body, Local local, SootClass exactType) {
+        Escape result = Escape.NONE;
+        Set<Local> aliases = new HashSet<>();
+        Deque<Local> worklist = new ArrayDeque<>();
+        aliases.add(local);
+        worklist.add(local);
+        while (!worklist.isEmpty() && result != Escape.ESCAPES) {
+            Local l = worklist.pop();
+            for (Unit unit : body.getUnits()) {
+                if (!uses(unit, l)) {
+                    continue;
+                }
+                Local alias = null;
+                Escape e;
+                if (unit instanceof AssignStmt) {
+                    AssignStmt stmt = (AssignStmt) unit;
+                    Value left = stmt.getLeftOp();
+                    Value right = stmt.getRightOp();
+                    if (left instanceof InstanceFieldRef && ((InstanceFieldRef) left).getBase() == l && right != l) {
+                        // Store into a field of the object
+                        e = Escape.NONE;
+                    } else if (right instanceof InstanceFieldRef || right instanceof InstanceOfExpr) {
+                        // Load from a field of the object or instanceof check
+                        e = Escape.NONE;
+                    } else if (right == l || right instanceof CastExpr) {
+                        if (left instanceof Local) {
+                            alias = (Local) left;
+                            e = Escape.NONE;
+                        } else {
+                            e = Escape.ESCAPES;
+                        }
+                    } else if (right instanceof EqExpr || right instanceof NeExpr) {
+                        e = Escape.NONE;
+                    } else if (right instanceof InvokeExpr) {
+                        e = analyzeInvoke((InvokeExpr) right, l, aliases, exactType);
+                        if (e == Escape.RETURNED) {
+                            if (left instanceof Local) {
+                                alias = (Local) left;
+                                e = Escape.NONE;
+                            } else {
+                                e = Escape.ESCAPES;
+                            }
+                        }
+                    } else {
+                        e = Escape.ESCAPES;
+                    }
+                } else if (unit instanceof InvokeStmt) {
+                    e = analyzeInvoke(((InvokeStmt) unit).getInvokeExpr(), l, aliases, exactType);
+                    if (e == Escape.RETURNED) {
+                        e = Escape.NONE;
+                    }
+                } else if (unit instanceof IfStmt) {
+                    e = Escape.NONE;
+                } else if (unit instanceof ReturnStmt) {
+                    e = Escape.RETURNED;
+                } else {
+                    // throw, monitorenter/exit and anything else
+                    e = Escape.ESCAPES;
+                }
+                result = result.merge(e);
+                if (result == Escape.ESCAPES) {
+                    break;
+                }
+                if (alias != null && aliases.add(alias)) {
+                    worklist.add(alias);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean uses(Unit unit, Local l) {
+        for (ValueBox box : unit.getUseBoxes()) {
+            if (box.getValue() == l) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Escape analyzeInvoke(InvokeExpr expr, Local l, Set<Local> aliases, SootClass exactType) {
+        SootMethod target = resolve(expr, aliases, exactType);
+        if (target == null) {
+            return Escape.ESCAPES;
+        }
+        Summary summary = getSummary(target);
+        consulted.addAll(summary.classes);
+        Escape result = Escape.NONE;
+        if (expr instanceof InstanceInvokeExpr && ((InstanceInvokeExpr) expr).getBase() == l) {
+            result = result.merge(summary.params[0]);
+        }
+        int offset = target.isStatic() ? 0 : 1;
+        for (int i = 0; i < expr.getArgCount(); i++) {
+            if (expr.getArg(i) == l) {
+                result = result.merge(summary.params[i + offset]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the method called by the specified expression. Returns
+     * {@code null} if the target isn't known at compile time.
+     */
+    private static SootMethod resolve(InvokeExpr expr, Set<Local> aliases, SootClass exactType) {
+        SootMethod method;
+        try {
+            method = expr.getMethod();
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (expr instanceof StaticInvokeExpr || expr instanceof SpecialInvokeExpr) {
+            return method;
+        }
+        if (!(expr instanceof VirtualInvokeExpr || expr instanceof InterfaceInvokeExpr)) {
+            // invokedynamic
+            return null;
+        }
+        if (exactType != null && aliases.contains(((InstanceInvokeExpr) expr).getBase())) {
+            // The receiver is the object being analyzed and its type is known
+            String subSignature = method.getSubSignature();
+            for (SootClass c = exactType; c != null; c = c.hasSuperclass() ? c.getSuperclass() : null) {
+                if (c.declaresMethod(subSignature)) {
+                    SootMethod m = c.getMethod(subSignature);
+                    return m.isAbstract() ? null : m;
+                }
+            }
+            // Default method or missing
+            return null;
+        }
+        if (method.isPrivate() || Modifier.isFinal(method.getModifiers())
+                || Modifier.isFinal(method.getDeclaringClass().getModifiers())) {
+            return method;
+        }
+        return null;
+    }
+
+    private Summary getSummary(SootMethod method) {
+        Summary summary = summaries.get(method);
+        if (summary != null) {
+            return summary;
+        }
+        int paramCount = method.getParameterCount() + (method.isStatic() ? 0 : 1);
+        if (depth >= MAX_CALL_DEPTH || inProgress.contains(method)) {
+            // Assume the worst but don't cache the result of a truncated analysis
+            truncated = true;
+            return escapesAll(paramCount);
+        }
+        if (method.isNative() || method.isAbstract() || method.isPhantom() || method.isSynchronized()
+                || method.getDeclaringClass().isPhantom()) {
+            summary = escapesAll(paramCount);
+            summaries.put(method, summary);
+            return summary;
+        }
+
+        // Bodies only retrieved for the analysis are released once the
+        // summary has been computed to not keep them in memory
+        boolean retrieved = !method.hasActiveBody();
+        Body body;
+        try {
+            body = method.retrieveActiveBody();
+        } catch (RuntimeException e) {
+            body = null;
+        }
+        try {
+            if (body == null || body.getUnits().size() > MAX_CALLEE_UNITS) {
+                summary = escapesAll(paramCount);
+                summaries.put(method, summary);
+                return summary;
+            }
+            return summarize(method, body, paramCount);
+        } finally {
+            if (retrieved && method.hasActiveBody()) {
+                method.releaseActiveBody();
+            }
+        }
+    }
+
+    private Summary summarize(SootMethod method, Body body, int paramCount) {
+        Set<SootClass> outerConsulted = consulted;
+        boolean outerTruncated = truncated;
+        consulted = new HashSet<>();
+        consulted.add(method.getDeclaringClass());
+        truncated = false;
+        depth++;
+        inProgress.add(method);
+        try {
+            Escape[] params = new Escape[paramCount];
+            for (int i = 0; i < paramCount; i++) {
+                params[i] = Escape.NONE;
+            }
+            for (Unit unit : body.getUnits()) {
+                if (!(unit instanceof IdentityStmt)) {
+                    continue;
+                }
+                IdentityStmt stmt = (IdentityStmt) unit;
+                int index;
+                if (stmt.getRightOp() instanceof ThisRef) {
+                    index = 0;
+                } else if (stmt.getRightOp() instanceof ParameterRef) {
+                    index = ((ParameterRef) stmt.getRightOp()).getIndex() + (method.isStatic() ? 0 : 1);
+                } else {
+                    continue;
+                }
+                if (stmt.getLeftOp().getType() instanceof RefLikeType) {
+                    params[index] = analyze(body, (Local) stmt.getLeftOp(), null);
+                }
+            }
+            Summary summary = new Summary(params, consulted);
+            if (!truncated) {
+                summaries.put(method, summary);
+            }
+            return summary;
+        } finally {
+            inProgress.remove(method);
+            depth--;
+            truncated |= outerTruncated;
+            outerConsulted.addAll(consulted);
+            consulted = outerConsulted;
+        }
+    }
+
+    private static Summary escapesAll(int paramCount) {
+        Escape[] params = new Escape[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            params[i] = Escape.ESCAPES;
+        }
+        return new Summary(params, Collections.<SootClass>emptySet());
+    }
+}
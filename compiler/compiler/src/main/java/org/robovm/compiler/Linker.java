@@ -40,7 +40,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Executor;
@@ -62,6 +61,8 @@ import org.robovm.compiler.hash.ModifiedUtf8HashFunction;
 import org.robovm.compiler.llvm.Alias;
 import org.robovm.compiler.llvm.ArrayConstant;
 import org.robovm.compiler.llvm.ArrayConstantBuilder;
+import org.robovm.compiler.llvm.Bitcast;
+import org.robovm.compiler.llvm.Br;
 import org.robovm.compiler.llvm.Constant;
 import org.robovm.compiler.llvm.ConstantBitcast;
 import org.robovm.compiler.llvm.ConstantGetelementptr;
@@ -69,16 +70,23 @@ import org.robovm.compiler.llvm.Function;
 import org.robovm.compiler.llvm.FunctionDeclaration;
 import org.robovm.compiler.llvm.FunctionRef;
 import org.robovm.compiler.llvm.FunctionType;
+import org.robovm.compiler.llvm.Getelementptr;
 import org.robovm.compiler.llvm.Global;
+import org.robovm.compiler.llvm.Icmp;
 import org.robovm.compiler.llvm.IntegerConstant;
+import org.robovm.compiler.llvm.Label;
+import org.robovm.compiler.llvm.Load;
 import org.robovm.compiler.llvm.NullConstant;
 import org.robovm.compiler.llvm.Ret;
+import org.robovm.compiler.llvm.Store;
 import org.robovm.compiler.llvm.StructureConstant;
 import org.robovm.compiler.llvm.StructureConstantBuilder;
 import org.robovm.compiler.llvm.Type;
 import org.robovm.compiler.llvm.Unreachable;
 import org.robovm.compiler.llvm.Value;
+import org.robovm.compiler.llvm.Variable;
 import org.robovm.compiler.plugin.CompilerPlugin;
+import org.robovm.compiler.util.DigestUtil;
 import org.robovm.llvm.Context;
 import org.robovm.llvm.Module;
 import org.robovm.llvm.PassManager;
@@ -205,6 +213,10 @@ public class Linker {
         config.getLogger().info("Linking %d classes (%s %s %s)", linkClasses.size(),
                 os, arch, config.isDebug() ? "debug" : "release");
 
+        if (config.isLto()) {
+            new LtoCompiler(config).compile(linkClasses);
+        }
+
         ModuleBuilder mb = new ModuleBuilder();
         mb.addInclude(getClass().getClassLoader().getResource(String.format("header-%s-%s.ll", os.getFamily(), arch.getCpuArch())));
         mb.addInclude(getClass().getClassLoader().getResource("header.ll"));
@@ -317,8 +329,6 @@ public class Linker {
         
         mb.addGlobal(new Global("_bcStrippedMethodStubs", stubRefsArray.build()));
         
-        Random rnd = new Random();
-
         buildTypeInfos(typeInfos);
         
         Set<String> checkcasts = new HashSet<>();
@@ -336,10 +346,15 @@ public class Linker {
             reachableMethods.add(node.getLeft() + "." + node.getMiddle() + node.getRight());
         }
         
+        ClassHierarchy hierarchy = new ClassHierarchy(typeInfos, invokes);
+        Set<String> devirtualized = new TreeSet<>();
         int totalMethodCount = 0;
         int reachableMethodCount = 0;
         for (Clazz clazz : linkClasses) {
-            int mbIdx = rnd.nextInt(mbs.length - 1) + 1;
+            // Distribute classes between modules based on their names rather
+            // than randomly. Modules which end up with the same contents as
+            // in the previous build can then reuse the previous object file.
+            int mbIdx = (clazz.getInternalName().hashCode() & 0x7fffffff) % (mbs.length - 1) + 1;
             ClazzInfo ci = clazz.getClazzInfo();
 
             // Create strong stubs for unused methods which override the weak
@@ -388,20 +403,47 @@ public class Linker {
                                 .add(new ArrayConstantBuilder(I32).add(interfaceIds).build())
                                 .build()));
 
-                if (!config.isDebug() && !ci.isInterface() && !ci.isFinal() && typeInfo.children.isEmpty()) {
-                    // Non-final class with 0 children. Override every lookup
-                    // function with one
-                    // which doesn't do any lookup.
+                if (!config.isDebug() && !ci.isInterface() && !ci.isFinal()
+                        && !"java/lang/Object".equals(clazz.getInternalName())) {
+                    // Override the lookup function of every method which
+                    // isn't overridden by any of the linked subclasses with
+                    // one which doesn't do any lookup. java.lang.Object is
+                    // excluded since proxy classes created at runtime
+                    // override some of its methods.
                     for (MethodInfo mi : ci.getMethods()) {
                         String name = mi.getName();
                         if (!name.equals("<clinit>") && !name.equals("<init>")
                                 && !mi.isPrivate() && !mi.isStatic() && !mi.isFinal() && !mi.isAbstract()) {
 
-                            if (invokes.contains(clazz.getInternalName() + "." + name + mi.getDesc())) {
-                                if (reachableMethods.contains(clazz.getInternalName() + "." + name + mi.getDesc())) {
-                                    mbs[mbIdx].addFunction(createLookup(mbs[mbIdx], ci, mi));
+                            String key = clazz.getInternalName() + "." + name + mi.getDesc();
+                            if (invokes.contains(key) && reachableMethods.contains(key)
+                                    && !hierarchy.isOverridden(typeInfo, mi)) {
+                                mbs[mbIdx].addFunction(createLookup(mbs[mbIdx], ci, mi));
+                                devirtualized.add(key);
+                            }
+                        }
+                    }
+                } else if (!config.isDebug() && ci.isInterface()) {
+                    TypeInfo impl = hierarchy.getSingleImplementation(typeInfo);
+                    if (impl != null) {
+                        int itableIndex = 0;
+                        for (MethodInfo mi : ci.getMethods()) {
+                            if (mi.isStatic() || !mi.isPublic()) {
+                                continue;
+                            }
+                            String key = clazz.getInternalName() + "." + mi.getName() + mi.getDesc();
+                            if (mi.isAbstract() && hierarchy.isInvokedOnInterface(typeInfo, mi)) {
+                                TypeInfo owner = hierarchy.resolve(impl, mi);
+                                if (owner != null && reachableMethods.contains(owner.clazz.getInternalName()
+                                        + "." + mi.getName() + mi.getDesc())) {
+                                    ClazzInfo ownerCi = owner.clazz.getClazzInfo();
+                                    mbs[mbIdx].addFunction(createGuardedInterfaceLookup(mbs[mbIdx], clazz, mi,
+                                            itableIndex, impl.clazz, ownerCi,
+                                            ownerCi.getMethod(mi.getName(), mi.getDesc())));
+                                    devirtualized.add(key);
                                 }
                             }
+                            itableIndex++;
                         }
                     }
                 }
@@ -415,6 +457,7 @@ public class Linker {
             }
         }
         config.getLogger().info("%d methods out of %d included in the executable", reachableMethodCount, totalMethodCount);
+        reportDevirtualized(devirtualized, linkClasses);
 
         List<File> objectFiles = new ArrayList<File>();
 
@@ -510,15 +553,32 @@ public class Linker {
         File linkerO = new File(config.getTmpDir(), "linker" + num + ".o");
         linkerO.getParentFile().mkdirs();
 
-        try (Context context = new Context()) {
-            // emit bitcode section for linker?.o
-            ClassCompiler.emitBitcodeSection(config, mb);
+        // emit bitcode section for linker?.o
+        ClassCompiler.emitBitcodeSection(config, mb);
 
-            String ir = mb.build().toString();
-            if (config.isDumpIntermediates()) {
-                File linkerLl = new File(config.getTmpDir(), "linker" + num + ".ll");
-                FileUtils.writeStringToFile(linkerLl, ir, "utf-8");
-            }
+        String ir = mb.build().toString();
+        if (config.isDumpIntermediates()) {
+            File linkerLl = new File(config.getTmpDir(), "linker" + num + ".ll");
+            FileUtils.writeStringToFile(linkerLl, ir, "utf-8");
+        }
+
+        /*
+         * The IR of a module is fully determined by the classes assigned to
+         * it, their type infos and the trampolines resolved for them. If the
+         * IR is identical to the one used to produce linker?.o in the previous
+         * build of this app we can reuse that object file instead of running
+         * LLVM on it again.
+         */
+        File linkerKey = new File(config.getTmpDir(), "linker" + num + ".o.sha1");
+        String key = DigestUtil.sha1(Version.getCompilerVersion() + ":" + config.getTriple() + ":" + ir);
+        if (!config.isClean() && !config.isDumpIntermediates() && linkerO.exists() && linkerO.length() > 0
+                && linkerKey.exists() && key.equals(FileUtils.readFileToString(linkerKey, "ascii"))) {
+            config.getLogger().debug("Reusing unchanged %s", linkerO.getName());
+            return linkerO;
+        }
+        linkerKey.delete();
+
+        try (Context context = new Context()) {
             try (Module module = Module.parseIR(context, ir, "linker" + num + ".ll")) {
                 try (PassManager passManager = new PassManager()) {
                     passManager.addAlwaysInlinerPass();
@@ -553,9 +613,166 @@ public class Linker {
                 }
             }
         }
+        FileUtils.writeStringToFile(linkerKey, key, "ascii");
         return linkerO;
     }
 
+    /**
+     * Logs the number of virtual and interface methods which have been
+     * devirtualized and the number of call sites, counted as calling classes,
+     * which benefit. With {@code -dumpintermediates} the devirtualized methods
+     * are also written to {@code devirtualized.txt} in the tmp dir.
+     */
+    private void reportDevirtualized(Set<String> devirtualized, Set<Clazz> linkClasses) throws IOException {
+        int callSites = 0;
+        for (Clazz clazz : linkClasses) {
+            for (String invoke : clazz.getClazzInfo().getInvokes()) {
+                if (devirtualized.contains(invoke)) {
+                    callSites++;
+                }
+            }
+        }
+        config.getLogger().info("%d virtual and interface methods devirtualized at %d call sites",
+                devirtualized.size(), callSites);
+        if (config.isDumpIntermediates()) {
+            FileUtils.writeLines(new File(config.getTmpDir(), "devirtualized.txt"), "utf-8", devirtualized);
+        }
+    }
+
+    /**
+     * Answers class hierarchy questions about the linked classes. Since no
+     * classes other than the linked ones (and proxy classes, which only
+     * override {@code java.lang.Object} methods and interface methods) can
+     * exist at runtime these answers hold for the whole program.
+     */
+    private class ClassHierarchy {
+        private final Map<ClazzInfo, TypeInfo> typeInfos;
+        /**
+         * Maps interfaces to their single concrete implementation or to
+         * {@code null} if there are several.
+         */
+        private final Map<TypeInfo, TypeInfo> implementations = new HashMap<>();
+        /**
+         * Maps name + descriptor of each invoked method to the classes it's
+         * invoked on.
+         */
+        private final Map<String, List<String>> invokedOn = new HashMap<>();
+        private final Map<ClazzInfo, Set<String>> declaredMethods = new HashMap<>();
+
+        ClassHierarchy(Map<ClazzInfo, TypeInfo> typeInfos, Set<String> invokes) {
+            this.typeInfos = typeInfos;
+            for (TypeInfo typeInfo : typeInfos.values()) {
+                ClazzInfo ci = typeInfo.clazz.getClazzInfo();
+                if (typeInfo.error || ci.isInterface() || ci.isAbstract()) {
+                    continue;
+                }
+                for (TypeInfo ifTypeInfo : typeInfo.interfaceTypes) {
+                    if (implementations.containsKey(ifTypeInfo)) {
+                        implementations.put(ifTypeInfo, null);
+                    } else {
+                        implementations.put(ifTypeInfo, typeInfo);
+                    }
+                }
+            }
+            for (String invoke : invokes) {
+                int dot = invoke.indexOf('.');
+                String nameDesc = invoke.substring(dot + 1);
+                List<String> owners = invokedOn.get(nameDesc);
+                if (owners == null) {
+                    owners = new ArrayList<>(1);
+                    invokedOn.put(nameDesc, owners);
+                }
+                owners.add(invoke.substring(0, dot));
+            }
+        }
+
+        private Set<String> getDeclaredMethods(ClazzInfo ci) {
+            Set<String> result = declaredMethods.get(ci);
+            if (result == null) {
+                result = new HashSet<>();
+                for (MethodInfo mi : ci.getMethods()) {
+                    result.add(mi.getName() + mi.getDesc());
+                }
+                declaredMethods.put(ci, result);
+            }
+            return result;
+        }
+
+        /**
+         * Returns {@code true} if any linked subclass of the specified class
+         * declares a method with the same name and descriptor as the
+         * specified method.
+         */
+        boolean isOverridden(TypeInfo typeInfo, MethodInfo mi) {
+            String nameDesc = mi.getName() + mi.getDesc();
+            LinkedList<Clazz> queue = new LinkedList<>(typeInfo.children);
+            Clazz child;
+            while ((child = queue.poll()) != null) {
+                ClazzInfo childCi = child.getClazzInfo();
+                if (getDeclaredMethods(childCi).contains(nameDesc)) {
+                    return true;
+                }
+                queue.addAll(typeInfos.get(childCi).children);
+            }
+            return false;
+        }
+
+        /**
+         * Returns the only linked concrete class implementing the specified
+         * interface or {@code null} if there are none or several.
+         */
+        TypeInfo getSingleImplementation(TypeInfo interfaceTypeInfo) {
+            if (interfaceTypeInfo.error) {
+                return null;
+            }
+            return implementations.get(interfaceTypeInfo);
+        }
+
+        /**
+         * Returns {@code true} if the specified interface method is invoked
+         * on the interface or on one of its subinterfaces.
+         */
+        boolean isInvokedOnInterface(TypeInfo interfaceTypeInfo, MethodInfo mi) {
+            List<String> owners = invokedOn.get(mi.getName() + mi.getDesc());
+            if (owners == null) {
+                return false;
+            }
+            String name = interfaceTypeInfo.clazz.getInternalName();
+            for (String owner : owners) {
+                if (owner.equals(name)) {
+                    return true;
+                }
+                Clazz clazz = config.getClazzes().load(owner);
+                TypeInfo ownerTypeInfo = clazz != null ? typeInfos.get(clazz.getClazzInfo()) : null;
+                if (ownerTypeInfo != null && !ownerTypeInfo.error
+                        && Arrays.asList(ownerTypeInfo.interfaceTypes).contains(interfaceTypeInfo)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Finds the class declaring the implementation of the specified
+         * interface method in the specified class or one of its
+         * superclasses. Returns {@code null} if the implementation is a
+         * default method or if invoking the method would throw an error.
+         */
+        TypeInfo resolve(TypeInfo typeInfo, MethodInfo interfaceMethod) {
+            for (int i = typeInfo.classTypes.length - 1; i >= 0; i--) {
+                ClazzInfo ci = typeInfo.classTypes[i].clazz.getClazzInfo();
+                MethodInfo mi = ci.getMethod(interfaceMethod.getName(), interfaceMethod.getDesc());
+                if (mi != null) {
+                    if (mi.isStatic() || mi.isAbstract() || !mi.isPublic()) {
+                        return null;
+                    }
+                    return typeInfo.classTypes[i];
+                }
+            }
+            return null;
+        }
+    }
+
     private TypeInfo buildTypeInfo(TypeInfo typeInfo, Map<ClazzInfo, TypeInfo> typeInfos) {
         if (typeInfo.error || typeInfo.classTypes != null) {
             return typeInfo;
@@ -759,6 +976,57 @@ public class Linker {
         return function;
     }
 
+    /**
+     * Creates a lookup function for an interface method with a single
+     * implementation in the linked classes. If the receiver is an instance
+     * of the implementing class the implementation is called directly.
+     * Otherwise, e.g. for proxy classes created at runtime, the method is
+     * looked up in the receiver's itable just like the lookup function
+     * generated by the {@link ClassCompiler} does.
+     */
+    private Function createGuardedInterfaceLookup(ModuleBuilder mb, Clazz interfaze, MethodInfo mi,
+            int itableIndex, Clazz implClazz, ClazzInfo targetCi, MethodInfo targetMi) {
+
+        Function function = FunctionBuilder.lookup(interfaze.getClazzInfo(), mi, false);
+
+        Variable implClass = function.newVariable(I8_PTR);
+        function.add(new Load(implClass, getInfoStruct(mb, function, implClazz)));
+        Value classPtr = call(function, OBJECT_CLASS, function.getParameterRef(1));
+        Variable receiverClass = function.newVariable(I8_PTR);
+        function.add(new Bitcast(receiverClass, classPtr, I8_PTR));
+        Variable isImpl = function.newVariable(I1);
+        function.add(new Icmp(isImpl, Icmp.Condition.eq, receiverClass.ref(), implClass.ref()));
+        Label directLabel = new Label();
+        Label lookupLabel = new Label();
+        function.add(new Br(isImpl.ref(), function.newBasicBlockRef(directLabel),
+                function.newBasicBlockRef(lookupLabel)));
+
+        function.newBasicBlock(directLabel);
+        String targetFnName = targetMi.isSynchronized()
+                ? Symbols.synchronizedWrapperSymbol(targetCi.getInternalName(), targetMi.getName(), targetMi.getDesc())
+                : Symbols.methodSymbol(targetCi.getInternalName(), targetMi.getName(), targetMi.getDesc());
+        FunctionRef fn = new FunctionRef(targetFnName, function.getType());
+        if (!mb.hasSymbol(fn.getName())) {
+            mb.addFunctionDeclaration(new FunctionDeclaration(fn));
+        }
+        function.add(new Ret(tailcall(function, fn, function.getParameterRefs())));
+
+        function.newBasicBlock(lookupLabel);
+        Variable reserved0 = function.newVariable(I8_PTR_PTR);
+        function.add(new Getelementptr(reserved0, function.getParameterRef(0), 0, 4));
+        Variable reserved1 = function.newVariable(I8_PTR_PTR);
+        function.add(new Getelementptr(reserved1, function.getParameterRef(0), 0, 5));
+        function.add(new Store(mb.getString(mi.getName()), reserved0.ref()));
+        function.add(new Store(mb.getString(mi.getDesc()), reserved1.ref()));
+        Value fptr = call(function, BC_LOOKUP_INTERFACE_METHOD_IMPL, function.getParameterRef(0),
+                getInfoStruct(mb, function, interfaze), function.getParameterRef(1),
+                new IntegerConstant(itableIndex));
+        Variable f = function.newVariable(function.getType());
+        function.add(new Bitcast(f, fptr, f.getType()));
+        function.add(new Ret(tailcall(function, f.ref(), function.getParameterRefs())));
+        return function;
+    }
+
     private Value getInfoStruct(ModuleBuilder mb, Function f, Clazz clazz) {
         String symbol = Symbols.infoStructSymbol(clazz.getInternalName());
         if (!mb.hasSymbol(symbol)) {
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.clazz.Dependency;
+import org.robovm.compiler.clazz.MethodDependency;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.util.DigestUtil;
+import org.robovm.llvm.Context;
+import org.robovm.llvm.Function;
+import org.robovm.llvm.GlobalVariable;
+import org.robovm.llvm.Module;
+import org.robovm.llvm.PassManager;
+import org.robovm.llvm.PassManagerBuilder;
+import org.robovm.llvm.binding.Attribute;
+import org.robovm.llvm.binding.Linkage;
+import org.robovm.llvm.binding.Opcode;
+
+/**
+ * Generates the object files of the linked classes in LTO mode (see
+ * {@link Config#isLto()}). In LTO mode {@link ClassCompiler} stops after the
+ * per-class optimizations and stores the bitcode of each class in the cache.
+ * Once the set of linked classes is known this class imports the bodies of
+ * small methods called directly from other classes (static, private, final
+ * and constructor calls) into each class' module as
+ * {@code available_externally} functions, reoptimizes the module with the
+ * inliner enabled and generates the object file.
+ * <p>
+ * Only leaf methods, i.e. methods which don't call other Java methods or
+ * throw through {@code invoke} instructions, are inlined. This keeps the
+ * stack frames seen by stack walkers like {@code Reflection.getCallerClass()}
+ * intact.
+ * <p>
+ * The object file of a class only has to be regenerated when its own bitcode
+ * or the bitcode of any class it calls methods in has changed.
+ */
+public class LtoCompiler {
+    private static final int INLINE_THRESHOLD = 225;
+    private static final int MAX_INLINE_CANDIDATE_BASIC_BLOCKS = 8;
+
+    private final Config config;
+    private final Map<Clazz, String> bcDigests = new ConcurrentHashMap<>();
+
+    public LtoCompiler(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Generates the object files of the specified classes which aren't up to
+     * date.
+     */
+    public void compile(final Set<Clazz> linkClasses) throws IOException {
+        long start = System.currentTimeMillis();
+
+        Executor executor = config.getThreads() <= 1 ? AppCompiler.SAME_THREAD_EXECUTOR
+                : Executors.newFixedThreadPool(config.getThreads());
+
+        final AtomicInteger compiledCount = new AtomicInteger();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (final Clazz clazz : linkClasses) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (!errors.isEmpty()) {
+                            return;
+                        }
+                        if (compile(clazz, linkClasses)) {
+                            compiledCount.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            });
+        }
+
+        // Shutdown the executor and wait for running tasks to complete.
+        if (executor instanceof ExecutorService) {
+            ExecutorService executorService = (ExecutorService) executor;
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                // Stop the remaining tasks and let the caller see the interrupt
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new CompilerException(e);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            Throwable t = errors.get(0);
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new CompilerException(t);
+        }
+
+        long duration = System.currentTimeMillis() - start;
+        config.getLogger().info("Optimized %d of %d classes across class boundaries in %.2f seconds",
+                compiledCount.get(), linkClasses.size(), duration / 1000.0);
+    }
+
+    private boolean compile(Clazz clazz, Set<Clazz> linkClasses) throws Exception {
+        File bcFile = config.getLtoBcFile(clazz);
+        File oFile = config.getOFile(clazz);
+        File keyFile = config.getLtoKeyFile(clazz);
+
+        // The classes this class calls methods in, sorted to get a stable key
+        TreeMap<String, Clazz> callees = new TreeMap<>();
+        for (Dependency dep : clazz.getClazzInfo().getAllDependencies()) {
+            if (dep instanceof MethodDependency) {
+                String owner = ((MethodDependency) dep).getOwner();
+                Clazz c = config.getClazzes().load(owner);
+                if (c != null && c != clazz && linkClasses.contains(c) && config.getLtoBcFile(c).exists()) {
+                    callees.put(owner, c);
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(Version.getCompilerVersion()).append('\n');
+        sb.append(clazz.getInternalName()).append(':').append(getBcDigest(clazz)).append('\n');
+        for (Clazz c : callees.values()) {
+            sb.append(c.getInternalName()).append(':').append(getBcDigest(c)).append('\n');
+        }
+        String key = DigestUtil.sha1(sb.toString());
+        if (!config.isClean() && oFile.exists() && oFile.length() > 0 && keyFile.exists()
+                && key.equals(FileUtils.readFileToString(keyFile, "ascii"))) {
+            return false;
+        }
+
+        config.getLogger().debug("Optimizing %s across class boundaries", clazz);
+        keyFile.delete();
+        try (Context context = new Context();
+                Module module = Module.parseIR(context, FileUtils.readFileToByteArray(bcFile), clazz.getClassName())) {
+
+            Set<String> declared = new HashSet<>();
+            for (Function f : module.getFunctions()) {
+                if (f.isDeclaration()) {
+                    declared.add(f.getName());
+                }
+            }
+            markInlineCandidates(module);
+
+            for (Clazz c : callees.values()) {
+                if (!callsInto(declared, c)) {
+                    continue;
+                }
+                try (Module m2 = Module.parseIR(context, FileUtils.readFileToByteArray(config.getLtoBcFile(c)),
+                        c.getClassName())) {
+                    prepareForImport(m2);
+                    module.link(m2);
+                }
+            }
+
+            try (PassManager passManager = createPassManager()) {
+                passManager.run(module);
+            }
+
+            ClassCompiler.generateObjectFile(config, clazz, context, module);
+        } catch (Throwable t) {
+            if (oFile.exists()) {
+                oFile.delete();
+            }
+            throw t;
+        }
+        FileUtils.writeStringToFile(keyFile, key, "ascii");
+        return true;
+    }
+
+    private String getBcDigest(Clazz clazz) throws IOException {
+        String digest = bcDigests.get(clazz);
+        if (digest == null) {
+            digest = DigestUtil.sha1(FileUtils.readFileToByteArray(config.getLtoBcFile(clazz)));
+            bcDigests.put(clazz, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Returns {@code true} if any of the specified declared functions is
+     * implemented by the specified class.
+     */
+    private static boolean callsInto(Set<String> declared, Clazz clazz) {
+        String owner = clazz.getInternalName().replace('/', '.') + ".";
+        String externalPrefix = Symbols.EXTERNAL_SYMBOL_PREFIX + owner;
+        String internalPrefix = Symbols.INTERNAL_SYMBOL_PREFIX + owner;
+        for (String name : declared) {
+            if (name.startsWith(externalPrefix) || name.startsWith(internalPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Turns the specified module into one which only provides function bodies
+     * for inlining. Nothing in it will be emitted when it's linked into
+     * another module.
+     */
+    private static void prepareForImport(Module module) {
+        for (GlobalVariable g : module.getGlobalVariables()) {
+            Linkage linkage = g.getLinkage();
+            if (linkage == Linkage.AppendingLinkage) {
+                // llvm.used and friends. These would otherwise be merged into
+                // the importing module.
+                g.delete();
+            } else if (!g.isDeclaration() && !isLocal(linkage)) {
+                g.setLinkage(Linkage.AvailableExternallyLinkage);
+            }
+        }
+        markInlineCandidates(module);
+        for (Function f : module.getFunctions()) {
+            if (!f.isDeclaration() && !isLocal(f.getLinkage())) {
+                f.setLinkage(Linkage.AvailableExternallyLinkage);
+            }
+        }
+    }
+
+    /**
+     * Updates the {@code noinline} attributes of the functions in the
+     * specified module. Methods are always compiled as {@code noinline} by
+     * {@link ClassCompiler}.
+     */
+    private static void markInlineCandidates(Module module) {
+        for (Function f : module.getFunctions()) {
+            if (f.isDeclaration() || Arrays.asList(f.getAttributes()).contains(Attribute.AlwaysInlineAttribute)) {
+                continue;
+            }
+            if (isInlineCandidate(f)) {
+                f.removeAttribute(Attribute.NoInlineAttribute);
+            } else {
+                f.addAttribute(Attribute.NoInlineAttribute);
+            }
+        }
+    }
+
+    private static boolean isInlineCandidate(Function f) {
+        if (f.countBasicBlocks() > MAX_INLINE_CANDIDATE_BASIC_BLOCKS || f.hasInstruction(Opcode.Invoke)
+                || f.referencesLocalSymbols()) {
+            return false;
+        }
+        // Class initialization wrappers only call their target method.
+        String name = f.getName();
+        String target = null;
+        if (name.startsWith(Symbols.INTERNAL_SYMBOL_PREFIX) && name.endsWith("[clinit]")) {
+            target = Symbols.EXTERNAL_SYMBOL_PREFIX
+                    + name.substring(Symbols.INTERNAL_SYMBOL_PREFIX.length(), name.length() - "[clinit]".length());
+        }
+        for (String callee : f.getCallees()) {
+            if (callee == null) {
+                return false;
+            }
+            if (!callee.startsWith("_bc") && !callee.startsWith("llvm.") && !callee.equals(target)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLocal(Linkage linkage) {
+        return linkage == Linkage.PrivateLinkage || linkage == Linkage.InternalLinkage
+                || linkage == Linkage.LinkerPrivateLinkage || linkage == Linkage.LinkerPrivateWeakLinkage;
+    }
+
+    private static PassManager createPassManager() {
+        PassManager passManager = new PassManager();
+        try (PassManagerBuilder builder = new PassManagerBuilder()) {
+            builder.setSetOptLevel(2);
+            builder.setDisableTailCalls(true);
+            builder.useInlinerWithThreshold(INLINE_THRESHOLD);
+            builder.populateModulePassManager(passManager);
+        }
+        // Drop the imported functions which haven't been inlined
+        passManager.addGlobalDCEPass();
+        return passManager;
+    }
+}
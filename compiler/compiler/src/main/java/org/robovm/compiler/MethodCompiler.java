@@ -33,6 +33,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.robovm.compiler.clazz.Clazz;
 import org.robovm.compiler.config.Config;
 import org.robovm.compiler.llvm.Add;
 import org.robovm.compiler.llvm.AliasRef;
@@ -81,6 +82,7 @@ import org.robovm.compiler.llvm.Shl;
 import org.robovm.compiler.llvm.Sitofp;
 import org.robovm.compiler.llvm.Store;
 import org.robovm.compiler.llvm.StructureConstantBuilder;
+import org.robovm.compiler.llvm.StructureType;
 import org.robovm.compiler.llvm.Sub;
 import org.robovm.compiler.llvm.Switch;
 import org.robovm.compiler.llvm.Trunc;
@@ -128,6 +130,7 @@ import soot.UnitBox;
 import soot.jimple.AddExpr;
 import soot.jimple.AndExpr;
 import soot.jimple.ArrayRef;
+import soot.jimple.AssignStmt;
 import soot.jimple.BinopExpr;
 import soot.jimple.CastExpr;
 import soot.jimple.CaughtExceptionRef;
@@ -204,10 +207,20 @@ public class MethodCompiler extends AbstractMethodCompiler {
     private ModuleBuilder moduleBuilder;
     
     private Variable dims;
+    private Map<Unit, Variable> stackObjects;
+    private final EscapeAnalysis escapeAnalysis = new EscapeAnalysis();
+    private RedundantCheckAnalysis redundantChecks;
     
     public MethodCompiler(Config config) {
         super(config);
     }
+
+    @Override
+    public void reset(Clazz clazz) {
+        super.reset(clazz);
+        // Don't keep the summaries of every method called by the app
+        escapeAnalysis.reset();
+    }
     
     protected Function doCompile(ModuleBuilder moduleBuilder, SootMethod method) {
         function = createMethodFunction(method);
@@ -240,7 +253,29 @@ public class MethodCompiler extends AbstractMethodCompiler {
             // ArrayBoundsCheckerAnalysis which has now been run.
             body.getUnits().getNonPatchingChain().removeFirst();
         }
-        
+
+        /*
+         * Objects which never escape this method are allocated on the
+         * stack in release builds. The escape analysis looks at the bodies
+         * of the methods the objects are passed to. Record the classes of
+         * those methods as dependencies to recompile this class when any
+         * of them changes.
+         */
+        Set<AssignStmt> stackAllocations = Collections.emptySet();
+        if (!config.isDebug()) {
+            Set<SootClass> dependencies = new HashSet<>();
+            stackAllocations = escapeAnalysis.findStackAllocations(body, dependencies);
+            for (SootClass sc : dependencies) {
+                if (sc != sootClass) {
+                    clazz.getClazzInfo().addClassDependency(getInternalName(sc), true);
+                }
+            }
+        }
+
+        // Locals can be modified in the debugger so only release builds can
+        // drop the checks Soot hasn't already found to be redundant.
+        redundantChecks = config.isDebug() ? null : new RedundantCheckAnalysis(body);
+
         PatchingChain<Unit> units = body.getUnits();
         Map<Unit, List<Unit>> branchTargets = getBranchTargets(body);
         Map<Unit, Integer> trapHandlers = getTrapHandlers(body);
@@ -275,6 +310,15 @@ public class MethodCompiler extends AbstractMethodCompiler {
             }
         }
         
+        stackObjects = new HashMap<>();
+        for (AssignStmt stmt : stackAllocations) {
+            StructureType type = getInstanceType(config.getOs(), config.getArch(),
+                    ((NewExpr) stmt.getRightOp()).getBaseType().getSootClass());
+            Variable mem = function.newVariable(new PointerType(type));
+            function.add(new Alloca(mem, type));
+            stackObjects.put(stmt, mem);
+        }
+        
         dims = null;
         if (multiANewArrayMaxDims > 0) {
             dims = function.newVariable("dims", new PointerType(new ArrayType(multiANewArrayMaxDims, I32)));
@@ -794,17 +838,20 @@ public class MethodCompiler extends AbstractMethodCompiler {
 
     private void checkNull(Stmt stmt, Value base) {
         NullCheckTag nullCheckTag = (NullCheckTag) stmt.getTag("NullCheckTag");
-        if (nullCheckTag == null || nullCheckTag.needCheck()) {
+        if ((nullCheckTag == null || nullCheckTag.needCheck())
+                && (redundantChecks == null || !redundantChecks.isNullCheckRedundant(stmt))) {
             call(stmt, CHECK_NULL, env, base);
         }
     }
     
     private void checkBounds(Stmt stmt, Value base, Value index) {
         ArrayCheckTag arrayCheckTag = (ArrayCheckTag) stmt.getTag("ArrayCheckTag");
-        if (arrayCheckTag == null || arrayCheckTag.isCheckLower()) {
+        if ((arrayCheckTag == null || arrayCheckTag.isCheckLower())
+                && (redundantChecks == null || !redundantChecks.isLowerCheckRedundant(stmt))) {
             call(stmt, CHECK_LOWER, env, base, index);
         }
-        if (arrayCheckTag == null || arrayCheckTag.isCheckUpper()) {
+        if ((arrayCheckTag == null || arrayCheckTag.isCheckUpper())
+                && (redundantChecks == null || !redundantChecks.isUpperCheckRedundant(stmt))) {
             call(stmt, CHECK_UPPER, env, base, index);
         }
     }
@@ -1083,6 +1130,15 @@ public class MethodCompiler extends AbstractMethodCompiler {
                     trampolines.add(trampoline);
                     result = call(stmt, trampoline.getFunctionRef(), env, op);
                 }
+            } else if (rightOp instanceof NewExpr && stackObjects.containsKey(stmt)) {
+                // The object doesn't escape. Use the memory reserved on the stack.
+                String targetClassName = getInternalName(((NewExpr) rightOp).getBaseType());
+                Value classObj = immediate(stmt, soot.jimple.ClassConstant.v(targetClassName));
+                Variable mem = stackObjects.get(stmt);
+                StructureType type = (StructureType) ((PointerType) mem.getType()).getBase();
+                Variable obj = function.newVariable(OBJECT_PTR);
+                function.add(new Bitcast(obj, mem.ref(), OBJECT_PTR)).attach(stmt);
+                result = call(stmt, BC_NEW_STACK_OBJECT, env, classObj, obj.ref(), sizeof(type));
             } else if (rightOp instanceof NewExpr) {
                 String targetClassName = getInternalName(((NewExpr) rightOp).getBaseType());
                 FunctionRef fn = null;
@@ -31,6 +31,7 @@ import org.robovm.compiler.llvm.Br;
 import org.robovm.compiler.llvm.FloatingPointConstant;
 import org.robovm.compiler.llvm.FloatingPointType;
 import org.robovm.compiler.llvm.Function;
+import org.robovm.compiler.llvm.FunctionDeclaration;
 import org.robovm.compiler.llvm.FunctionRef;
 import org.robovm.compiler.llvm.FunctionType;
 import org.robovm.compiler.llvm.Global;
@@ -70,6 +71,16 @@ public class NativeMethodCompiler extends AbstractMethodCompiler {
             args.add(1, clazz);
         }
 
+        if (Annotations.hasLeafNativeAnnotation(method)) {
+            // Leaf natives cannot throw or call back into Java. Call the
+            // statically linked implementation directly and skip the native
+            // frame and the exception check.
+            FunctionRef targetFn = createLeafNative(moduleBuilder, method);
+            Value result = call(fn, targetFn, args);
+            fn.add(new Ret(result));
+            return fn;
+        }
+
         pushNativeFrame(fn);
         FunctionRef targetFn = createNative(moduleBuilder, method);
         Value result = call(fn, targetFn, args);
@@ -90,6 +101,25 @@ public class NativeMethodCompiler extends AbstractMethodCompiler {
         return nativeCount > 1;
     }
 
+    private FunctionRef createLeafNative(ModuleBuilder mb, SootMethod method) {
+        String targetInternalName = getInternalName(method.getDeclaringClass());
+        String methodName = method.getName();
+        String methodDesc = getDescriptor(method);
+        FunctionType nativeFunctionType = Types.getNativeFunctionType(methodDesc, method.isStatic());
+
+        /*
+         * No weak stubs are generated for leaf natives. The implementation
+         * must be available at link time using the same JNI name (short or
+         * long) that the stubs would have had.
+         */
+        String name = isLongNativeFunctionNameRequired(method)
+                ? mangleNativeMethod(targetInternalName, methodName, methodDesc)
+                : mangleNativeMethod(targetInternalName, methodName);
+        FunctionRef targetFn = new FunctionRef(name, nativeFunctionType);
+        mb.addFunctionDeclaration(new FunctionDeclaration(targetFn));
+        return targetFn;
+    }
+
     private FunctionRef createNative(ModuleBuilder mb, SootMethod method) {
         String targetInternalName = getInternalName(method.getDeclaringClass());
         String methodName = method.getName();
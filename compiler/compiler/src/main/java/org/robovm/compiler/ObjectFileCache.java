@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.clazz.ClazzInfo;
+import org.robovm.compiler.clazz.Dependency;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.util.DigestUtil;
+
+/**
+ * Computes the content based keys used to decide whether the cached object
+ * file of a class is up to date and manages the optional shared cache
+ * configured using {@link Config#getSharedCacheDir()}.
+ * <p>
+ * The key of a class is the SHA1 of the compiler version, the target and
+ * build settings which affect the generated code, the bytes of the class and
+ * the bytes of every class it depends on. Timestamps and locations of the
+ * class files are not part of the key so a key computed in one checkout
+ * matches the key computed in another checkout of the same sources.
+ * <p>
+ * Entries in the shared cache are stored in a directory named after the
+ * SHA1 of the build settings and the class bytes. Since the set of
+ * dependencies is only known after a class has been compiled, that
+ * directory may contain several entries named after their full keys.
+ */
+public class ObjectFileCache {
+    private static final String INFO_EXT = ".info";
+    private static final String O_EXT = ".o";
+    private static final String LINES_O_EXT = ".lines.o";
+    private static final String DEBUGINFO_O_EXT = ".debuginfo.o";
+
+    private ObjectFileCache() {
+    }
+
+    private static String getSettingsKey(Config config) {
+        return Version.getCompilerVersion() + ":" + config.getOs() + ":" + config.getArch() + ":"
+                + (config.isDebug() ? "debug" : "release") + ":" + config.getTreeShakerMode()
+                + (config.isLto() ? ":lto" : "");
+    }
+
+    /**
+     * Computes the key for the specified class using the dependencies
+     * recorded in the specified {@link ClazzInfo}.
+     */
+    public static String getCacheKey(Config config, Clazz clazz, ClazzInfo ci) throws IOException {
+        // Sort and remove duplicates. The same class can be the target of
+        // several class and method dependencies.
+        TreeMap<String, Boolean> deps = new TreeMap<>();
+        for (Dependency dep : ci.getAllDependencies()) {
+            deps.put(dep.getClassName(), dep.isInBootClasspath());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(getSettingsKey(config)).append('\n');
+        sb.append(clazz.getInternalName()).append(':').append(clazz.getDigest()).append('\n');
+        for (String className : deps.keySet()) {
+            Clazz depClazz = config.getClazzes().load(className);
+            sb.append(className).append(':');
+            if (depClazz == null) {
+                sb.append('-');
+            } else {
+                sb.append(depClazz.getDigest()).append(':').append(depClazz.isInBootClasspath());
+            }
+            sb.append('\n');
+        }
+        return DigestUtil.sha1(sb.toString());
+    }
+
+    private static File getSharedEntryDir(Config config, Clazz clazz) throws IOException {
+        String key = DigestUtil.sha1(getSettingsKey(config) + ":"
+                + clazz.getInternalName() + ":" + clazz.getDigest());
+        return new File(new File(config.getSharedCacheDir(), key.substring(0, 2)), key);
+    }
+
+    /**
+     * Looks for an up to date entry for the specified class in the shared
+     * cache and copies it into the local cache if found. LTO builds don't use
+     * the shared cache since their object files depend on the linked classes.
+     *
+     * @return {@code true} if the class was restored from the shared cache.
+     */
+    public static boolean restore(Config config, Clazz clazz) {
+        if (config.getSharedCacheDir() == null || config.isLto()) {
+            return false;
+        }
+        try {
+            File dir = getSharedEntryDir(config, clazz);
+            File[] infoFiles = dir.listFiles();
+            if (infoFiles == null) {
+                return false;
+            }
+            for (File infoFile : infoFiles) {
+                String name = infoFile.getName();
+                if (!name.endsWith(INFO_EXT)) {
+                    continue;
+                }
+                String key = name.substring(0, name.length() - INFO_EXT.length());
+                File oFile = new File(dir, key + O_EXT);
+                if (!oFile.isFile() || oFile.length() == 0) {
+                    continue;
+                }
+                ClazzInfo ci = clazz.readClazzInfo(infoFile);
+                if (ci == null || !key.equals(ci.getCacheKey()) || ci.getAllDependencies().isEmpty()
+                        || !key.equals(getCacheKey(config, clazz, ci))) {
+                    continue;
+                }
+
+                FileUtils.copyFile(oFile, config.getOFile(clazz));
+                copyOrDelete(new File(dir, key + LINES_O_EXT), config.getLinesOFile(clazz));
+                copyOrDelete(new File(dir, key + DEBUGINFO_O_EXT), config.getDebugInfoOFile(clazz));
+                FileUtils.copyFile(infoFile, config.getInfoFile(clazz));
+                clazz.setClazzInfo(ci);
+                config.getLogger().debug("Restored %s from shared cache %s", clazz, dir);
+                return true;
+            }
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to restore %s from shared cache: %s", clazz, e.getMessage());
+            // Make sure a partially restored class is recompiled
+            config.getOFile(clazz).delete();
+        }
+        return false;
+    }
+
+    private static void copyOrDelete(File src, File dest) throws IOException {
+        if (src.isFile()) {
+            FileUtils.copyFile(src, dest);
+        } else if (dest.exists()) {
+            dest.delete();
+        }
+    }
+
+    /**
+     * Adds the files of the specified freshly compiled class to the shared
+     * cache. Does nothing if no shared cache has been configured, if it isn't
+     * writable or in LTO builds.
+     */
+    public static void publish(Config config, Clazz clazz) {
+        if (config.getSharedCacheDir() == null || config.isLto()) {
+            return;
+        }
+        ClazzInfo ci = clazz.getClazzInfo();
+        if (ci == null || ci.getCacheKey() == null) {
+            return;
+        }
+        try {
+            File dir = getSharedEntryDir(config, clazz);
+            String key = ci.getCacheKey();
+            if (new File(dir, key + INFO_EXT).exists()) {
+                return;
+            }
+            if (!dir.mkdirs() && !dir.isDirectory() || !dir.canWrite()) {
+                return;
+            }
+            publish(config.getLinesOFile(clazz), new File(dir, key + LINES_O_EXT));
+            publish(config.getDebugInfoOFile(clazz), new File(dir, key + DEBUGINFO_O_EXT));
+            publish(config.getOFile(clazz), new File(dir, key + O_EXT));
+            // The info file goes last. Readers ignore entries without it.
+            publish(config.getInfoFile(clazz), new File(dir, key + INFO_EXT));
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to add %s to shared cache: %s", clazz, e.getMessage());
+        }
+    }
+
+    private static void publish(File src, File dest) throws IOException {
+        if (!src.isFile()) {
+            return;
+        }
+        // Copy to a temp file first and rename to make sure concurrent
+        // builds never see partially written files.
+        File tmp = File.createTempFile(dest.getName(), ".tmp", dest.getParentFile());
+        try {
+            FileUtils.copyFile(src, tmp);
+            if (!tmp.renameTo(dest) && !dest.isFile()) {
+                throw new IOException("Failed to rename " + tmp + " to " + dest);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+}
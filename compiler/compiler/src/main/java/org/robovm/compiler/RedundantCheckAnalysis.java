@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.Body;
+import soot.IntType;
+import soot.Local;
+import soot.PatchingChain;
+import soot.RefLikeType;
+import soot.Trap;
+import soot.Unit;
+import soot.UnitBox;
+import soot.Value;
+import soot.jimple.AddExpr;
+import soot.jimple.ArrayRef;
+import soot.jimple.CastExpr;
+import soot.jimple.CaughtExceptionRef;
+import soot.jimple.ClassConstant;
+import soot.jimple.ConditionExpr;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.EnterMonitorStmt;
+import soot.jimple.EqExpr;
+import soot.jimple.ExitMonitorStmt;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.IntConstant;
+import soot.jimple.LeExpr;
+import soot.jimple.LengthExpr;
+import soot.jimple.LtExpr;
+import soot.jimple.NeExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.NewMultiArrayExpr;
+import soot.jimple.NullConstant;
+import soot.jimple.Stmt;
+import soot.jimple.StringConstant;
+import soot.jimple.SubExpr;
+import soot.jimple.ThisRef;
+import soot.jimple.ThrowStmt;
+
+/**
+ * Finds the null and array bounds checks in a method body which can't fail.
+ * This complements the {@code NullCheckTag}s and {@code ArrayCheckTag}s added
+ * by Soot's {@code jap.npc} and {@code jap.abc} phases which miss most of the
+ * checks in typical array loops.
+ * <p>
+ * The analysis is a forward must-analysis over the Jimple locals of the body
+ * which tracks four kinds of facts:
+ * <ul>
+ * <li>{@code x != null}: after {@code this}, a caught exception, a
+ * {@code new} or a constant, after {@code x} has been dereferenced and on the
+ * {@code x != null} edge of a branch.</li>
+ * <li>{@code i >= 0}: after a non-negative constant, an array length, a
+ * successful array access with index {@code i}, on the {@code i >= 0} edge of
+ * a branch and after an increment of an index known to be in bounds.</li>
+ * <li>{@code i < a.length}: after a successful array access, on the
+ * {@code i < n} edge of a branch where {@code n == a.length}, after
+ * {@code i = a.length - c} and after a decrement of a non-negative index.</li>
+ * <li>{@code n == a.length}: after {@code n = lengthof a}.</li>
+ * </ul>
+ * This covers the {@code for (i = 0; i < a.length; i++)} and
+ * {@code for (i = a.length - 1; i >= 0; i--)} loop patterns as well as
+ * repeated accesses of the same element. Facts are killed when any local they
+ * mention is redefined. Only locals are tracked so arrays read from fields
+ * inside a loop still get checked. Nothing is assumed to be known at the
+ * start of exception handlers.
+ * <p>
+ * Locals can be modified by a debugger so the results must only be used in
+ * release builds.
+ */
+public class RedundantCheckAnalysis {
+    private static final int NULL = 1;
+    private static final int LOWER = 2;
+    private static final int UPPER = 4;
+    private static final int LENGTH = 8;
+
+    private final Map<Unit, Integer> redundant = new HashMap<>();
+
+    /**
+     * Analyzes the specified {@link Body}.
+     */
+    public RedundantCheckAnalysis(Body body) {
+        PatchingChain<Unit> units = body.getUnits();
+        if (units.isEmpty()) {
+            return;
+        }
+
+        Map<Unit, Set<Fact>> ins = new HashMap<>();
+        Set<Unit> fixed = new HashSet<>();
+        Deque<Unit> worklist = new ArrayDeque<>();
+        fixed.add(units.getFirst());
+        for (Trap trap : body.getTraps()) {
+            fixed.add(trap.getHandlerUnit());
+        }
+        for (Unit u : fixed) {
+            ins.put(u, Collections.<Fact>emptySet());
+            worklist.add(u);
+        }
+
+        while (!worklist.isEmpty()) {
+            Unit u = worklist.removeFirst();
+            Set<Fact> out = flowThrough((Stmt) u, ins.get(u));
+            Unit next = units.getSuccOf(u);
+            if (u instanceof IfStmt) {
+                IfStmt stmt = (IfStmt) u;
+                Set<Fact> outTrue = new HashSet<>(out);
+                Set<Fact> outFalse = new HashSet<>(out);
+                addConditionFacts((ConditionExpr) stmt.getCondition(), true, outTrue);
+                addConditionFacts((ConditionExpr) stmt.getCondition(), false, outFalse);
+                merge(stmt.getTarget(), outTrue, ins, fixed, worklist);
+                if (next != null) {
+                    merge(next, outFalse, ins, fixed, worklist);
+                }
+            } else {
+                if (u.fallsThrough() && next != null) {
+                    merge(next, out, ins, fixed, worklist);
+                }
+                if (u.branches()) {
+                    for (UnitBox box : u.getUnitBoxes()) {
+                        merge(box.getUnit(), out, ins, fixed, worklist);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Unit, Set<Fact>> entry : ins.entrySet()) {
+            int flags = getRedundantChecks((Stmt) entry.getKey(), entry.getValue());
+            if (flags != 0) {
+                redundant.put(entry.getKey(), flags);
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the null check of the value dereferenced by the
+     * specified {@link Unit} can't fail.
+     */
+    public boolean isNullCheckRedundant(Unit u) {
+        return is(u, NULL);
+    }
+
+    /**
+     * Returns {@code true} if the index of the array element accessed by the
+     * specified {@link Unit} is known to be non-negative.
+     */
+    public boolean isLowerCheckRedundant(Unit u) {
+        return is(u, LOWER);
+    }
+
+    /**
+     * Returns {@code true} if the index of the array element accessed by the
+     * specified {@link Unit} is known to be less than the array length.
+     */
+    public boolean isUpperCheckRedundant(Unit u) {
+        return is(u, UPPER);
+    }
+
+    private boolean is(Unit u, int flag) {
+        Integer flags = redundant.get(u);
+        return flags != null && (flags & flag) != 0;
+    }
+
+    private static void merge(Unit succ, Set<Fact> facts, Map<Unit, Set<Fact>> ins,
+            Set<Unit> fixed, Deque<Unit> worklist) {
+
+        if (fixed.contains(succ)) {
+            return;
+        }
+        Set<Fact> old = ins.get(succ);
+        if (old == null) {
+            ins.put(succ, new HashSet<>(facts));
+            worklist.add(succ);
+        } else if (old.retainAll(facts)) {
+            worklist.add(succ);
+        }
+    }
+
+    private static int getRedundantChecks(Stmt stmt, Set<Fact> facts) {
+        int flags = 0;
+        Value base = getDereferencedValue(stmt);
+        if (base instanceof Local && facts.contains(new Fact(NULL, (Local) base))) {
+            flags |= NULL;
+        }
+        if (stmt.containsArrayRef()) {
+            ArrayRef ref = stmt.getArrayRef();
+            Value index = ref.getIndex();
+            if (index instanceof IntConstant && ((IntConstant) index).value >= 0
+                    || index instanceof Local && facts.contains(new Fact(LOWER, (Local) index))) {
+                flags |= LOWER;
+            }
+            if (index instanceof Local && ref.getBase() instanceof Local
+                    && facts.contains(new Fact(UPPER, (Local) index, (Local) ref.getBase()))) {
+                flags |= UPPER;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Returns the value which is null checked by {@link MethodCompiler} when
+     * compiling the specified {@link Stmt}. Jimple statements dereference at
+     * most one value.
+     */
+    private static Value getDereferencedValue(Stmt stmt) {
+        if (stmt.containsArrayRef()) {
+            return stmt.getArrayRef().getBase();
+        }
+        if (stmt.containsFieldRef() && stmt.getFieldRef() instanceof InstanceFieldRef) {
+            return ((InstanceFieldRef) stmt.getFieldRef()).getBase();
+        }
+        if (stmt.containsInvokeExpr() && stmt.getInvokeExpr() instanceof InstanceInvokeExpr) {
+            return ((InstanceInvokeExpr) stmt.getInvokeExpr()).getBase();
+        }
+        if (stmt instanceof DefinitionStmt && ((DefinitionStmt) stmt).getRightOp() instanceof LengthExpr) {
+            return ((LengthExpr) ((DefinitionStmt) stmt).getRightOp()).getOp();
+        }
+        if (stmt instanceof EnterMonitorStmt) {
+            return ((EnterMonitorStmt) stmt).getOp();
+        }
+        if (stmt instanceof ExitMonitorStmt) {
+            return ((ExitMonitorStmt) stmt).getOp();
+        }
+        if (stmt instanceof ThrowStmt) {
+            return ((ThrowStmt) stmt).getOp();
+        }
+        return null;
+    }
+
+    private static Set<Fact> flowThrough(Stmt stmt, Set<Fact> in) {
+        Set<Fact> out = new HashSet<>(in);
+
+        // The checks of the statement have passed if it completes normally
+        Value base = getDereferencedValue(stmt);
+        if (base instanceof Local) {
+            out.add(new Fact(NULL, (Local) base));
+        }
+        if (stmt.containsArrayRef()) {
+            ArrayRef ref = stmt.getArrayRef();
+            if (ref.getIndex() instanceof Local && ref.getBase() instanceof Local) {
+                out.add(new Fact(LOWER, (Local) ref.getIndex()));
+                out.add(new Fact(UPPER, (Local) ref.getIndex(), (Local) ref.getBase()));
+            }
+        }
+
+        if (stmt instanceof DefinitionStmt && ((DefinitionStmt) stmt).getLeftOp() instanceof Local) {
+            Local x = (Local) ((DefinitionStmt) stmt).getLeftOp();
+            Value rightOp = ((DefinitionStmt) stmt).getRightOp();
+            if (rightOp == x) {
+                return out;
+            }
+            List<Fact> gen = getDefinitionFacts(x, rightOp, out);
+            for (Fact f : new ArrayList<>(out)) {
+                if (f.a == x || f.b == x) {
+                    out.remove(f);
+                }
+            }
+            out.addAll(gen);
+        }
+        return out;
+    }
+
+    private static List<Fact> getDefinitionFacts(Local x, Value rightOp, Set<Fact> facts) {
+        List<Fact> gen = new ArrayList<>();
+        if (rightOp instanceof NewExpr || rightOp instanceof NewArrayExpr || rightOp instanceof NewMultiArrayExpr
+                || rightOp instanceof StringConstant || rightOp instanceof ClassConstant
+                || rightOp instanceof ThisRef || rightOp instanceof CaughtExceptionRef) {
+
+            gen.add(new Fact(NULL, x));
+        } else if (rightOp instanceof Local) {
+            // Copy: everything known about the source holds for x too
+            Local y = (Local) rightOp;
+            for (Fact f : facts) {
+                if (f.a == y || f.b == y) {
+                    gen.add(new Fact(f.kind, f.a == y ? x : f.a, f.b == y ? x : f.b));
+                }
+            }
+        } else if (rightOp instanceof CastExpr) {
+            Value op = ((CastExpr) rightOp).getOp();
+            if (rightOp.getType() instanceof RefLikeType && op instanceof Local
+                    && facts.contains(new Fact(NULL, (Local) op))) {
+                gen.add(new Fact(NULL, x));
+            }
+        } else if (rightOp instanceof LengthExpr) {
+            Value op = ((LengthExpr) rightOp).getOp();
+            if (op instanceof Local) {
+                gen.add(new Fact(LENGTH, x, (Local) op));
+            }
+            gen.add(new Fact(LOWER, x));
+        } else if (rightOp instanceof IntConstant) {
+            if (((IntConstant) rightOp).value >= 0) {
+                gen.add(new Fact(LOWER, x));
+            }
+        } else if ((rightOp instanceof AddExpr || rightOp instanceof SubExpr)
+                && rightOp.getType() instanceof IntType) {
+
+            AddExpr add = rightOp instanceof AddExpr ? (AddExpr) rightOp : null;
+            Value op1 = add != null ? add.getOp1() : ((SubExpr) rightOp).getOp1();
+            Value op2 = add != null ? add.getOp2() : ((SubExpr) rightOp).getOp2();
+            if (add != null && op1 instanceof IntConstant) {
+                Value tmp = op1;
+                op1 = op2;
+                op2 = tmp;
+            }
+            if (op1 instanceof Local && op2 instanceof IntConstant) {
+                Local y = (Local) op1;
+                long delta = add != null ? ((IntConstant) op2).value : -(long) ((IntConstant) op2).value;
+                getIncrementFacts(x, y, delta, facts, gen);
+            }
+        }
+        return gen;
+    }
+
+    private static void getIncrementFacts(Local x, Local y, long delta, Set<Fact> facts, List<Fact> gen) {
+        boolean lower = facts.contains(new Fact(LOWER, y));
+        for (Fact f : facts) {
+            if (f.a != y) {
+                continue;
+            }
+            if (f.kind == UPPER && delta == 1 && lower) {
+                // 0 <= y < a.length <= Integer.MAX_VALUE so y + 1 can't overflow
+                gen.add(new Fact(LOWER, x));
+            } else if (f.kind == UPPER && delta < 0 && lower) {
+                // y >= 0 so y - c can't overflow
+                gen.add(new Fact(UPPER, x, f.b));
+            } else if (f.kind == LENGTH && delta < 0) {
+                // y == a.length >= 0 so a.length - c can't overflow
+                gen.add(new Fact(UPPER, x, f.b));
+            }
+        }
+    }
+
+    /**
+     * Adds the facts which hold when the specified condition evaluates to
+     * {@code value}.
+     */
+    private static void addConditionFacts(ConditionExpr cond, boolean value, Set<Fact> facts) {
+        String op;
+        if (cond instanceof LtExpr) {
+            op = value ? "<" : ">=";
+        } else if (cond instanceof GeExpr) {
+            op = value ? ">=" : "<";
+        } else if (cond instanceof GtExpr) {
+            op = value ? ">" : "<=";
+        } else if (cond instanceof LeExpr) {
+            op = value ? "<=" : ">";
+        } else if (cond instanceof EqExpr) {
+            op = value ? "==" : "!=";
+        } else if (cond instanceof NeExpr) {
+            op = value ? "!=" : "==";
+        } else {
+            return;
+        }
+        addRelationFacts(cond.getOp1(), op, cond.getOp2(), facts);
+        addRelationFacts(cond.getOp2(), swap(op), cond.getOp1(), facts);
+    }
+
+    private static String swap(String op) {
+        switch (op) {
+        case "<": return ">";
+        case ">": return "<";
+        case "<=": return ">=";
+        case ">=": return "<=";
+        default: return op;
+        }
+    }
+
+    private static void addRelationFacts(Value left, String op, Value right, Set<Fact> facts) {
+        if (!(left instanceof Local)) {
+            return;
+        }
+        Local i = (Local) left;
+        if (op.equals("!=") && right instanceof NullConstant) {
+            facts.add(new Fact(NULL, i));
+        } else if (op.equals("<") && right instanceof Local) {
+            for (Fact f : new ArrayList<>(facts)) {
+                if (f.kind == LENGTH && f.a == right) {
+                    facts.add(new Fact(UPPER, i, f.b));
+                }
+            }
+        } else if (right instanceof IntConstant) {
+            int c = ((IntConstant) right).value;
+            if (op.equals(">=") && c >= 0 || op.equals(">") && c >= -1) {
+                facts.add(new Fact(LOWER, i));
+            }
+        }
+    }
+
+    /**
+     * A fact about one or two locals. {@code NULL}: {@code a != null}.
+     * {@code LOWER}: {@code a >= 0}. {@code UPPER}: {@code a < b.length}.
+     * {@code LENGTH}: {@code a == b.length}.
+     */
+    private static final class Fact {
+        final int kind;
+        final Local a;
+        final Local b;
+
+        Fact(int kind, Local a) {
+            this(kind, a, null);
+        }
+
+        Fact(int kind, Local a, Local b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public int hashCode() {
+            return kind * 31 * 31 + System.identityHashCode(a) * 31 + System.identityHashCode(b);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Fact)) {
+                return false;
+            }
+            Fact that = (Fact) obj;
+            return kind == that.kind && a == that.a && b == that.b;
+        }
+    }
+}
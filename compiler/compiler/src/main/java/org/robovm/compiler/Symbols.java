@@ -174,6 +174,14 @@ public class Symbols {
         return methodSymbol(method, "linetable");
     }
 
+    public static String functionSizeSymbol(String owner, String name, String desc) {
+        return methodSymbol(owner, name, desc, "size");
+    }
+
+    public static String functionSizeSymbol(SootMethod method) {
+        return methodSymbol(method, "size");
+    }
+
     public static String bptableSymbol(SootMethod method) {
         return methodSymbol(method, "bptable");
     }
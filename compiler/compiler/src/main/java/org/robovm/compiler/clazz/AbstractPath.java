@@ -35,6 +35,7 @@ public abstract class AbstractPath implements Path {
     protected boolean inBootclasspath;
     protected Map<String, Clazz> generatedClasses = new HashMap<>();
     protected final File generatedClassDir;
+    private ClazzInfoIndex clazzInfoIndex;
     
     AbstractPath(File file, Clazzes clazzes, int index, boolean inBootclasspath) {
         this.file = file;
@@ -85,6 +86,14 @@ public abstract class AbstractPath implements Path {
         return clazz;
     }
     
+    synchronized ClazzInfoIndex getClazzInfoIndex() {
+        if (clazzInfoIndex == null) {
+            clazzInfoIndex = new ClazzInfoIndex(clazzes.getConfig().getClazzInfoIndexFile(this),
+                    clazzes.getConfig());
+        }
+        return clazzInfoIndex;
+    }
+
     protected abstract Set<Clazz> doListClasses();
     
     @Override
@@ -127,5 +136,6 @@ public abstract class AbstractPath implements Path {
         disposed = true;
         clazzSet = null;
         generatedClasses = null;
+        clazzInfoIndex = null;
     }
 }
@@ -16,18 +16,19 @@
  */
 package org.robovm.compiler.clazz;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FileUtils;
+import org.robovm.compiler.util.DigestUtil;
 import soot.SootClass;
 import soot.SootMethod;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -45,6 +46,7 @@ public abstract class Clazz implements Comparable<Clazz> {
 
     private ClazzInfo clazzInfo = null; 
     private SootClass sootClass = null;
+    private String digest = null;
 
     // added attachments fields as it is required to keep information in build cycle between calls
     // as it is not possible to keep it in plugin (due to statement that different operations of plugin
@@ -82,23 +84,43 @@ public abstract class Clazz implements Comparable<Clazz> {
     public ClazzInfo getClazzInfo() {
         if (clazzInfo == null) {
             File infoFile = clazzes.getConfig().getInfoFile(this);
-            if (infoFile.exists()) {
-                ObjectInputStream ois = null;
-                try {
-                    ois = new ObjectInputStream(
-                            new BufferedInputStream(new FileInputStream(infoFile)));
-                    clazzInfo = (ClazzInfo) ois.readObject();
-                    clazzInfo.setClazz(this);
-                } catch (IOException e) {
-                } catch (ClassNotFoundException e) {
-                } finally {
-                    IOUtils.closeQuietly(ois);
-                }
+            clazzInfo = path.getClazzInfoIndex().read(this, infoFile);
+            if (clazzInfo == null) {
+                clazzInfo = readClazzInfo(infoFile);
             }
         }
         return clazzInfo;
     }
 
+    /**
+     * Reads a {@link ClazzInfo} for this class previously saved to the
+     * specified file. Returns {@code null} if the file doesn't exist or
+     * couldn't be read.
+     */
+    public ClazzInfo readClazzInfo(File infoFile) {
+        ClazzInfo ci = null;
+        if (infoFile.exists()) {
+            try {
+                ci = ClazzInfoCodec.read(ByteBuffer.wrap(FileUtils.readFileToByteArray(infoFile)));
+                ci.setClazz(this);
+            } catch (IOException e) {
+            }
+        }
+        return ci;
+    }
+
+    /**
+     * Replaces the {@link ClazzInfo} of this class with one read using
+     * {@link #readClazzInfo(File)}, e.g. after restoring this class' compiled
+     * files from a shared cache.
+     */
+    public void setClazzInfo(ClazzInfo clazzInfo) {
+        if (clazzInfo.getClazz() != this) {
+            throw new IllegalArgumentException();
+        }
+        this.clazzInfo = clazzInfo;
+    }
+
     public ClazzInfo resetClazzInfo() {
         clazzInfo = new ClazzInfo(this, getSootClass());
         return clazzInfo;
@@ -110,14 +132,9 @@ public abstract class Clazz implements Comparable<Clazz> {
         }
         File infoFile = clazzes.getConfig().getInfoFile(this);
         infoFile.getParentFile().mkdirs();
-        ObjectOutputStream oos = null;
-        try {
-            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(infoFile)));
-            oos.writeObject(clazzInfo);
-        } finally {
-            IOUtils.closeQuietly(oos);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(infoFile))) {
+            ClazzInfoCodec.write(clazzInfo, os);
         }
-
     }
     
     public SootClass getSootClass() {
@@ -194,6 +211,28 @@ public abstract class Clazz implements Comparable<Clazz> {
     }
 
     public abstract byte[] getBytes() throws IOException;
+
+    /**
+     * Opens a stream reading the bytes of this class. Subclasses should
+     * override this to avoid having to keep all bytes of the class in memory.
+     */
+    protected InputStream openStream() throws IOException {
+        return new ByteArrayInputStream(getBytes());
+    }
+
+    /**
+     * Returns the SHA1 of the bytes of this class. Unlike
+     * {@link #lastModified()} this doesn't change if the class file or the
+     * archive containing it is touched or recreated with identical contents.
+     */
+    public String getDigest() throws IOException {
+        if (digest == null) {
+            try (InputStream in = openStream()) {
+                digest = DigestUtil.sha1(in);
+            }
+        }
+        return digest;
+    }
     
     public abstract long lastModified();
     
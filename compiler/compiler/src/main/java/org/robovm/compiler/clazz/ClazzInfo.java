@@ -16,6 +16,7 @@
  */
 package org.robovm.compiler.clazz;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -37,7 +38,7 @@ import soot.SootMethod;
  *
  */
 public class ClazzInfo implements Serializable {
-    private static final long serialVersionUID = 99L;
+    private static final long serialVersionUID = 100L;
     
     private int modifiers;
     private String name;
@@ -52,6 +53,7 @@ public class ClazzInfo implements Serializable {
     private final Set<String> invokes = new HashSet<>();
     private boolean isStruct;
     private boolean isEnum;
+    private String cacheKey;
     
     private transient Clazz clazz;
     
@@ -111,6 +113,19 @@ public class ClazzInfo implements Serializable {
         return clazz;
     }
     
+    /**
+     * Returns the key identifying the inputs (class bytes, dependencies and
+     * compiler settings) used when the object file of this class was last
+     * compiled. May be {@code null} if the key hasn't been computed.
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
     public boolean isStruct() {
         return isStruct;
     }
@@ -366,4 +381,46 @@ public class ClazzInfo implements Serializable {
                 mi.dropDependencyData();
         dependencies = null;
     }
+
+    void write(ClazzInfoCodec.Writer out) {
+        out.writeVarInt(modifiers);
+        out.writeString(name);
+        out.writeString(internalName);
+        out.writeString(superclassName);
+        out.writeByte((isStruct ? 1 : 0) | (isEnum ? 2 : 0));
+        out.writeString(cacheKey);
+        out.writeStrings(interfaceNames);
+        out.writeStrings(catchNames);
+        out.writeStrings(checkcasts);
+        out.writeStrings(instanceofs);
+        out.writeStrings(invokes);
+        out.writeDependencies(dependencies != null ? dependencies.values() : null);
+        out.writeVarInt(methods.size());
+        for (MethodInfo mi : methods) {
+            mi.write(out);
+        }
+    }
+
+    static ClazzInfo read(ClazzInfoCodec.Reader in) throws IOException {
+        ClazzInfo ci = new ClazzInfo();
+        ci.modifiers = in.readVarInt();
+        ci.name = in.readString();
+        ci.internalName = in.readString();
+        ci.superclassName = in.readString();
+        int flags = in.readByte();
+        ci.isStruct = (flags & 1) != 0;
+        ci.isEnum = (flags & 2) != 0;
+        ci.cacheKey = in.readString();
+        in.readStrings(ci.interfaceNames);
+        in.readStrings(ci.catchNames);
+        in.readStrings(ci.checkcasts);
+        in.readStrings(ci.instanceofs);
+        in.readStrings(ci.invokes);
+        in.readDependencies(ci.dependencies);
+        int methodCount = in.readVarInt();
+        for (int i = 0; i < methodCount; i++) {
+            ci.methods.add(MethodInfo.read(ci, in));
+        }
+        return ci;
+    }
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link ClazzInfo}s. All strings (class names,
+ * method names, descriptors, paths) are stored once in a string table and
+ * referenced by index. Integers are stored as unsigned LEB128 varints.
+ * <p>
+ * The string table of a {@link Writer} can be shared by any number of
+ * {@link ClazzInfo}s. This is what the per {@link Path}
+ * {@link ClazzInfoIndex} does.
+ */
+final class ClazzInfoCodec {
+    /**
+     * Version of the encoding. Must be incremented whenever the encoding of
+     * {@link ClazzInfo}, {@link MethodInfo} or {@link Dependency} changes.
+     */
+    static final int VERSION = 1;
+
+    private static final int CLAZZ_INFO_MAGIC = 0x52564349; // "RVCI"
+
+    private static final int CLASS_DEPENDENCY = 0;
+    private static final int INVOKE_METHOD_DEPENDENCY = 1;
+    private static final int SUPER_METHOD_DEPENDENCY = 2;
+    private static final int WEAK = 1 << 2;
+    private static final int IN_BOOT_CLASSPATH = 1 << 3;
+
+    private ClazzInfoCodec() {
+    }
+
+    /**
+     * Writes a self-contained encoding of the specified {@link ClazzInfo} to
+     * the specified stream.
+     */
+    static void write(ClazzInfo ci, OutputStream os) throws IOException {
+        Writer w = new Writer();
+        ci.write(w);
+        writeHeader(os, CLAZZ_INFO_MAGIC);
+        w.writeStringTable(os);
+        os.write(w.toByteArray());
+    }
+
+    /**
+     * Reads a {@link ClazzInfo} written by {@link #write(ClazzInfo, OutputStream)}.
+     */
+    static ClazzInfo read(ByteBuffer buf) throws IOException {
+        readHeader(buf, CLAZZ_INFO_MAGIC);
+        return ClazzInfo.read(new Reader(buf, Reader.readStringTable(buf)));
+    }
+
+    static void writeHeader(OutputStream os, int magic) throws IOException {
+        os.write(magic >>> 24);
+        os.write(magic >>> 16);
+        os.write(magic >>> 8);
+        os.write(magic);
+        os.write(VERSION);
+    }
+
+    static void readHeader(ByteBuffer buf, int magic) throws IOException {
+        if (buf.remaining() < 5 || buf.getInt() != magic) {
+            throw new IOException("Bad magic");
+        }
+        int version = buf.get() & 0xff;
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+    }
+
+    /**
+     * Encodes data and collects the strings referenced by it.
+     */
+    static final class Writer {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void writeByte(int b) {
+            out.write(b);
+        }
+
+        void writeVarInt(int v) {
+            writeVarLong(v & 0xffffffffL);
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7fL) != 0) {
+                out.write((int) (v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            out.write((int) v);
+        }
+
+        /**
+         * Writes a reference to the specified string which may be
+         * {@code null}.
+         */
+        void writeString(String s) {
+            writeVarInt(s == null ? 0 : addString(s) + 1);
+        }
+
+        /**
+         * Adds the specified string to the string table of this
+         * {@link Writer} and returns its index.
+         */
+        int addString(String s) {
+            Integer index = indexes.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                indexes.put(s, index);
+            }
+            return index;
+        }
+
+        void writeStrings(Collection<String> c) {
+            writeVarInt(c.size());
+            for (String s : c) {
+                writeString(s);
+            }
+        }
+
+        void writeDependencies(Collection<Dependency> deps) {
+            if (deps == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(deps.size());
+            for (Dependency dep : deps) {
+                int flags = (dep.isWeak() ? WEAK : 0) | (dep.isInBootClasspath() ? IN_BOOT_CLASSPATH : 0);
+                if (dep instanceof MethodDependency) {
+                    MethodDependency md = (MethodDependency) dep;
+                    writeByte(flags | (dep instanceof SuperMethodDependency
+                            ? SUPER_METHOD_DEPENDENCY : INVOKE_METHOD_DEPENDENCY));
+                    writeString(md.getOwner());
+                    writeString(md.getMethodName());
+                    writeString(md.getMethodDesc());
+                } else {
+                    writeByte(flags | CLASS_DEPENDENCY);
+                    writeString(dep.getClassName());
+                }
+                writeString(dep.getPath());
+            }
+        }
+
+        /**
+         * Returns the number of bytes written so far excluding the string
+         * table.
+         */
+        int size() {
+            return out.size();
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        void writeStringTable(OutputStream os) throws IOException {
+            Writer w = new Writer();
+            w.writeVarInt(strings.size());
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                w.writeVarInt(bytes.length);
+                w.out.write(bytes, 0, bytes.length);
+            }
+            w.out.writeTo(os);
+        }
+    }
+
+    /**
+     * Decodes data written by a {@link Writer} from a {@link ByteBuffer}.
+     * Malformed data results in an {@link IOException}.
+     */
+    static final class Reader {
+        private final ByteBuffer buf;
+        private final String[] strings;
+
+        Reader(ByteBuffer buf, String[] strings) {
+            this.buf = buf;
+            this.strings = strings;
+        }
+
+        int readByte() throws IOException {
+            try {
+                return buf.get() & 0xff;
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated data");
+            }
+        }
+
+        int readVarInt() throws IOException {
+            long v = readVarLong();
+            if (v > 0xffffffffL) {
+                throw new IOException("Malformed varint");
+            }
+            return (int) v;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int index = readVarInt();
+            if (index == 0) {
+                return null;
+            }
+            if (index > strings.length) {
+                throw new IOException("Invalid string index " + index);
+            }
+            return strings[index - 1];
+        }
+
+        void readStrings(Collection<String> c) throws IOException {
+            int count = readVarInt();
+            for (int i = 0; i < count; i++) {
+                c.add(readString());
+            }
+        }
+
+        void readDependencies(Map<String, Dependency> deps) throws IOException {
+            int count = readVarInt();
+            for (int i = 0; i < count; i++) {
+                int flags = readByte();
+                boolean weak = (flags & WEAK) != 0;
+                boolean inBootClasspath = (flags & IN_BOOT_CLASSPATH) != 0;
+                switch (flags & 3) {
+                case CLASS_DEPENDENCY: {
+                    String className = readString();
+                    deps.put(className, new ClassDependency(className, readString(), inBootClasspath, weak));
+                    break;
+                }
+                case INVOKE_METHOD_DEPENDENCY: {
+                    String owner = readString();
+                    String name = readString();
+                    String desc = readString();
+                    deps.put("Invoke." + owner + "." + name + desc,
+                            new InvokeMethodDependency(owner, name, desc, readString(), inBootClasspath, weak));
+                    break;
+                }
+                case SUPER_METHOD_DEPENDENCY: {
+                    String owner = readString();
+                    String name = readString();
+                    String desc = readString();
+                    deps.put("Super." + owner + "." + name + desc,
+                            new SuperMethodDependency(owner, name, desc, readString(), inBootClasspath, weak));
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown dependency type " + (flags & 3));
+                }
+            }
+        }
+
+        static String[] readStringTable(ByteBuffer buf) throws IOException {
+            Reader r = new Reader(buf, new String[0]);
+            int count = r.readVarInt();
+            if (count > buf.remaining()) {
+                throw new IOException("Invalid string count " + count);
+            }
+            String[] strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                int length = r.readVarInt();
+                if (length > buf.remaining()) {
+                    throw new IOException("Truncated string table");
+                }
+                byte[] bytes = new byte[length];
+                buf.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return strings;
+        }
+    }
+}
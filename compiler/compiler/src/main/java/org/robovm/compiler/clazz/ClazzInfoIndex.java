@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.robovm.compiler.config.Config;
+
+/**
+ * Memory mapped index of the {@link ClazzInfo}s of the classes in a
+ * {@link Path}. Reading the {@link ClazzInfo}s of all classes from the index
+ * is a lot cheaper than opening and decoding one {@code .class.info} file per
+ * class.
+ * <p>
+ * The {@code .class.info} files remain the authoritative source. Each entry in
+ * the index records the size and modification time of the file it was read
+ * from and is only used while those still match. The index is rewritten using
+ * {@link #update(Collection)} at the end of a build which compiled any
+ * classes in the {@link Path}.
+ * <p>
+ * Layout: a header, a string table shared by all entries, a directory of
+ * {@code (class name, length, info file size, info file modification time,
+ * offset)} tuples and the encoded {@link ClazzInfo}s. Only the directory is
+ * decoded when the index is opened.
+ */
+final class ClazzInfoIndex {
+    private static final int MAGIC = 0x52564958; // "RVIX"
+
+    private final File file;
+    private final Config config;
+    private boolean opened = false;
+    private ByteBuffer data;
+    private String[] strings;
+    private Map<String, Entry> entries;
+
+    ClazzInfoIndex(File file, Config config) {
+        this.file = file;
+        this.config = config;
+    }
+
+    /**
+     * Returns the {@link ClazzInfo} of the specified class if the index has an
+     * up to date entry for the specified info file. Returns {@code null}
+     * otherwise.
+     */
+    synchronized ClazzInfo read(Clazz clazz, File infoFile) {
+        open();
+        if (entries == null) {
+            return null;
+        }
+        Entry entry = entries.get(clazz.getInternalName());
+        if (entry == null || !entry.matches(infoFile)) {
+            return null;
+        }
+        try {
+            ClazzInfo ci = decode(entry);
+            ci.setClazz(clazz);
+            return ci;
+        } catch (IOException | RuntimeException e) {
+            config.getLogger().warn("Ignoring corrupt class info index %s: %s", file, e.getMessage());
+            close();
+            return null;
+        }
+    }
+
+    /**
+     * Rewrites the index to contain up to date entries for the specified
+     * classes. Entries for other classes are kept. Does nothing if the index
+     * is already up to date.
+     */
+    synchronized void update(Collection<Clazz> clazzes) {
+        open();
+        Map<String, Entry> oldEntries = entries != null ? entries : new HashMap<String, Entry>();
+
+        TreeMap<String, long[]> stats = new TreeMap<>();
+        Map<String, File> changed = new HashMap<>();
+        for (Clazz clazz : clazzes) {
+            String name = clazz.getInternalName();
+            File infoFile = config.getInfoFile(clazz);
+            long[] stat = stat(infoFile);
+            Entry entry = oldEntries.get(name);
+            if (stat == null) {
+                if (entry != null) {
+                    changed.put(name, null);
+                }
+            } else {
+                stats.put(name, stat);
+                if (entry == null || entry.size != stat[0] || entry.lastModified != stat[1]) {
+                    changed.put(name, infoFile);
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        TreeMap<String, ClazzInfo> infos = new TreeMap<>();
+        try {
+            for (Entry entry : oldEntries.values()) {
+                if (!changed.containsKey(entry.name)) {
+                    infos.put(entry.name, decode(entry));
+                    if (!stats.containsKey(entry.name)) {
+                        stats.put(entry.name, new long[] {entry.size, entry.lastModified});
+                    }
+                }
+            }
+        } catch (IOException e) {
+            config.getLogger().warn("Ignoring corrupt class info index %s: %s", file, e.getMessage());
+            infos.clear();
+        }
+        for (Map.Entry<String, File> e : changed.entrySet()) {
+            ClazzInfo ci = e.getValue() != null ? readInfoFile(e.getValue()) : null;
+            if (ci != null) {
+                infos.put(e.getKey(), ci);
+            }
+        }
+
+        close();
+        write(infos, stats);
+        // Reopen the new index on the next read
+        opened = false;
+    }
+
+    private void write(TreeMap<String, ClazzInfo> infos, TreeMap<String, long[]> stats) {
+        ClazzInfoCodec.Writer dataWriter = new ClazzInfoCodec.Writer();
+        ClazzInfoCodec.Writer dirWriter = new ClazzInfoCodec.Writer();
+        dirWriter.writeVarInt(infos.size());
+        for (Map.Entry<String, ClazzInfo> e : infos.entrySet()) {
+            int offset = dataWriter.size();
+            e.getValue().write(dataWriter);
+            long[] stat = stats.get(e.getKey());
+            // The directory shares the string table of the data
+            dirWriter.writeVarInt(dataWriter.addString(e.getKey()) + 1);
+            dirWriter.writeVarInt(dataWriter.size() - offset);
+            dirWriter.writeVarLong(stat[0]);
+            dirWriter.writeVarLong(stat[1]);
+            dirWriter.writeVarInt(offset);
+        }
+
+        File tmp = null;
+        try {
+            file.getParentFile().mkdirs();
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                ClazzInfoCodec.writeHeader(os, MAGIC);
+                dataWriter.writeStringTable(os);
+                os.write(dirWriter.toByteArray());
+                os.write(dataWriter.toByteArray());
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            config.getLogger().debug("Wrote class info index %s with %d entries", file, infos.size());
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to write class info index %s: %s", file, e.getMessage());
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        if (!file.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ClazzInfoCodec.readHeader(buf, MAGIC);
+            strings = ClazzInfoCodec.Reader.readStringTable(buf);
+            ClazzInfoCodec.Reader r = new ClazzInfoCodec.Reader(buf, strings);
+            int count = r.readVarInt();
+            Map<String, Entry> dir = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = r.readString();
+                int length = r.readVarInt();
+                long size = r.readVarLong();
+                long lastModified = r.readVarLong();
+                int offset = r.readVarInt();
+                dir.put(name, new Entry(name, offset, length, size, lastModified));
+            }
+            data = buf.slice();
+            entries = dir;
+        } catch (IOException | RuntimeException e) {
+            config.getLogger().warn("Ignoring corrupt class info index %s: %s", file, e.getMessage());
+            close();
+        }
+    }
+
+    private void close() {
+        data = null;
+        strings = null;
+        entries = null;
+    }
+
+    private ByteBuffer slice(Entry entry) throws IOException {
+        if (entry.offset < 0 || entry.length < 0 || entry.offset > data.limit() - entry.length) {
+            throw new IOException("Invalid entry offset");
+        }
+        ByteBuffer b = data.duplicate();
+        b.position(entry.offset);
+        b.limit(entry.offset + entry.length);
+        return b;
+    }
+
+    private ClazzInfo decode(Entry entry) throws IOException {
+        return ClazzInfo.read(new ClazzInfoCodec.Reader(slice(entry), strings));
+    }
+
+    private static ClazzInfo readInfoFile(File infoFile) {
+        try {
+            return ClazzInfoCodec.read(ByteBuffer.wrap(Files.readAllBytes(infoFile.toPath())));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the size and modification time of the specified file or
+     * {@code null} if it doesn't exist.
+     */
+    private static long[] stat(File f) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            return new long[] {attrs.size(), attrs.lastModifiedTime().toMillis()};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        final int offset;
+        final int length;
+        final long size;
+        final long lastModified;
+        final String name;
+
+        Entry(String name, int offset, int length, long size, long lastModified) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(File infoFile) {
+            long[] stat = stat(infoFile);
+            return stat != null && stat[0] == size && stat[1] == lastModified;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -237,6 +238,27 @@ public class Clazzes {
             throw new IllegalStateException("Content has been disposed !");
     }
 
+    /**
+     * Updates the {@link ClazzInfo} indexes of the {@link Path}s containing
+     * the specified classes. Should be called once the specified classes have
+     * been compiled.
+     */
+    public void updateClazzInfoIndexes(Collection<Clazz> clazzes) {
+        Map<AbstractPath, List<Clazz>> byPath = new HashMap<>();
+        for (Clazz clazz : clazzes) {
+            AbstractPath path = (AbstractPath) clazz.getPath();
+            List<Clazz> l = byPath.get(path);
+            if (l == null) {
+                l = new ArrayList<>();
+                byPath.put(path, l);
+            }
+            l.add(clazz);
+        }
+        for (Map.Entry<AbstractPath, List<Clazz>> entry : byPath.entrySet()) {
+            entry.getKey().getClazzInfoIndex().update(entry.getValue());
+        }
+    }
+
     /**
      * drops caches and all classes data. after this point this data is not accessible
      */
@@ -106,6 +106,11 @@ public class DirectoryPath extends AbstractPath {
             return bytes;
         }
 
+        @Override
+        protected InputStream openStream() throws IOException {
+            return bytes != null ? super.openStream() : new FileInputStream(f);
+        }
+
         public File getClassFile(){
             return f;
         }
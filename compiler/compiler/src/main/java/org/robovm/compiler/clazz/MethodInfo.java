@@ -16,6 +16,7 @@
  */
 package org.robovm.compiler.clazz;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
@@ -208,6 +209,25 @@ public class MethodInfo implements Serializable {
         dependencies = null;
     }
 
+    void write(ClazzInfoCodec.Writer out) {
+        out.writeVarInt(modifiers);
+        out.writeString(name);
+        out.writeString(desc);
+        out.writeByte((callback ? 1 : 0) | (weaklyLinked ? 2 : 0) | (stronglyLinked ? 4 : 0));
+        out.writeDependencies(dependencies != null ? dependencies.values() : null);
+    }
+
+    static MethodInfo read(ClazzInfo ci, ClazzInfoCodec.Reader in) throws IOException {
+        int modifiers = in.readVarInt();
+        String name = in.readString();
+        String desc = in.readString();
+        int flags = in.readByte();
+        MethodInfo mi = new MethodInfo(ci, modifiers, name, desc, (flags & 1) != 0, (flags & 2) != 0,
+                (flags & 4) != 0);
+        in.readDependencies(mi.dependencies);
+        return mi;
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this);
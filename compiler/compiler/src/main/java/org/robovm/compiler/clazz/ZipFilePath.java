@@ -95,6 +95,11 @@ public class ZipFilePath extends AbstractPath {
             return bytes;
         }
         
+        @Override
+        protected InputStream openStream() throws IOException {
+            return bytes != null ? super.openStream() : zipFile.getInputStream(entry);
+        }
+
         public long lastModified() {
             return file.lastModified();
         }
@@ -205,10 +205,12 @@ public class Config {
     private Home home = null;
     private File tmpDir;
     private File cacheDir = new File(System.getProperty("user.home"), ".robovm/cache");
+    private File sharedCacheDir = null;
     private File ccBinPath = null;
 
     private boolean clean = false;
     private boolean debug = false;
+    private boolean lto = false;
     private boolean useDebugLibs = false;
     private boolean skipLinking = false;
     private boolean skipInstall = false;
@@ -228,6 +230,7 @@ public class Config {
     private transient Target target = null;
     private transient File osArchDepLibDir;
     private transient File osArchCacheDir;
+    private transient File osArchSharedCacheDir;
     private transient Clazzes clazzes;
     private transient VTable.Cache vtableCache;
     private transient ITable.Cache itableCache;
@@ -301,6 +304,16 @@ public class Config {
         return osArchCacheDir;
     }
 
+    /**
+     * Returns the os/arch/build type specific directory of the shared object
+     * file cache or {@code null} if no shared cache has been configured. The
+     * shared cache is looked up when a class isn't found in the local cache
+     * and is populated by builds which have write access to it.
+     */
+    public File getSharedCacheDir() {
+        return osArchSharedCacheDir;
+    }
+
     public File getCcBinPath() {
         return ccBinPath;
     }
@@ -348,6 +361,14 @@ public class Config {
         return debug;
     }
 
+    /**
+     * Returns {@code true} if small methods should be inlined across class
+     * boundaries when linking. Only applies to release builds.
+     */
+    public boolean isLto() {
+        return lto && !debug;
+    }
+
     public boolean isUseDebugLibs() {
         return useDebugLibs;
     }
@@ -705,6 +726,14 @@ public class Config {
         return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.bc"));
     }
 
+    public File getLtoBcFile(Clazz clazz) {
+        return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.lto.bc"));
+    }
+
+    public File getLtoKeyFile(Clazz clazz) {
+        return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.lto.sha1"));
+    }
+
     public File getSFile(Clazz clazz) {
         return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.s"));
     }
@@ -733,6 +762,15 @@ public class Config {
         return new File(getCacheDir(clazz.getPath()), getFileName(clazz, "class.info"));
     }
 
+    /**
+     * Returns the index file of the {@link org.robovm.compiler.clazz.ClazzInfo}s
+     * of the classes in the specified {@link Path}.
+     */
+    public File getClazzInfoIndexFile(Path path) {
+        File pathCacheDir = getCacheDir(path);
+        return new File(pathCacheDir.getParentFile(), pathCacheDir.getName() + ".info.idx");
+    }
+
     public File getCacheDir(Path path) {
         File srcRoot = path.getFile().getAbsoluteFile().getParentFile();
         String name = path.getFile().getName();
@@ -1056,6 +1094,11 @@ public class Config {
         osArchCacheDir = new File(archDir, debug ? "debug" : "release");
         osArchCacheDir.mkdirs();
 
+        if (sharedCacheDir != null) {
+            osArchSharedCacheDir = new File(new File(new File(sharedCacheDir, 
+                    os.toString()), archName), debug ? "debug" : "release");
+        }
+
         this.clazzes = new Clazzes(this, realBootclasspath, classpath);
 
         if(this.stripArchivesConfig == null) {
@@ -1350,6 +1393,11 @@ public class Config {
             return this;
         }
 
+        public Builder sharedCacheDir(File sharedCacheDir) {
+            config.sharedCacheDir = sharedCacheDir;
+            return this;
+        }
+
         public Builder clean(boolean b) {
             config.clean = b;
             return this;
@@ -1365,6 +1413,11 @@ public class Config {
             return this;
         }
 
+        public Builder lto(boolean b) {
+            config.lto = b;
+            return this;
+        }
+
         public Builder useDebugLibs(boolean b) {
             config.useDebugLibs = b;
             return this;
@@ -1,6 +1,7 @@
 package org.robovm.compiler.plugin.desugar;
 
 import soot.*;
+import soot.jimple.IntConstant;
 import soot.jimple.Jimple;
 import soot.jimple.StringConstant;
 
@@ -10,14 +11,20 @@ public class StringConcatRewriter {
     private static final String JAVA_OBJECT = "java.lang.Object";
     private static final String JAVA_STRING = "java.lang.String";
     private static final String JAVA_STRINGBUILDER = "java.lang.StringBuilder";
-    private static final String JAVA_STRINGBUILDER_INIT = "void <init>()";
+    private static final String JAVA_STRINGBUILDER_INIT = "void <init>(int)";
+    private static final String JAVA_STRING_LENGTH = "int length()";
+    private static final String JAVA_STRING_VALUEOF = "java.lang.String valueOf(java.lang.Object)";
     private static final String JAVA_STRINGBUILDER_TOSTRING = "java.lang.String toString()";
     private static final String APPEND = "append";
+    private static final int DEFAULT_CAPACITY = 16;
 
     private SootMethod StringBuilder_init;
     private SootMethod StringBuilder_toString;
     private SootMethod defaultStringBuilder_append;
     private Map<Type, SootMethod> StringBuilder_append;
+    private SootMethod String_length;
+    private SootMethod String_valueOf;
+    private Map<Type, Integer> maxLengths;
 
     public StringConcatRewriter() {
         init();
@@ -27,6 +34,22 @@ public class StringConcatRewriter {
         SootClass java_lang_StringBuilder = SootResolver.v().resolveClass(JAVA_STRINGBUILDER, SootClass.SIGNATURES);
         StringBuilder_init = java_lang_StringBuilder.getMethod(JAVA_STRINGBUILDER_INIT);
         StringBuilder_toString = java_lang_StringBuilder.getMethod(JAVA_STRINGBUILDER_TOSTRING);
+        SootClass java_lang_String = SootResolver.v().resolveClass(JAVA_STRING, SootClass.SIGNATURES);
+        String_length = java_lang_String.getMethod(JAVA_STRING_LENGTH);
+        String_valueOf = java_lang_String.getMethod(JAVA_STRING_VALUEOF);
+
+        // Longest string representation of each primitive type. Floating
+        // point values are estimated as most of them are much shorter than
+        // the longest possible representation.
+        maxLengths = new HashMap<>();
+        maxLengths.put(BooleanType.v(), 5); // false
+        maxLengths.put(CharType.v(), 1);
+        maxLengths.put(ByteType.v(), 4); // -128
+        maxLengths.put(ShortType.v(), 6); // -32768
+        maxLengths.put(IntType.v(), 11); // -2147483648
+        maxLengths.put(LongType.v(), 20); // -9223372036854775808
+        maxLengths.put(FloatType.v(), 16);
+        maxLengths.put(DoubleType.v(), 24);
 
         StringBuilder_append = new HashMap<>();
         defaultStringBuilder_append = java_lang_StringBuilder
@@ -103,26 +126,77 @@ public class StringConcatRewriter {
         return rewrite(body, outValue, args);
     }
 
+    /**
+     * Lowers the concatenation to a {@link StringBuilder} sized to fit the
+     * result. Non-primitive arguments are converted to strings up front (in
+     * argument order, like the JDK's concatenation strategies do) so that
+     * their exact lengths are known. The lengths of the constant parts are
+     * known at compile time and primitives are accounted for by their
+     * longest representation. As {@link StringBuilder#toString()} shares
+     * its buffer with the returned {@link String} unless much of it is
+     * unused the result is built without growing or copying the buffer.
+     */
     private LinkedList<Unit> rewrite(Body body, Value outValue, List<Value> args) {
         LinkedList<Unit> newUnits = new LinkedList<>();
 
-        // Create new local StringBuilder
-        Local stringBuilderLocal = createNewLocal(body, RefType.v(JAVA_STRINGBUILDER));
-        newUnits.add(
-                Jimple.v().newAssignStmt(stringBuilderLocal, Jimple.v().newNewExpr(RefType.v(JAVA_STRINGBUILDER))));
-
-        // Initialize local StringBuilder
-        newUnits.add(Jimple.v().newInvokeStmt(
-                Jimple.v().newSpecialInvokeExpr(stringBuilderLocal, StringBuilder_init.makeRef())));
-
+        int constLength = 0;
+        Local capacityLocal = null;
+        List<Value> values = new ArrayList<>(args.size());
         for (Value value : args) {
             if (value instanceof StringConstant) {
+                constLength += ((StringConstant) value).value.length();
                 // Create new constant string local
                 Local constString = createNewLocal(body, RefType.v(JAVA_STRING));
                 newUnits.add(Jimple.v().newAssignStmt(constString, value));
                 value = constString;
+            } else if (maxLengths.containsKey(value.getType())) {
+                constLength += maxLengths.get(value.getType());
+            } else {
+                // Convert to string. String.valueOf() returns "null" for
+                // null and the argument itself for non-null strings.
+                Local string = createNewLocal(body, RefType.v(JAVA_STRING));
+                newUnits.add(Jimple.v().newAssignStmt(string,
+                        Jimple.v().newStaticInvokeExpr(String_valueOf.makeRef(), value)));
+                value = string;
+
+                Local length = createNewLocal(body, IntType.v());
+                newUnits.add(Jimple.v().newAssignStmt(length,
+                        Jimple.v().newVirtualInvokeExpr(string, String_length.makeRef())));
+                if (capacityLocal == null) {
+                    capacityLocal = length;
+                } else {
+                    Local sum = createNewLocal(body, IntType.v());
+                    newUnits.add(Jimple.v().newAssignStmt(sum, Jimple.v().newAddExpr(capacityLocal, length)));
+                    capacityLocal = sum;
+                }
             }
+            values.add(value);
+        }
+
+        // Create new local StringBuilder
+        Local stringBuilderLocal = createNewLocal(body, RefType.v(JAVA_STRINGBUILDER));
+        Unit newStringBuilder =
+                Jimple.v().newAssignStmt(stringBuilderLocal, Jimple.v().newNewExpr(RefType.v(JAVA_STRINGBUILDER)));
+
+        Value capacity = IntConstant.v(constLength);
+        if (capacityLocal != null) {
+            Local sum = createNewLocal(body, IntType.v());
+            newUnits.add(Jimple.v().newAssignStmt(sum, Jimple.v().newAddExpr(capacityLocal, capacity)));
+            // The sum overflows if the result would be too long. Fall back to
+            // the default capacity and let the StringBuilder fail when it
+            // grows like the JDK does.
+            newUnits.add(Jimple.v().newIfStmt(Jimple.v().newGeExpr(sum, IntConstant.v(0)), newStringBuilder));
+            newUnits.add(Jimple.v().newAssignStmt(sum, IntConstant.v(DEFAULT_CAPACITY)));
+            capacity = sum;
+        }
+
+        newUnits.add(newStringBuilder);
+
+        // Initialize local StringBuilder
+        newUnits.add(Jimple.v().newInvokeStmt(
+                Jimple.v().newSpecialInvokeExpr(stringBuilderLocal, StringBuilder_init.makeRef(), capacity)));
 
+        for (Value value : values) {
             // Append argument to StringBuilder
             newUnits.add(Jimple.v().newInvokeStmt(
                     Jimple.v().newVirtualInvokeExpr(stringBuilderLocal,
@@ -16,6 +16,8 @@
  */
 package org.robovm.compiler.util;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -42,6 +44,24 @@ public class DigestUtil {
         }
     }
     
+    public static String sha1(byte[] bytes) {
+        return encodeHex(digest("SHA1", bytes));
+    }
+
+    /**
+     * Calculates the SHA1 of all bytes read from the specified stream. The
+     * stream is read until EOF but not closed.
+     */
+    public static String sha1(InputStream in) throws IOException {
+        MessageDigest md = getDigest("SHA1");
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            md.update(buffer, 0, n);
+        }
+        return encodeHex(md.digest());
+    }
+
     private static byte[] digest(String algorithm, byte[] bytes) {
         return getDigest(algorithm).digest(bytes);
     }
@@ -45,6 +45,7 @@
 
 declare void @_bcInitializeClass(%Env*, i8**)
 declare %Object* @_bcAllocate(%Env*, i8**)
+declare %Object* @_bcNewStackObject(%Env*, %Object*, %Object*, i32)
 declare %Object* @_bcLdcArrayBootClass(%Env*, %Object**, i8*)
 declare %Object* @_bcLdcArrayClass(%Env*, %Object**, i8*)
 declare %Object* @_bcLdcClass(%Env*, i8**)
@@ -929,15 +930,20 @@ yesThin:
     %isOwner = icmp eq i32 %owner, %threadId
     br i1 %isOwner, label %maybeUnlock, label %callBc
 maybeUnlock:
+    ; LW_LOCK_COUNT_MASK = 0xfff and LW_LOCK_CONTENDED = 0x1000 (shifted).
+    ; Contended locks are released by _bcMonitorExit which wakes the waiters.
     %2 = lshr i32 %thin, 19 ; LW_LOCK_COUNT_SHIFT = 19
-    %count = and i32 %2, 8191 ; LW_LOCK_COUNT_MASK = 0x1fff
+    %count = and i32 %2, 8191
     %lockPtr = call i32* @Object_lockPtr(%Object* %o)
     %isZero = icmp eq i32 %count, 0
     br i1 %isZero, label %unlock, label %callBc
 unlock:
     %newThin = and i32 %thin, 6 ; LW_HASH_STATE_MASK << LW_HASH_STATE_SHIFT (0x3 << 1)
     fence seq_cst
-    store volatile i32 %newThin, i32* %lockPtr
+    ; CAS since a waiting thread may set LW_LOCK_CONTENDED concurrently
+    %isSuccess = call i1 @atomic_cas(i32 %thin, i32 %newThin, i32* %lockPtr)
+    br i1 %isSuccess, label %success, label %callBc
+success:
     ret void
 callBc:
     tail call void @_bcMonitorExit(%Env* %env, %Object* %o)
@@ -18,8 +18,25 @@ package org.robovm.compiler;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
 import org.junit.Test;
+import org.robovm.compiler.clazz.Clazz;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.config.Config.Home;
 import org.robovm.compiler.llvm.*;
+import org.robovm.compiler.log.Logger;
+import org.robovm.compiler.trampoline.Invokestatic;
+import org.robovm.compiler.trampoline.Trampoline;
+import org.robovm.rt.bro.MarshalerFlags;
+import org.robovm.rt.bro.annotation.Bridge;
+import org.robovm.rt.bro.annotation.MarshalsPointer;
+
+import soot.Scene;
+import soot.options.Options;
 
 import static org.robovm.compiler.llvm.Type.*;
 
@@ -28,6 +45,151 @@ import static org.robovm.compiler.llvm.Type.*;
  */
 public class BridgeMethodCompilerTest {
 
+    private static Config config;
+
+    /**
+     * Initializes Soot and the {@link Config} on first use so that the C
+     * wrapper tests don't depend on them.
+     */
+    private static Config config() throws IOException {
+        if (config != null) {
+            return config;
+        }
+        soot.G.reset();
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_include_all(true);
+        Options.v().set_print_tags_in_output(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_soot_classpath(ClassPathUtils.getBcPath() +
+                File.pathSeparator + System.getProperty("java.class.path"));
+        Scene.v().loadNecessaryClasses();
+
+        Config.Builder configBuilder = new Config.Builder();
+        for (File p : ClassPathUtils.getBcPaths()) {
+            configBuilder.addBootClasspathEntry(p);
+        }
+        for (String p : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            configBuilder.addClasspathEntry(new File(p));
+        }
+        configBuilder.skipInstall(true);
+        configBuilder.skipLinking(true);
+        configBuilder.home(new MockHome(new File(System.getProperty("java.io.tmpdir"))));
+        configBuilder.logger(new Logger() {
+            public void warn(String format, Object... args) {
+                System.out.format("WARN: " + format, args);
+                System.out.println();
+            }
+            public void info(String format, Object... args) {
+                System.out.format("INFO: " + format, args);
+                System.out.println();
+            }
+            public void error(String format, Object... args) {
+                System.out.format("ERROR: " + format, args);
+                System.out.println();
+            }
+            public void debug(String format, Object... args) {
+                System.out.format("DEBUG: " + format, args);
+                System.out.println();
+            }
+        });
+        config = configBuilder.build();
+        return config;
+    }
+
+    private static BridgeMethodCompiler compile(String methodName, StringBuilder ir) throws IOException {
+        Config config = config();
+        Clazz clazz = config.getClazzes().load(Natives.class.getName().replace('.', '/'));
+        BridgeMethodCompiler compiler = new BridgeMethodCompiler(config);
+        compiler.reset(clazz);
+        Function fn = compiler.compile(new ModuleBuilder(),
+                clazz.getSootClass().getMethodByName(methodName));
+        ir.append(fn.toString());
+        return compiler;
+    }
+
+    private static Invokestatic findInvokestatic(Set<Trampoline> trampolines, String methodName) {
+        for (Trampoline t : trampolines) {
+            if (t instanceof Invokestatic && ((Invokestatic) t).getMethodName().equals(methodName)) {
+                return (Invokestatic) t;
+            }
+        }
+        return null;
+    }
+
+    private static String findCall(String ir, Invokestatic target) {
+        for (String line : ir.split("\n")) {
+            if (line.contains(target.getFunctionName())) {
+                return line.trim();
+            }
+        }
+        return null;
+    }
+
+    private static int countCalls(String ir, Invokestatic target) {
+        return ir.split(Pattern.quote(target.getFunctionName()), -1).length - 1;
+    }
+
+    @Test
+    public void testArenaUsedForStringParameters() throws Exception {
+        StringBuilder ir = new StringBuilder();
+        Set<Trampoline> trampolines = compile("strchr", ir).getTrampolines();
+        String s = ir.toString();
+
+        Invokestatic mark = findInvokestatic(trampolines, "markBridgeCall");
+        Invokestatic leave = findInvokestatic(trampolines, "leaveBridgeCall");
+        Invokestatic toNative = findInvokestatic(trampolines, "toNative");
+        Invokestatic toObject = findInvokestatic(trampolines, "toObject");
+        assertNotNull(mark);
+        assertNotNull(leave);
+        assertEquals("org/robovm/rt/bro/Arena", mark.getTarget());
+        assertEquals("org/robovm/rt/bro/Arena", leave.getTarget());
+        assertNull(findInvokestatic(trampolines, "enterBridgeCall"));
+
+        // The String argument is marshaled with the ARENA flag set.
+        assertTrue(findCall(s, toNative).endsWith(
+                "i64 " + (MarshalerFlags.CALL_TYPE_BRIDGE | MarshalerFlags.ARENA) + ")"));
+        // The Arena is left once on the normal path and once on the
+        // exception path.
+        assertEquals(1, countCalls(s, mark));
+        assertEquals(2, countCalls(s, leave));
+        // The mark is taken before the arguments are marshaled and the Arena
+        // isn't left until the returned String has been marshaled.
+        int leaveIdx = s.indexOf(leave.getFunctionName());
+        assertTrue(s.indexOf(mark.getFunctionName()) < s.indexOf(toNative.getFunctionName()));
+        assertTrue(s.indexOf(toObject.getFunctionName()) < leaveIdx);
+    }
+
+    @Test
+    public void testArenaNotUsedIfDisabled() throws Exception {
+        StringBuilder ir = new StringBuilder();
+        Set<Trampoline> trampolines = compile("strlenNoArena", ir).getTrampolines();
+        assertNull(findInvokestatic(trampolines, "markBridgeCall"));
+        assertNull(findInvokestatic(trampolines, "leaveBridgeCall"));
+        Invokestatic toNative = findInvokestatic(trampolines, "toNative");
+        assertTrue(findCall(ir.toString(), toNative).endsWith(
+                "i64 " + MarshalerFlags.CALL_TYPE_BRIDGE + ")"));
+    }
+
+    @Test
+    public void testArenaNotUsedWithoutStringParameters() throws Exception {
+        StringBuilder ir = new StringBuilder();
+        Set<Trampoline> trampolines = compile("abs", ir).getTrampolines();
+        assertNull(findInvokestatic(trampolines, "markBridgeCall"));
+        assertNull(findInvokestatic(trampolines, "leaveBridgeCall"));
+    }
+
+    @Test
+    public void testArenaNotUsedIfMarshalerDoesNotUseArena() throws Exception {
+        StringBuilder ir = new StringBuilder();
+        Set<Trampoline> trampolines = compile("strlenNoArenaMarshaler", ir).getTrampolines();
+        assertNull(findInvokestatic(trampolines, "markBridgeCall"));
+        assertNull(findInvokestatic(trampolines, "leaveBridgeCall"));
+        Invokestatic toNative = findInvokestatic(trampolines, "toNative");
+        assertEquals(NoArenaStringMarshaler.class.getName().replace('.', '/'), toNative.getTarget());
+        assertTrue(findCall(ir.toString(), toNative).endsWith(
+                "i64 " + MarshalerFlags.CALL_TYPE_BRIDGE + ")"));
+    }
+
     @Test
     public void testCreateBridgeCWrapperNoReturnNoParameters() {
         FunctionType functionType = new FunctionType(VOID);
@@ -250,4 +412,25 @@ public class BridgeMethodCompilerTest {
                 BridgeMethodCompiler.createBridgeCWrapper(functionType.getReturnType(),
                         functionType.getParameterTypes(), functionType.getParameterTypes(), "f"));
     }
+
+    public static class Natives {
+        @Bridge public static native String strchr(String s, int c);
+        @Bridge(arena = false) public static native int strlenNoArena(String s);
+        @Bridge public static native int abs(int i);
+        @Bridge public static native int strlenNoArenaMarshaler(
+                @org.robovm.rt.bro.annotation.Marshaler(NoArenaStringMarshaler.class) String s);
+    }
+
+    public static class NoArenaStringMarshaler {
+        @MarshalsPointer
+        public static long toNative(String s, long flags) {
+            return 0;
+        }
+    }
+
+    public static class MockHome extends Home {
+        public MockHome(File homeDir) {
+            super(homeDir, false);
+        }
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.jimple.AssignStmt;
+import soot.options.Options;
+
+/**
+ * Tests {@link EscapeAnalysis}.
+ */
+public class EscapeAnalysisTest {
+
+    @Before
+    public void initializeSoot() {
+        soot.G.reset();
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_soot_classpath(ClassPathUtils.getBcPath() +
+                File.pathSeparator + System.getProperty("java.class.path"));
+        Scene.v().loadNecessaryClasses();
+    }
+
+    private Set<AssignStmt> analyze(String methodName, Set<SootClass> dependencies) {
+        SootClass sc = Scene.v().loadClassAndSupport("org.robovm.compiler.e.Escape");
+        return new EscapeAnalysis().findStackAllocations(
+                sc.getMethodByName(methodName).retrieveActiveBody(), dependencies);
+    }
+
+    private Set<AssignStmt> analyze(String methodName) {
+        return analyze(methodName, new HashSet<SootClass>());
+    }
+
+    @Test
+    public void testLocal() {
+        Set<SootClass> dependencies = new HashSet<>();
+        assertEquals(1, analyze("local", dependencies).size());
+        assertTrue(dependencies.contains(Scene.v().getSootClass("org.robovm.compiler.e.Escape$Point")));
+    }
+
+    @Test
+    public void testReturnedFromCallee() {
+        assertEquals(1, analyze("chained").size());
+    }
+
+    @Test
+    public void testReturned() {
+        assertTrue(analyze("returned").isEmpty());
+    }
+
+    @Test
+    public void testStored() {
+        assertTrue(analyze("stored").isEmpty());
+    }
+
+    @Test
+    public void testLoop() {
+        assertTrue(analyze("loop").isEmpty());
+    }
+
+    @Test
+    public void testFinalizable() {
+        assertTrue(analyze("finalizable").isEmpty());
+    }
+}
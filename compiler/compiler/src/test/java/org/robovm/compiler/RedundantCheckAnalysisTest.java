@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.Body;
+import soot.Scene;
+import soot.SootClass;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.options.Options;
+
+/**
+ * Tests {@link RedundantCheckAnalysis}.
+ */
+public class RedundantCheckAnalysisTest {
+    private Body body;
+    private RedundantCheckAnalysis analysis;
+
+    @Before
+    public void initializeSoot() {
+        soot.G.reset();
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_soot_classpath(ClassPathUtils.getBcPath() +
+                File.pathSeparator + System.getProperty("java.class.path"));
+        Scene.v().loadNecessaryClasses();
+    }
+
+    private void analyze(String methodName) {
+        SootClass sc = Scene.v().loadClassAndSupport("org.robovm.compiler.c.Checks");
+        body = sc.getMethodByName(methodName).retrieveActiveBody();
+        analysis = new RedundantCheckAnalysis(body);
+    }
+
+    private List<Stmt> getArrayAccesses() {
+        List<Stmt> result = new ArrayList<>();
+        for (Unit u : body.getUnits()) {
+            if (((Stmt) u).containsArrayRef()) {
+                result.add((Stmt) u);
+            }
+        }
+        return result;
+    }
+
+    private Stmt getInvoke() {
+        for (Unit u : body.getUnits()) {
+            if (((Stmt) u).containsInvokeExpr()) {
+                return (Stmt) u;
+            }
+        }
+        fail("No invoke found");
+        return null;
+    }
+
+    private void assertChecks(Stmt stmt, boolean nullCheck, boolean lowerCheck, boolean upperCheck) {
+        assertEquals("null check of " + stmt, nullCheck, !analysis.isNullCheckRedundant(stmt));
+        assertEquals("lower check of " + stmt, lowerCheck, !analysis.isLowerCheckRedundant(stmt));
+        assertEquals("upper check of " + stmt, upperCheck, !analysis.isUpperCheckRedundant(stmt));
+    }
+
+    @Test
+    public void testForwardLoop() {
+        analyze("sumForward");
+        List<Stmt> accesses = getArrayAccesses();
+        assertEquals(1, accesses.size());
+        assertChecks(accesses.get(0), false, false, false);
+    }
+
+    @Test
+    public void testBackwardLoop() {
+        analyze("sumBackward");
+        List<Stmt> accesses = getArrayAccesses();
+        assertEquals(1, accesses.size());
+        assertChecks(accesses.get(0), false, false, false);
+    }
+
+    @Test
+    public void testLoopWithStride() {
+        analyze("sumEven");
+        List<Stmt> accesses = getArrayAccesses();
+        assertEquals(1, accesses.size());
+        assertChecks(accesses.get(0), false, true, false);
+    }
+
+    @Test
+    public void testLoopOverField() {
+        analyze("sumField");
+        List<Stmt> accesses = getArrayAccesses();
+        assertEquals(1, accesses.size());
+        assertChecks(accesses.get(0), true, false, true);
+    }
+
+    @Test
+    public void testUnknownIndex() {
+        analyze("get");
+        List<Stmt> accesses = getArrayAccesses();
+        assertEquals(1, accesses.size());
+        assertChecks(accesses.get(0), true, true, true);
+    }
+
+    @Test
+    public void testRepeatedAccess() {
+        analyze("increment");
+        List<Stmt> accesses = getArrayAccesses();
+        assertEquals(2, accesses.size());
+        assertChecks(accesses.get(0), true, true, true);
+        assertChecks(accesses.get(1), false, false, false);
+    }
+
+    @Test
+    public void testNullChecks() {
+        analyze("hash");
+        assertTrue(!analysis.isNullCheckRedundant(getInvoke()));
+        analyze("hashIfNotNull");
+        assertTrue(analysis.isNullCheckRedundant(getInvoke()));
+        analyze("hashNew");
+        assertTrue(analysis.isNullCheckRedundant(getInvoke()));
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Symbols}.
+ */
+public class SymbolsTest {
+
+    @Test
+    public void testFunctionSizeSymbol() {
+        assertEquals("[J]a.b.Foo.bar(I)V", Symbols.methodSymbol("a/b/Foo", "bar", "(I)V"));
+        assertEquals("[j]a.b.Foo.bar(I)V[size]", Symbols.functionSizeSymbol("a/b/Foo", "bar", "(I)V"));
+    }
+
+    @Test
+    public void testFunctionSizeSymbolIsNotAMethodSymbol() {
+        // ClassCompiler reads line numbers for all symbols with the external prefix
+        assertFalse(Symbols.functionSizeSymbol("a/b/Foo", "bar", "(I)V").startsWith(Symbols.EXTERNAL_SYMBOL_PREFIX));
+    }
+}
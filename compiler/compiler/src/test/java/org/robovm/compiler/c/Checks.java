@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.c;
+
+/**
+ * Methods analyzed by {@code RedundantCheckAnalysisTest}.
+ */
+public class Checks {
+    int[] values;
+
+    public static int sumForward(int[] a) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    public static int sumBackward(int[] a) {
+        int sum = 0;
+        for (int i = a.length - 1; i >= 0; i--) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    public static int sumEven(int[] a) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i += 2) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    public int sumField() {
+        int sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    public static int get(int[] a, int i) {
+        return a[i];
+    }
+
+    public static void increment(int[] a, int i) {
+        a[i]++;
+    }
+
+    public static int hash(Object o) {
+        return o.hashCode();
+    }
+
+    public static int hashIfNotNull(Object o) {
+        if (o != null) {
+            return o.hashCode();
+        }
+        return 0;
+    }
+
+    public static int hashNew() {
+        return new Object().hashCode();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.clazz;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.robovm.compiler.ClassPathUtils;
+import org.robovm.compiler.config.Config;
+import org.robovm.compiler.config.FakeHome;
+
+import soot.Scene;
+import soot.options.Options;
+
+/**
+ * Tests {@link ClazzInfoCodec} and {@link ClazzInfoIndex}.
+ */
+public class ClazzInfoIndexTest {
+    File cacheDir;
+    Config config;
+
+    @BeforeClass
+    public static void initializeSoot() throws IOException {
+        soot.G.reset();
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_soot_classpath(ClassPathUtils.getBcPath() +
+                File.pathSeparator + System.getProperty("java.class.path"));
+        Scene.v().loadNecessaryClasses();
+    }
+
+    @Before
+    public void setup() throws Exception {
+        cacheDir = Files.createTempDirectory("robovm-clazzinfo-test").toFile();
+        Config.Builder builder = new Config.Builder()
+                .home(new FakeHome())
+                .cacheDir(cacheDir)
+                .skipRuntimeLib(true)
+                .skipLinking(true);
+        for (File path : ClassPathUtils.getBcPaths()) {
+            builder.addBootClasspathEntry(path);
+        }
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            builder.addClasspathEntry(new File(path));
+        }
+        config = builder.build();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    public static class B {}
+
+    private Clazz createClazz(Class<?> cls) throws IOException {
+        Clazz clazz = config.getClazzes().load(cls.getName().replace('.', '/'));
+        ClazzInfo ci = clazz.resetClazzInfo();
+        ci.initClassInfo();
+        ci.addClassDependency("java/lang/String", false);
+        ci.addInvokeMethodDependency("java/lang/Object", "hashCode", "()I", true);
+        ci.addCheckcast("java/lang/Runnable");
+        ci.setCacheKey("0123456789abcdef");
+        ci.getMethods().get(0).addSuperMethodDependency("java/lang/Object", "<init>", "()V", false);
+        clazz.saveClazzInfo();
+        return clazz;
+    }
+
+    private static void assertClazzInfoEquals(ClazzInfo expected, ClazzInfo actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getInternalName(), actual.getInternalName());
+        assertEquals(expected.getModifiers(), actual.getModifiers());
+        assertEquals(expected.getSuperclassName(), actual.getSuperclassName());
+        assertEquals(expected.getInterfaceNames(), actual.getInterfaceNames());
+        assertEquals(expected.getCheckcasts(), actual.getCheckcasts());
+        assertEquals(expected.getCacheKey(), actual.getCacheKey());
+        assertEquals(expected.getDependencies(), actual.getDependencies());
+        assertEquals(expected.getAllDependencies(), actual.getAllDependencies());
+        assertEquals(expected.getMethods(), actual.getMethods());
+        for (int i = 0; i < expected.getMethods().size(); i++) {
+            MethodInfo mi = expected.getMethods().get(i);
+            MethodInfo mi2 = actual.getMethods().get(i);
+            assertEquals(mi.isCallback(), mi2.isCallback());
+            assertEquals(mi.isWeaklyLinked(), mi2.isWeaklyLinked());
+            assertEquals(mi.isStronglyLinked(), mi2.isStronglyLinked());
+        }
+    }
+
+    @Test
+    public void testInfoFileRoundTrip() throws Exception {
+        Clazz clazz = createClazz(ClazzInfoIndexTest.class);
+        assertFalse(clazz.getClazzInfo().getAllDependencies().isEmpty());
+        ClazzInfo ci = clazz.readClazzInfo(config.getInfoFile(clazz));
+        assertSame(clazz, ci.getClazz());
+        assertClazzInfoEquals(clazz.getClazzInfo(), ci);
+    }
+
+    @Test
+    public void testCorruptInfoFile() throws Exception {
+        Clazz clazz = createClazz(ClazzInfoIndexTest.class);
+        File infoFile = config.getInfoFile(clazz);
+        byte[] bytes = FileUtils.readFileToByteArray(infoFile);
+        FileUtils.writeByteArrayToFile(infoFile, Arrays.copyOf(bytes, bytes.length / 2));
+        assertNull(clazz.readClazzInfo(infoFile));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Clazz a = createClazz(ClazzInfoIndexTest.class);
+        Clazz b = createClazz(B.class);
+        assertSame(a.getPath(), b.getPath());
+        config.getClazzes().updateClazzInfoIndexes(new HashSet<>(Arrays.asList(a, b)));
+        assertTrue(config.getClazzInfoIndexFile(a.getPath()).isFile());
+
+        ClazzInfoIndex index = new ClazzInfoIndex(config.getClazzInfoIndexFile(a.getPath()), config);
+        ClazzInfo ci = index.read(a, config.getInfoFile(a));
+        assertSame(a, ci.getClazz());
+        assertClazzInfoEquals(a.getClazzInfo(), ci);
+        assertClazzInfoEquals(b.getClazzInfo(), index.read(b, config.getInfoFile(b)));
+
+        // Updating with a subset keeps the other entries
+        index.update(Collections.singleton(a));
+        assertNotNull(index.read(b, config.getInfoFile(b)));
+
+        // Stale entries are ignored
+        File infoFile = config.getInfoFile(a);
+        infoFile.setLastModified(infoFile.lastModified() - 10000);
+        assertNull(index.read(a, infoFile));
+        index.update(Collections.singleton(a));
+        assertClazzInfoEquals(a.getClazzInfo(), index.read(a, infoFile));
+    }
+
+    @Test
+    public void testCorruptIndex() throws Exception {
+        Clazz a = createClazz(ClazzInfoIndexTest.class);
+        File indexFile = config.getClazzInfoIndexFile(a.getPath());
+        FileUtils.writeByteArrayToFile(indexFile, new byte[] {'R', 'V', 'I', 'X', 1, 100});
+        ClazzInfoIndex index = new ClazzInfoIndex(indexFile, config);
+        assertNull(index.read(a, config.getInfoFile(a)));
+        index.update(Collections.singleton(a));
+        assertClazzInfoEquals(a.getClazzInfo(), index.read(a, config.getInfoFile(a)));
+    }
+}
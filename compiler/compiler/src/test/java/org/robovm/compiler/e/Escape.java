@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.e;
+
+/**
+ * Methods analyzed by {@code EscapeAnalysisTest}.
+ */
+public class Escape {
+    static Object sink;
+
+    public static class Point {
+        int x;
+        int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public int sum() {
+            return x + y;
+        }
+
+        public Point self() {
+            return this;
+        }
+    }
+
+    public static class Finalizable {
+        protected void finalize() {
+        }
+    }
+
+    static int read(Point p) {
+        return p.x * p.y;
+    }
+
+    static void store(Point p) {
+        sink = p;
+    }
+
+    public static int local() {
+        Point p = new Point(1, 2);
+        return p.sum() + read(p);
+    }
+
+    public static int chained() {
+        Point p = new Point(1, 2);
+        return p.self().sum();
+    }
+
+    public static Point returned() {
+        return new Point(1, 2);
+    }
+
+    public static int stored() {
+        Point p = new Point(1, 2);
+        store(p);
+        return p.x;
+    }
+
+    public static int loop(int n) {
+        int sum = 0;
+        for (int i = 0; i < n; i++) {
+            Point p = new Point(i, i);
+            sum += p.sum();
+        }
+        return sum;
+    }
+
+    public static void finalizable() {
+        new Finalizable();
+    }
+}
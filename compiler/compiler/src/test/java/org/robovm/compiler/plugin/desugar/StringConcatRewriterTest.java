@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/gpl-2.0.html>.
+ */
+package org.robovm.compiler.plugin.desugar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robovm.compiler.ClassPathUtils;
+
+import soot.Body;
+import soot.IntType;
+import soot.Local;
+import soot.Modifier;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.GeExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeStmt;
+import soot.jimple.Jimple;
+import soot.jimple.NewExpr;
+import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StringConstant;
+import soot.options.Options;
+
+/**
+ * Tests {@link StringConcatRewriter}.
+ */
+public class StringConcatRewriterTest {
+    private Body body;
+
+    @Before
+    public void initializeSoot() {
+        soot.G.reset();
+        Options.v().set_output_format(Options.output_format_jimple);
+        Options.v().set_include_all(true);
+        Options.v().set_allow_phantom_refs(true);
+        Options.v().set_soot_classpath(ClassPathUtils.getBcPath() +
+                File.pathSeparator + System.getProperty("java.class.path"));
+        Scene.v().loadNecessaryClasses();
+
+        SootClass sc = new SootClass("Concat");
+        SootMethod method = new SootMethod("concat", Collections.<Type> emptyList(),
+                RefType.v("java.lang.String"), Modifier.STATIC);
+        sc.addMethod(method);
+        body = Jimple.v().newBody(method);
+        method.setActiveBody(body);
+    }
+
+    private Local local(String name, Type type) {
+        Local l = Jimple.v().newLocal(name, type);
+        body.getLocals().add(l);
+        return l;
+    }
+
+    private List<Unit> rewrite(Value... args) {
+        Local out = local("out", RefType.v("java.lang.String"));
+        return new StringConcatRewriter().rewriteMakeConcat(body, out, Arrays.asList(args));
+    }
+
+    private static int indexOfNewStringBuilder(List<Unit> units) {
+        for (int i = 0; i < units.size(); i++) {
+            Unit u = units.get(i);
+            if (u instanceof AssignStmt && ((AssignStmt) u).getRightOp() instanceof NewExpr) {
+                return i;
+            }
+        }
+        fail("No new StringBuilder found in " + units);
+        return -1;
+    }
+
+    private static Value getCapacity(List<Unit> units) {
+        for (Unit u : units) {
+            if (u instanceof InvokeStmt && ((InvokeStmt) u).getInvokeExpr() instanceof SpecialInvokeExpr) {
+                SpecialInvokeExpr expr = (SpecialInvokeExpr) ((InvokeStmt) u).getInvokeExpr();
+                assertEquals("<init>", expr.getMethodRef().name());
+                return expr.getArg(0);
+            }
+        }
+        fail("No StringBuilder constructor call found in " + units);
+        return null;
+    }
+
+    @Test
+    public void testConstantCapacity() {
+        List<Unit> units = rewrite(StringConstant.v("x = "), local("x", IntType.v()));
+        // "x = " plus the longest int
+        assertEquals(IntConstant.v(4 + 11), getCapacity(units));
+        for (Unit u : units) {
+            assertFalse(u instanceof IfStmt);
+        }
+    }
+
+    @Test
+    public void testCapacityFallsBackOnOverflow() {
+        Local a = local("a", RefType.v("java.lang.Object"));
+        Local b = local("b", RefType.v("java.lang.String"));
+        List<Unit> units = rewrite(a, StringConstant.v("-"), b);
+
+        Value capacity = getCapacity(units);
+        assertTrue(capacity instanceof Local);
+        int newIdx = indexOfNewStringBuilder(units);
+
+        // if capacity >= 0 goto new StringBuilder; capacity = 16
+        IfStmt ifStmt = (IfStmt) units.get(newIdx - 2);
+        assertTrue(ifStmt.getCondition() instanceof GeExpr);
+        assertSame(capacity, ((GeExpr) ifStmt.getCondition()).getOp1());
+        assertEquals(IntConstant.v(0), ((GeExpr) ifStmt.getCondition()).getOp2());
+        assertSame(units.get(newIdx), ifStmt.getTarget());
+        AssignStmt fallback = (AssignStmt) units.get(newIdx - 1);
+        assertSame(capacity, fallback.getLeftOp());
+        assertEquals(IntConstant.v(16), fallback.getRightOp());
+
+        // The sum is computed from the lengths and the constant part
+        AssignStmt sum = (AssignStmt) units.get(newIdx - 3);
+        assertSame(capacity, sum.getLeftOp());
+        assertTrue(sum.getRightOp().toString().endsWith(" + 1"));
+    }
+}
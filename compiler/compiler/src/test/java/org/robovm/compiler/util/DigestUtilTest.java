@@ -18,6 +18,10 @@ package org.robovm.compiler.util;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.Test;
 
 /**
@@ -31,4 +35,16 @@ public class DigestUtilTest {
         assertEquals("8843d7f92416211de9ebb963ff4ce28125932878", DigestUtil.sha1("foobar"));
     }
 
+    @Test
+    public void testSha1Bytes() throws IOException {
+        byte[] bytes = "foobar".getBytes(StandardCharsets.UTF_8);
+        assertEquals("8843d7f92416211de9ebb963ff4ce28125932878", DigestUtil.sha1(bytes));
+        assertEquals("8843d7f92416211de9ebb963ff4ce28125932878", DigestUtil.sha1(new ByteArrayInputStream(bytes)));
+        byte[] large = new byte[100000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        assertEquals(DigestUtil.sha1(large), DigestUtil.sha1(new ByteArrayInputStream(large)));
+    }
+
 }
@@ -20,8 +20,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.robovm.llvm.binding.Attribute;
+import org.robovm.llvm.binding.BasicBlockRef;
 import org.robovm.llvm.binding.LLVM;
 import org.robovm.llvm.binding.Linkage;
+import org.robovm.llvm.binding.Opcode;
 import org.robovm.llvm.binding.ValueRef;
 
 /**
@@ -49,6 +51,89 @@ public class Function {
     public void setLinkage(Linkage linkage) {
         LLVM.SetLinkage(getRef(), linkage);
     }
+
+    public boolean isDeclaration() {
+        return LLVM.IsDeclaration(getRef());
+    }
+
+    public int countBasicBlocks() {
+        return LLVM.CountBasicBlocks(getRef());
+    }
+
+    /**
+     * Returns {@code true} if this {@link Function} contains at least one
+     * instruction with the specified {@link Opcode}.
+     */
+    public boolean hasInstruction(Opcode opcode) {
+        for (BasicBlockRef bb = LLVM.GetFirstBasicBlock(getRef()); bb != null; bb = LLVM.GetNextBasicBlock(bb)) {
+            for (ValueRef inst = LLVM.GetFirstInstruction(bb); inst != null; inst = LLVM.GetNextInstruction(inst)) {
+                if (LLVM.GetInstructionOpcode(inst) == opcode) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if any instruction in this {@link Function}
+     * refers to a global value with private or internal linkage, directly or
+     * through a constant expression.
+     */
+    public boolean referencesLocalSymbols() {
+        for (BasicBlockRef bb = LLVM.GetFirstBasicBlock(getRef()); bb != null; bb = LLVM.GetNextBasicBlock(bb)) {
+            for (ValueRef inst = LLVM.GetFirstInstruction(bb); inst != null; inst = LLVM.GetNextInstruction(inst)) {
+                if (hasLocalOperand(inst)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasLocalOperand(ValueRef user) {
+        int n = LLVM.GetNumOperands(user);
+        for (int i = 0; i < n; i++) {
+            ValueRef op = LLVM.GetOperand(user, i);
+            if (op == null || !LLVM.IsConstant(op)) {
+                continue;
+            }
+            if (LLVM.IsAGlobalValue(op) != null) {
+                switch (LLVM.GetLinkage(op)) {
+                case PrivateLinkage:
+                case InternalLinkage:
+                case LinkerPrivateLinkage:
+                case LinkerPrivateWeakLinkage:
+                    return true;
+                default:
+                    break;
+                }
+            } else if (LLVM.IsAUser(op) != null && hasLocalOperand(op)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the names of the functions called by the {@code call}
+     * instructions in this {@link Function}. Calls through anything but a
+     * plain function reference (function pointers, bitcasts) are returned as
+     * {@code null}.
+     */
+    public List<String> getCallees() {
+        List<String> result = new ArrayList<>();
+        for (BasicBlockRef bb = LLVM.GetFirstBasicBlock(getRef()); bb != null; bb = LLVM.GetNextBasicBlock(bb)) {
+            for (ValueRef inst = LLVM.GetFirstInstruction(bb); inst != null; inst = LLVM.GetNextInstruction(inst)) {
+                if (LLVM.IsACallInst(inst) != null) {
+                    // The callee is the last operand of a call instruction
+                    ValueRef callee = LLVM.GetOperand(inst, LLVM.GetNumOperands(inst) - 1);
+                    result.add(LLVM.IsAFunction(callee) != null ? LLVM.GetValueName(callee) : null);
+                }
+            }
+        }
+        return result;
+    }
     
     public Attribute[] getAttributes() {
         int mask = LLVM.GetFunctionAttr(getRef());
@@ -76,6 +76,19 @@ public class Module implements AutoCloseable {
         return result.toArray(new Function[result.size()]);
     }
     
+    public GlobalVariable getGlobalVariableByName(String name) {
+        ValueRef gref = LLVM.GetNamedGlobal(getRef(), name);
+        return gref != null ? new GlobalVariable(gref) : null;
+    }
+
+    public GlobalVariable[] getGlobalVariables() {
+        List<GlobalVariable> result = new ArrayList<>();
+        for (ValueRef gref = LLVM.GetFirstGlobal(getRef()); gref != null; gref = LLVM.GetNextGlobal(gref)) {
+            result.add(new GlobalVariable(gref));
+        }
+        return result.toArray(new GlobalVariable[result.size()]);
+    }
+
     public void writeBitcode(File file) {
         if (LLVM.WriteBitcodeToFile(getRef(), file.getAbsolutePath()) != 0) {
             throw new LlvmException("Write failed");
@@ -19,6 +19,7 @@ package java.lang;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import org.robovm.rt.annotation.LeafNative;
 
 /**
  * The wrapper for the primitive type {@code char}. This class also provides a
@@ -1524,6 +1525,7 @@ public final class Character implements Serializable, Comparable<Character> {
 
     private static native int forNameImpl(String blockName);
 
+    @LeafNative
     private static native int ofImpl(int codePoint);
 
     /**
@@ -2350,6 +2352,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return digitImpl(codePoint, radix);
     }
 
+    @LeafNative
     private static native int digitImpl(int codePoint, int radix);
 
     /**
@@ -2482,6 +2485,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return getNumericValueImpl(codePoint);
     }
 
+    @LeafNative
     private static native int getNumericValueImpl(int codePoint);
 
     /**
@@ -2511,6 +2515,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return (type + 1);
     }
 
+    @LeafNative
     private static native int getTypeImpl(int codePoint);
 
     /**
@@ -2543,6 +2548,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return DIRECTIONALITY[directionality];
     }
 
+    @LeafNative
     private static native byte getDirectionalityImpl(int codePoint);
 
     /**
@@ -2569,6 +2575,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isMirroredImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isMirroredImpl(int codePoint);
 
     @Override
@@ -2599,6 +2606,7 @@ public final class Character implements Serializable, Comparable<Character> {
      * if it is in any of the Lu, Ll, Lt, Lm, Lo, Nl, or Other_Alphabetic categories.
      * @since 1.7
      */
+    @LeafNative
     public static native boolean isAlphabetic(int codePoint);
 
     /**
@@ -2636,6 +2644,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isDefinedImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isDefinedImpl(int codePoint);
 
     /**
@@ -2669,6 +2678,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isDigitImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isDigitImpl(int codePoint);
 
     /**
@@ -2687,6 +2697,7 @@ public final class Character implements Serializable, Comparable<Character> {
      * Returns true if the given code point is a CJKV ideographic character.
      * @since 1.7
      */
+    @LeafNative
     public static native boolean isIdeographic(int codePoint);
 
     /**
@@ -2707,6 +2718,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isIdentifierIgnorableImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isIdentifierIgnorableImpl(int codePoint);
 
     /**
@@ -2863,6 +2875,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isLetterImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isLetterImpl(int codePoint);
 
     /**
@@ -2899,6 +2912,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isLetterOrDigitImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isLetterOrDigitImpl(int codePoint);
 
     /**
@@ -2932,6 +2946,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isLowerCaseImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isLowerCaseImpl(int codePoint);
 
     /**
@@ -2982,6 +2997,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isSpaceCharImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isSpaceCharImpl(int codePoint);
 
     /**
@@ -3008,6 +3024,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isTitleCaseImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isTitleCaseImpl(int codePoint);
 
     /**
@@ -3036,6 +3053,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isUnicodeIdentifierPartImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isUnicodeIdentifierPartImpl(int codePoint);
 
     /**
@@ -3064,6 +3082,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isUnicodeIdentifierStartImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isUnicodeIdentifierStartImpl(int codePoint);
 
     /**
@@ -3097,6 +3116,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isUpperCaseImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isUpperCaseImpl(int codePoint);
 
     /**
@@ -3142,6 +3162,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return isWhitespaceImpl(codePoint);
     }
 
+    @LeafNative
     private static native boolean isWhitespaceImpl(int codePoint);
 
     /**
@@ -3191,6 +3212,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return toLowerCaseImpl(codePoint);
     }
 
+    @LeafNative
     private static native int toLowerCaseImpl(int codePoint);
 
     @Override
@@ -3235,6 +3257,7 @@ public final class Character implements Serializable, Comparable<Character> {
         return toTitleCaseImpl(codePoint);
     }
 
+    @LeafNative
     private static native int toTitleCaseImpl(int codePoint);
 
     /**
@@ -3272,5 +3295,6 @@ public final class Character implements Serializable, Comparable<Character> {
         return toUpperCaseImpl(codePoint);
     }
 
+    @LeafNative
     private static native int toUpperCaseImpl(int codePoint);
 }
@@ -18,6 +18,7 @@
 package java.lang;
 
 import java.util.Random;
+import org.robovm.rt.annotation.LeafNative;
 
 /**
  * Class Math provides basic math constants and operations such as trigonometric
@@ -107,6 +108,7 @@ public final class Math {
      *            the value to compute arc cosine of.
      * @return the arc cosine of the argument.
      */
+    @LeafNative
     public static native double acos(double d);
 
     /**
@@ -125,6 +127,7 @@ public final class Math {
      *            the value whose arc sine has to be computed.
      * @return the arc sine of the argument.
      */
+    @LeafNative
     public static native double asin(double d);
 
     /**
@@ -145,6 +148,7 @@ public final class Math {
      *            the value whose arc tangent has to be computed.
      * @return the arc tangent of the argument.
      */
+    @LeafNative
     public static native double atan(double d);
 
     /**
@@ -185,6 +189,7 @@ public final class Math {
      *            the denominator of the value whose atan has to be computed.
      * @return the arc tangent of {@code y/x}.
      */
+    @LeafNative
     public static native double atan2(double y, double x);
 
     /**
@@ -204,6 +209,7 @@ public final class Math {
      *            the value whose cube root has to be computed.
      * @return the cube root of the argument.
      */
+    @LeafNative
     public static native double cbrt(double d);
 
     /**
@@ -220,6 +226,7 @@ public final class Math {
      * <li>{@code ceil(NaN) = NaN}</li>
      * </ul>
      */
+    @LeafNative
     public static native double ceil(double d);
 
     /**
@@ -238,6 +245,7 @@ public final class Math {
      *            the angle whose cosine has to be computed, in radians.
      * @return the cosine of the argument.
      */
+    @LeafNative
     public static native double cos(double d);
 
     /**
@@ -256,6 +264,7 @@ public final class Math {
      *            the value whose hyperbolic cosine has to be computed.
      * @return the hyperbolic cosine of the argument.
      */
+    @LeafNative
     public static native double cosh(double d);
 
     /**
@@ -274,6 +283,7 @@ public final class Math {
      *            the value whose exponential has to be computed.
      * @return the exponential of the argument.
      */
+    @LeafNative
     public static native double exp(double d);
 
     /**
@@ -301,6 +311,7 @@ public final class Math {
      * @return the <i>{@code e}</i><sup>{@code d}</sup>{@code - 1} value of the
      *         argument.
      */
+    @LeafNative
     public static native double expm1(double d);
 
     /**
@@ -316,6 +327,7 @@ public final class Math {
      * <li>{@code floor(NaN) = NaN}</li>
      * </ul>
      */
+    @LeafNative
     public static native double floor(double d);
 
     /**
@@ -342,6 +354,7 @@ public final class Math {
      *         <i> {@code y}</i><sup>{@code 2}</sup>{@code )} value of the
      *         arguments.
      */
+    @LeafNative
     public static native double hypot(double x, double y);
 
     /**
@@ -369,6 +382,7 @@ public final class Math {
      *            the denominator of the operation.
      * @return the IEEE754 floating point reminder of of {@code x/y}.
      */
+    @LeafNative
     public static native double IEEEremainder(double x, double y);
 
     /**
@@ -390,6 +404,7 @@ public final class Math {
      *            the value whose log has to be computed.
      * @return the natural logarithm of the argument.
      */
+    @LeafNative
     public static native double log(double d);
 
     /**
@@ -411,6 +426,7 @@ public final class Math {
      *            the value whose base 10 log has to be computed.
      * @return the natural logarithm of the argument.
      */
+    @LeafNative
     public static native double log10(double d);
 
     /**
@@ -435,6 +451,7 @@ public final class Math {
      *            the value to compute the {@code ln(1+d)} of.
      * @return the natural logarithm of the sum of the argument and 1.
      */
+    @LeafNative
     public static native double log1p(double d);
 
     /**
@@ -630,6 +647,7 @@ public final class Math {
      *            the exponent of the operation.
      * @return {@code x} to the power of {@code y}.
      */
+    @LeafNative
     public static native double pow(double x, double y);
 
     /**
@@ -649,6 +667,7 @@ public final class Math {
      *            the value to be rounded.
      * @return the closest integer to the argument (as a double).
      */
+    @LeafNative
     public static native double rint(double d);
 
     /**
@@ -787,6 +806,7 @@ public final class Math {
      *            the angle whose sin has to be computed, in radians.
      * @return the sine of the argument.
      */
+    @LeafNative
     public static native double sin(double d);
 
     /**
@@ -807,6 +827,7 @@ public final class Math {
      *            the value whose hyperbolic sine has to be computed.
      * @return the hyperbolic sine of the argument.
      */
+    @LeafNative
     public static native double sinh(double d);
 
     /**
@@ -822,6 +843,7 @@ public final class Math {
      * <li>{@code sqrt(NaN) = NaN}</li>
      * </ul>
      */
+    @LeafNative
     public static native double sqrt(double d);
 
     /**
@@ -842,6 +864,7 @@ public final class Math {
      *            the angle whose tangent has to be computed, in radians.
      * @return the tangent of the argument.
      */
+    @LeafNative
     public static native double tan(double d);
 
     /**
@@ -864,6 +887,7 @@ public final class Math {
      *            the value whose hyperbolic tangent has to be computed.
      * @return the hyperbolic tangent of the argument.
      */
+    @LeafNative
     public static native double tanh(double d);
 
     /**
@@ -954,6 +978,7 @@ public final class Math {
         return nextafter(d, Double.MAX_VALUE) - d;
     }
 
+    @LeafNative
     private static native double nextafter(double x, double y);
 
     /**
@@ -18,6 +18,7 @@
 package java.util.zip;
 
 import java.util.Arrays;
+import org.robovm.rt.annotation.LeafNative;
 
 /**
  * The CRC32 class is used to compute a CRC32 checksum from data provided as
@@ -78,5 +79,6 @@ public class CRC32 implements Checksum {
 
     private native long updateImpl(byte[] buf, int offset, int byteCount, long crc1);
 
+    @LeafNative
     private native long updateByteImpl(byte val, long crc1);
 }
@@ -1,10 +1,33 @@
 package org.robovm.rt;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * Interfaces with the garbage collector
  */
 public class GC {
 
+    /**
+     * The default stop-the-world collector. Marking is done in parallel if
+     * more than one marker is used. Selected unless another mode has been
+     * requested.
+     */
+    public static final int MODE_DEFAULT = 0;
+    /**
+     * Generational collector which marks incrementally in small steps to
+     * keep pauses short. Selected using {@code -rvm:GCMode=incremental}.
+     */
+    public static final int MODE_INCREMENTAL = 1;
+    /**
+     * Generational collector which finishes each collection in one go.
+     * Selected using {@code -rvm:GCMode=generational}.
+     */
+    public static final int MODE_GENERATIONAL = 2;
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static Thread dispatcher;
+
     /**
      * @return whether this is enabled
      */
@@ -117,4 +140,236 @@ public class GC {
      */
     public static native void setTimeLimit(long value);
 
+    /**
+     * Returns the mode the collector is running in. The mode can be selected
+     * using the {@code -rvm:GCMode=incremental|generational} launch argument
+     * or the same option in a {@code robovm.ini} file. The default mode is
+     * used if the requested mode isn't supported on the current platform.
+     * 
+     * @return one of {@link #MODE_DEFAULT}, {@link #MODE_INCREMENTAL} or
+     *         {@link #MODE_GENERATIONAL}.
+     */
+    public static native int getMode();
+
+    /**
+     * Returns the number of marker threads used in addition to the thread
+     * which triggered the collection. The total number of markers can be set
+     * using the {@code -rvm:GCMarkers=N} launch argument.
+     * 
+     * @return the number of extra markers or 0 if marking isn't parallel.
+     */
+    public static native int getParallelMarkers();
+
+    /**
+     * Returns a histogram of the stop-the-world pauses seen so far. Element 0
+     * counts the pauses shorter than 1 microsecond. Element {@code i > 0}
+     * counts the pauses of at least {@code 2^(i-1)} and less than
+     * {@code 2^i} microseconds. The last element also counts all longer
+     * pauses.
+     */
+    public static long[] getPauseHistogram() {
+        long[] histogram = new long[getPauseHistogramSize()];
+        getPauseHistogram0(histogram);
+        return histogram;
+    }
+
+    /**
+     * @return the total time in nanoseconds the world has been stopped by the
+     *         collector.
+     */
+    public static native long getTotalPauseTime();
+
+    /**
+     * @return the longest stop-the-world pause in nanoseconds seen so far.
+     */
+    public static native long getMaxPauseTime();
+
+    /**
+     * @return the number of bytes allocated for objects and arrays by the
+     *         current thread.
+     */
+    public static long getAllocatedBytes() {
+        return getAllocatedBytes(Thread.currentThread());
+    }
+
+    /**
+     * @return the number of bytes allocated for objects and arrays by the
+     *         specified thread or 0 if the thread isn't alive.
+     */
+    public static native long getAllocatedBytes(Thread thread);
+
+    /**
+     * @return statistics of the latest completed collection or {@code null}
+     *         if no collection has completed yet.
+     */
+    public static CollectionInfo getLastCollection() {
+        long[] values = new long[7];
+        if (getLastCollection0(values) == 0) {
+            return null;
+        }
+        return new CollectionInfo(values);
+    }
+
+    /**
+     * Registers a {@link Listener} which will be notified after collections.
+     * Listeners are called on a dedicated daemon thread some time after the
+     * collection has finished. Collections which complete in quick succession
+     * may be reported as one.
+     */
+    public static void addListener(Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        synchronized (listeners) {
+            listeners.add(listener);
+            if (dispatcher == null) {
+                dispatcher = new Thread("GC listener dispatcher") {
+                    @Override
+                    public void run() {
+                        dispatch();
+                    }
+                };
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+            }
+        }
+    }
+
+    /**
+     * Unregisters a {@link Listener} previously registered using
+     * {@link #addListener(Listener)}.
+     */
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void dispatch() {
+        long seen = getLastCollection0(null);
+        while (true) {
+            synchronized (listeners) {
+                if (listeners.isEmpty()) {
+                    dispatcher = null;
+                    return;
+                }
+            }
+            long count = waitForCollection(seen, 1000);
+            if (count == seen) {
+                continue;
+            }
+            seen = count;
+            CollectionInfo info = getLastCollection();
+            for (Listener listener : listeners) {
+                try {
+                    listener.onCollection(info);
+                } catch (Throwable t) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+                }
+            }
+        }
+    }
+
+    private static native long getLastCollection0(long[] values);
+
+    private static native int getPauseHistogramSize();
+
+    private static native void getPauseHistogram0(long[] histogram);
+
+    /**
+     * Waits at most {@code timeout} milliseconds for a collection to complete
+     * if no collection has completed since {@link #getLastCollection0(long[])}
+     * returned {@code count}. Returns the new count.
+     */
+    private static native long waitForCollection(long count, long timeout);
+
+    /**
+     * Notified after collections. See {@link GC#addListener(Listener)}.
+     */
+    public interface Listener {
+        void onCollection(CollectionInfo info);
+    }
+
+    /**
+     * Statistics of a single collection.
+     */
+    public static final class CollectionInfo {
+        private final long count;
+        private final long startTime;
+        private final long duration;
+        private final long pauseTime;
+        private final long allocatedBytes;
+        private final long heapSize;
+        private final long freeBytes;
+
+        CollectionInfo(long[] values) {
+            this.count = values[0];
+            this.startTime = values[1];
+            this.duration = values[2];
+            this.pauseTime = values[3];
+            this.allocatedBytes = values[4];
+            this.heapSize = values[5];
+            this.freeBytes = values[6];
+        }
+
+        /**
+         * @return the value of {@link GC#getCount()} after this collection.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the value of {@link System#nanoTime()} when this collection
+         *         started.
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return the time in nanoseconds from the start to the end of this
+         *         collection.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the time in nanoseconds the world was stopped during this
+         *         collection.
+         */
+        public long getPauseTime() {
+            return pauseTime;
+        }
+
+        /**
+         * @return the number of bytes allocated between the previous
+         *         collection and this one.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return the heap size in bytes after this collection.
+         */
+        public long getHeapSize() {
+            return heapSize;
+        }
+
+        /**
+         * @return the number of free bytes in the heap after this collection.
+         */
+        public long getFreeBytes() {
+            return freeBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "CollectionInfo [count=" + count + ", startTime=" + startTime
+                    + ", duration=" + duration + ", pauseTime=" + pauseTime
+                    + ", allocatedBytes=" + allocatedBytes + ", heapSize=" + heapSize
+                    + ", freeBytes=" + freeBytes + "]";
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.rt;
+
+import java.io.IOException;
+
+import libcore.io.ErrnoException;
+
+/**
+ * Sampling CPU profiler built into the VM. While running, the call stack of
+ * the thread which is using the CPU is sampled at a fixed interval of CPU
+ * time. Samples of threads not attached to the VM are ignored.
+ * <p>
+ * The profiler can be started at launch using the
+ * {@code -rvm:Profile=<file>} argument. The profile is then written to the
+ * specified file when the app exits. {@code -rvm:ProfileInterval=<us>} sets
+ * the sampling interval in microseconds. The default is 10000 (100 samples
+ * per second of CPU time).
+ * <p>
+ * Profiles are written in the collapsed stack format used by flame graph
+ * tools: one line per unique call stack listing the frames from the root to
+ * the leaf separated by {@code ;} followed by the number of samples.
+ */
+public final class Profiler {
+
+    private Profiler() {
+    }
+
+    /**
+     * Starts the profiler. Does nothing if it's already running.
+     * 
+     * @param interval the sampling interval in microseconds or 0 to use the
+     *            default interval.
+     * @return {@code true} if the profiler is running.
+     */
+    public static native boolean start(int interval);
+
+    /**
+     * Stops the profiler. The samples collected so far are kept until
+     * {@link #reset()} is called.
+     */
+    public static native void stop();
+
+    /**
+     * @return {@code true} if the profiler is running.
+     */
+    public static native boolean isRunning();
+
+    /**
+     * Discards all samples collected so far and resets the counters.
+     */
+    public static native void reset();
+
+    /**
+     * @return the number of samples collected since the last
+     *         {@link #reset()}.
+     */
+    public static native long getSampleCount();
+
+    /**
+     * @return the number of samples lost because the sample buffer was full.
+     */
+    public static native long getDroppedSampleCount();
+
+    /**
+     * Returns the total time in nanoseconds spent capturing samples. Divide
+     * by the CPU time of the process to get the overhead of the profiler.
+     */
+    public static native long getSamplingTime();
+
+    /**
+     * Writes the samples collected so far to the specified file in the
+     * collapsed stack format.
+     */
+    public static void dump(String path) throws IOException {
+        int errno = dump0(path);
+        if (errno != 0) {
+            throw new ErrnoException("open", errno).rethrowAsIOException();
+        }
+    }
+
+    private static native int dump0(String path);
+}
@@ -142,6 +142,26 @@ public final class VM {
 
     public native static final void generateHeapDump();
 
+    /**
+     * Returns the number of lookups in the VM's interned strings cache
+     * ({@link String#intern()} and string constants) which found the string
+     * in the cache.
+     */
+    public native static final long internedStringsCacheHits();
+
+    /**
+     * Returns the number of lookups in the VM's interned strings cache which
+     * didn't find the string in the cache.
+     */
+    public native static final long internedStringsCacheMisses();
+
+    /**
+     * Returns the number of strings currently in the VM's interned strings
+     * cache. The maximum size defaults to 10000 strings and can be changed
+     * using the {@code -rvm:InternedStringsCacheSize=<n>} option.
+     */
+    public native static final int internedStringsCacheSize();
+
     public native static final long allocateMemory(int size);
 
     public native static final long allocateMemoryUncollectable(int size);
@@ -236,6 +256,35 @@ public final class VM {
 
     public native static final String newStringNoCopy(char[] chars, int offset, int length);
 
+    /**
+     * Returns the length of the zero-terminated string at the specified
+     * address.
+     */
+    public native static final int strlen(long address);
+
+    /**
+     * Returns the length of the zero-terminated string at the specified
+     * address but at most {@code maxLength}.
+     */
+    public native static final int strnlen(long address, int maxLength);
+
+    /**
+     * Creates a new {@link String} from {@code length} {@code ISO-8859-1}
+     * encoded bytes at the specified address. If {@code asciiOnly} is
+     * {@code true} and any of the bytes isn't a 7-bit {@code ASCII} character
+     * {@code null} is returned.
+     */
+    public native static final String newStringLatin1(long address, int length, boolean asciiOnly);
+
+    /**
+     * Writes the first {@code length} characters of the specified
+     * {@link String} as {@code ISO-8859-1} encoded bytes to the specified
+     * address. Stops and returns {@code false} if a character which cannot
+     * be encoded is found. If {@code asciiOnly} is {@code true} only 7-bit
+     * {@code ASCII} characters are accepted.
+     */
+    public native static final boolean getStringLatin1Chars(String s, long address, int length, boolean asciiOnly);
+
     public native static final long getArrayValuesAddress(Object array);
 
     public native static final boolean[] newBooleanArray(long address, int size);
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.rt.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code native} method as a leaf native which is called without the
+ * bookkeeping normally done around JNI calls. The compiled method calls the
+ * JNI implementation directly without pushing a native frame, without
+ * resolving the implementation at runtime and without checking for a pending
+ * exception when the implementation returns.
+ * <p>
+ * The implementation must be statically linked using its JNI name. It must
+ * not throw exceptions, call back into Java, allocate Java objects or block
+ * for any significant amount of time. It must also never fault, e.g. by
+ * dereferencing an address passed in from Java, since there is no native
+ * frame to attribute the fault to. Methods registered using JNI
+ * {@code RegisterNatives()} or loaded from dynamic libraries must not be
+ * annotated with {@link LeafNative}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface LeafNative {
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.rt.bro;
+
+import org.robovm.rt.VM;
+import org.robovm.rt.bro.annotation.Bridge;
+import org.robovm.rt.bro.annotation.UsesArena;
+
+/**
+ * Bump pointer allocator for short lived native memory. Memory is allocated
+ * from chunks which are reused once the memory allocated from them has been
+ * released. Unlike memory allocated using {@link VM#allocateMemoryAtomic(int)}
+ * releasing the memory of an {@link Arena} doesn't require a garbage
+ * collection.
+ * <p>
+ * Use {@link #open()} to create an {@link Arena} which releases all of its
+ * memory when closed:
+ * <pre>
+ * try (Arena a = Arena.open()) {
+ *     long buffer = a.allocate(1024);
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * Each thread also has an {@link Arena} used by marshalers to allocate the
+ * native memory of {@link Bridge} method arguments. The compiler passes
+ * {@link MarshalerFlags#ARENA} to the marshalers of such arguments and the
+ * memory is released when the {@link Bridge} method returns. Marshalers
+ * should use {@link #allocateMarshaled(int, long)} which falls back to
+ * {@link VM#allocateMemoryAtomic(int)} if the flag isn't set and mark their
+ * {@code toNative} methods with {@link UsesArena}.
+ * <p>
+ * {@link Arena}s aren't thread-safe.
+ */
+public final class Arena implements AutoCloseable {
+    private static final int CHUNK_SIZE = 8192;
+    private static final int ALIGNMENT = 8;
+
+    private static final ThreadLocal<Arena> bridgeArenas = new ThreadLocal<Arena>() {
+        @Override
+        protected Arena initialValue() {
+            return new Arena();
+        }
+    };
+
+    /*
+     * The chunks are Java arrays which keeps them alive for as long as the
+     * Arena is reachable and lets the GC reclaim them once it isn't. The GC
+     * never moves objects so the addresses stay valid. The values of a byte
+     * array aren't 8 byte aligned so each chunk is ALIGNMENT bytes larger
+     * than its capacity and its address is rounded up.
+     */
+    private byte[][] chunks = new byte[4][];
+    private long[] addresses = new long[4];
+    private int chunkCount;
+    private int chunkIndex;
+    private int offset;
+    private boolean closed;
+
+    private Arena() {
+    }
+
+    /**
+     * Creates a new {@link Arena}. The memory allocated from it is released
+     * when the {@link Arena} is closed.
+     */
+    public static Arena open() {
+        return new Arena();
+    }
+
+    /**
+     * Allocates {@code size} bytes of zeroed memory aligned to 8 bytes. The
+     * memory is valid until the {@link Arena} is closed or reset to a
+     * position returned by {@link #mark()} before the memory was allocated.
+     *
+     * @return the address of the memory.
+     * @throws IllegalStateException if the {@link Arena} has been closed.
+     */
+    public long allocate(int size) {
+        if (closed) {
+            throw new IllegalStateException("Arena has been closed");
+        }
+        if (size < 0 || size > Integer.MAX_VALUE - ALIGNMENT) {
+            throw new IllegalArgumentException("Illegal size: " + size);
+        }
+        size = (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        int i = chunkIndex;
+        if (i < chunkCount) {
+            if (offset <= capacity(i) - size) {
+                long address = addresses[i] + offset;
+                offset += size;
+                VM.memset(address, (byte) 0, size);
+                return address;
+            }
+            i++;
+        }
+        for (; i < chunkCount; i++) {
+            if (capacity(i) >= size) {
+                chunkIndex = i;
+                offset = size;
+                VM.memset(addresses[i], (byte) 0, size);
+                return addresses[i];
+            }
+        }
+        if (chunkCount == chunks.length) {
+            byte[][] newChunks = new byte[chunkCount << 1][];
+            long[] newAddresses = new long[chunkCount << 1];
+            System.arraycopy(chunks, 0, newChunks, 0, chunkCount);
+            System.arraycopy(addresses, 0, newAddresses, 0, chunkCount);
+            chunks = newChunks;
+            addresses = newAddresses;
+        }
+        // New arrays are zeroed
+        byte[] chunk = new byte[Math.max(CHUNK_SIZE, size) + ALIGNMENT];
+        chunks[chunkCount] = chunk;
+        addresses[chunkCount] = (VM.getArrayValuesAddress(chunk) + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+        chunkIndex = chunkCount++;
+        offset = size;
+        return addresses[chunkIndex];
+    }
+
+    private int capacity(int i) {
+        return chunks[i].length - ALIGNMENT;
+    }
+
+    /**
+     * Returns the current position of this {@link Arena} which can be passed
+     * to {@link #reset(long)} to release all memory allocated after this call.
+     */
+    public long mark() {
+        return ((long) chunkIndex << 32) | offset;
+    }
+
+    /**
+     * Releases all memory allocated after the specified position was
+     * returned by {@link #mark()}.
+     */
+    public void reset(long mark) {
+        if (closed) {
+            return;
+        }
+        chunkIndex = (int) (mark >>> 32);
+        offset = (int) mark;
+        // Keep the current chunk and one spare chunk for reuse. Oversized
+        // chunks are only kept while in use.
+        int keep = chunkIndex;
+        if (keep < chunkCount && (offset > 0 || capacity(keep) == CHUNK_SIZE)) {
+            keep++;
+            if (keep < chunkCount && capacity(keep) == CHUNK_SIZE) {
+                keep++;
+            }
+        }
+        for (int i = keep; i < chunkCount; i++) {
+            chunks[i] = null;
+        }
+        if (keep < chunkCount) {
+            chunkCount = keep;
+        }
+    }
+
+    /**
+     * Releases all memory allocated from this {@link Arena}. The
+     * {@link Arena} cannot be used after it has been closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        chunks = null;
+        addresses = null;
+        chunkCount = 0;
+        chunkIndex = 0;
+        offset = 0;
+    }
+
+    /**
+     * Allocates {@code size} bytes of zeroed native memory for a value
+     * marshaled with the specified {@link MarshalerFlags}. The memory is
+     * allocated from the calling thread's {@link Bridge} call {@link Arena}
+     * if {@link MarshalerFlags#ARENA} is set and using
+     * {@link VM#allocateMemoryAtomic(int)} otherwise.
+     */
+    public static long allocateMarshaled(int size, long flags) {
+        if ((flags & MarshalerFlags.ARENA) != 0) {
+            return bridgeArenas.get().allocate(size);
+        }
+        return VM.allocateMemoryAtomic(size);
+    }
+
+    /**
+     * Called by compiled {@link Bridge} methods before the arguments are
+     * marshaled. Don't call this method directly.
+     */
+    public static long markBridgeCall() {
+        return bridgeArenas.get().mark();
+    }
+
+    /**
+     * Called by compiled {@link Bridge} methods once the return value has
+     * been marshaled or an exception has been thrown. Releases the memory
+     * allocated since the corresponding {@link #markBridgeCall()}. Don't
+     * call this method directly.
+     */
+    public static void leaveBridgeCall(long mark) {
+        bridgeArenas.get().reset(mark);
+    }
+}
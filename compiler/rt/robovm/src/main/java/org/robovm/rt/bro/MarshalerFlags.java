@@ -51,5 +51,14 @@ public class MarshalerFlags {
      * ANDing flags with this value gets the call type.
      */
     public static final long CALL_TYPE_MASK                 = 7 << 0;
+
+    /**
+     * Tells the marshaler that native memory allocated for the value may be
+     * released as soon as the call returns. Marshalers should allocate such
+     * memory using {@link Arena#allocateMarshaled(int, long)}. Set for
+     * {@link Bridge} call arguments unless the {@link Bridge} method opts out
+     * using {@link Bridge#arena()}.
+     */
+    public static final long ARENA                          = 1 << 3;
     
 }
@@ -16,11 +16,15 @@
 package org.robovm.rt.bro;
 
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
 import org.robovm.rt.VM;
 import org.robovm.rt.bro.annotation.MarshalsArray;
 import org.robovm.rt.bro.annotation.MarshalsPointer;
+import org.robovm.rt.bro.annotation.UsesArena;
 
 /**
  * Contains marshalers for {@link String} values.
@@ -30,24 +34,97 @@ public class StringMarshalers {
     public static class EightBitZeroTerminatedStringMarshaler {
         private static final String EMPTY_STRING = "";
         private final Charset charset;
+        /**
+         * {@code true} if the charset is {@code ISO-8859-1} which maps bytes
+         * to chars one-to-one.
+         */
+        private final boolean latin1;
+        /**
+         * {@code true} if the charset encodes 7-bit {@code ASCII} characters
+         * as themselves.
+         */
+        private final boolean asciiCompatible;
+        private final ThreadLocal<CharsetEncoder> encoders = new ThreadLocal<CharsetEncoder>() {
+            @Override
+            protected CharsetEncoder initialValue() {
+                return charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+        };
         
         public EightBitZeroTerminatedStringMarshaler(String charsetName) {
             charset = Charset.forName(charsetName);
+            latin1 = charset.name().equals("ISO-8859-1");
+            asciiCompatible = latin1 || isAsciiCompatible(charset);
         }
-        
-        public final String toObject(Class<?> cls, long handle, long flags) {
-            if (handle == 0L) {
-                return null;
+
+        private static boolean isAsciiCompatible(Charset charset) {
+            char[] chars = new char[128];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) i;
             }
-            int length = 0;
-            while (VM.getByte(handle + length) != 0) {
-                length++;
+            String ascii = new String(chars);
+            try {
+                byte[] bytes = ascii.getBytes(charset);
+                if (bytes.length != chars.length) {
+                    return false;
+                }
+                for (int i = 0; i < bytes.length; i++) {
+                    if (bytes[i] != i) {
+                        return false;
+                    }
+                }
+                return ascii.equals(new String(bytes, charset));
+            } catch (UnsupportedOperationException e) {
+                // Decode only charset
+                return false;
             }
+        }
+
+        private String decode(long handle, int length) {
             if (length == 0) {
                 return EMPTY_STRING;
             }
+            if (asciiCompatible) {
+                // Widen the bytes directly into the new String if possible
+                String s = VM.newStringLatin1(handle, length, !latin1);
+                if (s != null) {
+                    return s;
+                }
+            }
             return charset.decode(VM.newDirectByteBuffer(handle, length)).toString();
         }
+
+        /**
+         * Encodes as many chars of {@code s} as fit into the specified native
+         * buffer. Returns the number of bytes written.
+         */
+        private int encode(String s, long handle, int capacity) {
+            int length = s.length();
+            if (asciiCompatible && length <= capacity 
+                    && VM.getStringLatin1Chars(s, handle, length, !latin1)) {
+                return length;
+            }
+            return encodeWithEncoder(s, handle, capacity);
+        }
+
+        private int encodeWithEncoder(String s, long handle, int capacity) {
+            ByteBuffer bb = VM.newDirectByteBuffer(handle, capacity);
+            CharsetEncoder encoder = encoders.get();
+            encoder.reset();
+            CharBuffer cb = CharBuffer.wrap(s);
+            encoder.encode(cb, bb, true);
+            encoder.flush(bb);
+            return bb.position();
+        }
+        
+        public final String toObject(Class<?> cls, long handle, long flags) {
+            if (handle == 0L) {
+                return null;
+            }
+            return decode(handle, VM.strlen(handle));
+        }
         
         public final long toNative(String s, long flags) {
             long callType = flags & MarshalerFlags.CALL_TYPE_MASK;
@@ -71,30 +148,24 @@ public class StringMarshalers {
                 return 0L;
             }
 
-            byte[] bytes = s.getBytes(charset);
-            long handle = VM.allocateMemoryAtomic(bytes.length + 1);
-            VM.memcpy(handle, VM.getArrayValuesAddress(bytes), bytes.length);
+            // Allocate once for the worst case. encode() tries the fast path
+            // first and falls back to the encoder in the same buffer.
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 1,
+                    (long) Math.ceil(s.length() * (double) encoders.get().maxBytesPerChar()));
+            long handle = Arena.allocateMarshaled(capacity + 1, flags);
+            int length = encode(s, handle, capacity);
+            VM.setByte(handle + length, (byte) 0);
             return handle;
         }
         
         public final String toObject(Class<?> cls, long handle, long flags, int d1) {
-            int length = 0;
-            while (length < d1 && VM.getByte(handle + length) != 0) {
-                length++;
-            }
-            if (length == 0) {
-                return EMPTY_STRING;
-            }
-            return charset.decode(VM.newDirectByteBuffer(handle, length)).toString();
+            return decode(handle, VM.strnlen(handle, d1));
         }
         
         public final void toNative(String s, long handle, long flags, int d1) {
-            byte[] bytes = s.getBytes(charset);
-            int length = Math.min(d1, bytes.length);
-            ByteBuffer bb = VM.newDirectByteBuffer(handle, d1);
-            bb.put(bytes, 0, length);
-            if (bb.hasRemaining()) {
-                bb.put((byte) 0);
+            int length = encode(s, handle, d1);
+            if (length < d1) {
+                VM.setByte(handle + length, (byte) 0);
             }
         }
     }
@@ -111,6 +182,7 @@ public class StringMarshalers {
             return MARSHALER.toObject(cls, handle, flags);
         }
         @MarshalsPointer
+        @UsesArena
         public static long toNative(String s, long flags) {
             return MARSHALER.toNative(s, flags);
         }
@@ -136,6 +208,7 @@ public class StringMarshalers {
             return MARSHALER.toObject(cls, handle, flags);
         }
         @MarshalsPointer
+        @UsesArena
         public static long toNative(String s, long flags) {
             return MARSHALER.toNative(s, flags);
         }
@@ -161,6 +234,7 @@ public class StringMarshalers {
             return MARSHALER.toObject(cls, handle, flags);
         }
         @MarshalsPointer
+        @UsesArena
         public static long toNative(String s, long flags) {
             return MARSHALER.toNative(s, flags);
         }
@@ -186,6 +260,7 @@ public class StringMarshalers {
             return MARSHALER.toObject(cls, handle, flags);
         }
         @MarshalsPointer
+        @UsesArena
         public static long toNative(String s, long flags) {
             return MARSHALER.toNative(s, flags);
         }
@@ -211,6 +286,7 @@ public class StringMarshalers {
             return MARSHALER.toObject(cls, handle, flags);
         }
         @MarshalsPointer
+        @UsesArena
         public static long toNative(String s, long flags) {
             return MARSHALER.toNative(s, flags);
         }
@@ -20,6 +20,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.robovm.rt.bro.Arena;
 import org.robovm.rt.bro.Bro;
 
 /**
@@ -45,4 +46,12 @@ public @interface Bridge {
      * a call to the method will throw {@link UnsatisfiedLinkError}. 
      */
     boolean optional() default false;
+
+    /**
+     * Set to {@code false} if the native function keeps pointers to the
+     * marshaled arguments after it has returned. By default marshalers may
+     * allocate the native memory for the arguments from a per-thread
+     * {@link Arena} which is reset once the function returns.
+     */
+    boolean arena() default true;
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2013 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.rt.bro.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.robovm.rt.bro.Arena;
+import org.robovm.rt.bro.MarshalerFlags;
+
+/**
+ * Marks a {@code toNative} marshaler method which allocates the native
+ * memory of the marshaled value using
+ * {@link Arena#allocateMarshaled(int, long)}. The compiler only sets up the
+ * {@link Bridge} call {@link Arena} and passes {@link MarshalerFlags#ARENA}
+ * if at least one argument of a {@link Bridge} method is marshaled using such
+ * a method.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface UsesArena {
+}
@@ -0,0 +1,55 @@
+#!/bin/bash
+
+# Compares the run time of a CPU-bound program built with and without -lto.
+# Usage:
+#
+#   lto-benchmark.sh <classpath> <main class> [runs] [-- extra robovm args]
+#
+# Both variants are release builds using the same fresh cache. Each binary is
+# run the specified number of times (default 5) and the best wall clock time
+# is reported.
+
+set -e
+
+DEV_ROOT=$(cd "$(dirname "$0")/../.."; pwd -P)
+CP=$1
+MAIN=$2
+shift 2 || true
+if [ "x$CP" == 'x' ] || [ "x$MAIN" == 'x' ]; then
+  echo "Usage: $0 <classpath> <main class> [runs] [-- extra robovm args]"
+  exit 1
+fi
+RUNS=5
+if [ $# -gt 0 ] && [ "$1" != '--' ]; then
+  RUNS=$1
+  shift
+fi
+[ "$1" == '--' ] && shift
+
+DIR=$(mktemp -d -t robovm-lto-benchmark.XXXX)
+echo "Using tmp dir $DIR"
+
+for VARIANT in default lto; do
+  FLAGS=()
+  [ $VARIANT == 'lto' ] && FLAGS=(-lto)
+  LOG="$DIR/build-$VARIANT.log"
+  rm -rf "$DIR/tmp" "$DIR/out-$VARIANT"
+  ROBOVM_DEV_ROOT="$DEV_ROOT" JVM_MX=${JVM_MX:-4G} "$DEV_ROOT/bin/robovm" -cp "$CP" \
+    -tmp "$DIR/tmp" -cache "$DIR/cache" -d "$DIR/out-$VARIANT" -o out -verbose \
+    "${FLAGS[@]}" "$@" "$MAIN" > "$LOG" 2>&1 || {
+      echo "$VARIANT build failed, see $LOG"
+      exit 1
+    }
+  BEST=
+  for ((i = 0; i < RUNS; i++)); do
+    S=$(date +%s%N)
+    "$DIR/out-$VARIANT/out" > /dev/null
+    T=$(( ($(date +%s%N) - S) / 1000000 ))
+    if [ "x$BEST" == 'x' ] || [ $T -lt $BEST ]; then
+      BEST=$T
+    fi
+  done
+  echo "$VARIANT: best of $RUNS runs ${BEST} ms, $(stat -c %s "$DIR/out-$VARIANT/out" 2>/dev/null || stat -f %z "$DIR/out-$VARIANT/out") bytes"
+done
+
+rm -rf "$DIR"
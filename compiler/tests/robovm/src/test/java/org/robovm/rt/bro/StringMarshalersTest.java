@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.rt.bro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.robovm.rt.VM;
+import org.robovm.rt.bro.StringMarshalers.AsAsciiZMarshaler;
+import org.robovm.rt.bro.StringMarshalers.AsLatin1ZMarshaler;
+import org.robovm.rt.bro.StringMarshalers.AsUtf8ZMarshaler;
+import org.robovm.rt.bro.StringMarshalers.AsWindow1252ZMarshaler;
+
+/**
+ * Tests {@link StringMarshalers}.
+ */
+public class StringMarshalersTest {
+    private static final long FLAGS = MarshalerFlags.CALL_TYPE_BRIDGE;
+
+    private static long toNative(byte... bytes) {
+        long handle = VM.allocateMemory(bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            VM.setByte(handle + i, bytes[i]);
+        }
+        return handle;
+    }
+
+    private static void assertBytes(long handle, int... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("byte " + i, (byte) expected[i], VM.getByte(handle + i));
+        }
+    }
+
+    @Test
+    public void testNull() {
+        assertEquals(0L, AsUtf8ZMarshaler.toNative(null, FLAGS));
+        assertNull(AsUtf8ZMarshaler.toObject(String.class, 0L, FLAGS));
+    }
+
+    @Test
+    public void testEmpty() {
+        long handle = AsUtf8ZMarshaler.toNative("", FLAGS);
+        assertBytes(handle, 0);
+        assertEquals("", AsUtf8ZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testAsciiRoundTrip() {
+        long handle = AsUtf8ZMarshaler.toNative("foo bar", FLAGS);
+        assertBytes(handle, 'f', 'o', 'o', ' ', 'b', 'a', 'r', 0);
+        assertEquals("foo bar", AsUtf8ZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testLatin1RoundTrip() {
+        long handle = AsLatin1ZMarshaler.toNative("caf\u00e9\u00ff", FLAGS);
+        assertBytes(handle, 'c', 'a', 'f', 0xe9, 0xff, 0);
+        assertEquals("caf\u00e9\u00ff", AsLatin1ZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testLatin1Unmappable() {
+        long handle = AsLatin1ZMarshaler.toNative("a\u20acb", FLAGS);
+        assertBytes(handle, 'a', '?', 'b', 0);
+    }
+
+    @Test
+    public void testUtf8NonAsciiRoundTrip() {
+        // The ASCII-only fast path rejects these and the encoder is used
+        long handle = AsUtf8ZMarshaler.toNative("caf\u00e9 \u20ac", FLAGS);
+        assertBytes(handle, 'c', 'a', 'f', 0xc3, 0xa9, ' ', 0xe2, 0x82, 0xac, 0);
+        assertEquals("caf\u00e9 \u20ac", AsUtf8ZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testUtf8NonAsciiDecode() {
+        long handle = toNative((byte) 'a', (byte) 0xc3, (byte) 0xa9, (byte) 0);
+        assertEquals("a\u00e9", AsUtf8ZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testWindow1252NonAsciiRoundTrip() {
+        long handle = AsWindow1252ZMarshaler.toNative("\u20ac1", FLAGS);
+        assertBytes(handle, 0x80, '1', 0);
+        assertEquals("\u20ac1", AsWindow1252ZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testAsciiRejectsNonAscii() {
+        long handle = AsAsciiZMarshaler.toNative("a\u00e9b", FLAGS);
+        assertBytes(handle, 'a', '?', 'b', 0);
+        handle = toNative((byte) 'a', (byte) 0xe9, (byte) 'b', (byte) 0);
+        assertEquals("a\ufffdb", AsAsciiZMarshaler.toObject(String.class, handle, FLAGS));
+    }
+
+    @Test
+    public void testToNativeArrayTruncates() {
+        long handle = toNative(new byte[6]);
+        VM.setByte(handle + 4, (byte) 'x');
+        AsLatin1ZMarshaler.toNative("abcdef", handle, FLAGS, 4);
+        assertBytes(handle, 'a', 'b', 'c', 'd', 'x');
+    }
+
+    @Test
+    public void testToNativeArrayTerminates() {
+        long handle = toNative((byte) 'x', (byte) 'x', (byte) 'x', (byte) 'x');
+        AsLatin1ZMarshaler.toNative("ab", handle, FLAGS, 4);
+        assertBytes(handle, 'a', 'b', 0, 'x');
+    }
+
+    @Test
+    public void testToNativeArrayTruncatesMultiByte() {
+        // The second char takes 2 bytes in UTF-8 and doesn't fit
+        long handle = toNative((byte) 'x', (byte) 'x', (byte) 'x');
+        AsUtf8ZMarshaler.toNative("a\u00e9", handle, FLAGS, 2);
+        assertBytes(handle, 'a', 0, 'x');
+    }
+
+    @Test
+    public void testToObjectArrayStopsAtTerminator() {
+        long handle = toNative((byte) 'a', (byte) 'b', (byte) 0, (byte) 'c', (byte) 'd');
+        assertEquals("ab", AsLatin1ZMarshaler.toObject(String.class, handle, FLAGS, 5));
+    }
+
+    @Test
+    public void testToObjectArrayWithoutTerminator() {
+        long handle = toNative((byte) 'a', (byte) 'b', (byte) 'c', (byte) 'd', (byte) 0);
+        assertEquals("abc", AsLatin1ZMarshaler.toObject(String.class, handle, FLAGS, 3));
+        assertEquals("abc", AsUtf8ZMarshaler.toObject(String.class, handle, FLAGS, 3));
+    }
+
+    @Test
+    public void testToObjectArrayNonAscii() {
+        long handle = toNative((byte) 0xc3, (byte) 0xa9, (byte) 'a', (byte) 'b');
+        assertEquals("\u00e9a", AsUtf8ZMarshaler.toObject(String.class, handle, FLAGS, 3));
+        assertEquals("\u00c3\u00a9a", AsLatin1ZMarshaler.toObject(String.class, handle, FLAGS, 3));
+    }
+}
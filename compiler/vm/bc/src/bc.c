@@ -292,12 +292,19 @@ static Class* createClass(Env* env, ClassInfoHeader* header, Object* classLoader
             header->instanceRefCount, ci.attributes, header->initializer);
 
     if (clazz) {
-        if (!rvmRegisterClass(env, clazz)) {
+        // Lookups of loaded classes don't take the class lock. Set up the
+        // header and notify the hooks before other threads can find the class.
+        if (!rvmRegisterUnpublishedClass(env, clazz)) {
             rvmReleaseClassLock(env);
             return NULL;
         }
-        header->clazz = clazz;
+        rvmAtomicStoreReleasePtr((void**) &header->clazz, clazz);
         rvmHookClassLoaded(env, clazz, (void*)header);
+        if (!rvmPublishClass(env, clazz)) {
+            header->clazz = NULL;
+            rvmReleaseClassLock(env);
+            return NULL;
+        }
     }
 
     rvmReleaseClassLock(env);
@@ -615,6 +622,25 @@ void* _bcLookupInterfaceMethod(Env* env, ClassInfoHeader* header, Object* thiz,
     LEAVE(result);
 }
 
+/*
+ * Second level cache used by _bcLookupInterfaceMethodImpl() when the ITable
+ * for an interface isn't found in the receiver class' ITables cache slot.
+ * Hits in this cache still update the class' cache slot.
+ * It's a direct mapped table indexed by a hash of the (ITables, interface)
+ * pair. Each slot points at an element of the ITables' table array which
+ * identifies both the class and the ITable using a single word. A slot is
+ * only used if it points into the receiver's ITables and the ITable is for
+ * the requested interface, so slots can be read and overwritten without
+ * locking. Must be a power of 2.
+ */
+#define ITABLE_CACHE_SIZE 4096
+static ITable** itableCache[ITABLE_CACHE_SIZE];
+
+static inline uint32_t itableCacheIndex(ITables* itables, TypeInfo* typeInfo) {
+    uintptr_t h = (((uintptr_t) itables) >> 3) ^ (((uintptr_t) typeInfo) >> 3) * 31;
+    return (uint32_t) (h ^ (h >> 12)) & (ITABLE_CACHE_SIZE - 1);
+}
+
 void* _bcLookupInterfaceMethodImpl(Env* env, ClassInfoHeader* header, Object* thiz, uint32_t index) {
     TypeInfo* typeInfo = header->typeInfo;
     ITables* itables = thiz->clazz->itables;
@@ -622,11 +648,19 @@ void* _bcLookupInterfaceMethodImpl(Env* env, ClassInfoHeader* header, Object* th
     if (itable->typeInfo == typeInfo) {
         return itable->table.table[index];
     }
+    uint32_t slot = itableCacheIndex(itables, typeInfo);
+    ITable** entry = ((ITable** volatile*) itableCache)[slot];
+    if (entry >= itables->table && entry < itables->table + itables->count && (*entry)->typeInfo == typeInfo) {
+        itable = *entry;
+        itables->cache = itable;
+        return itable->table.table[index];
+    }
     uint32_t i;
     for (i = 0; i < itables->count; i++) {
         itable = itables->table[i];
         if (itable->typeInfo == typeInfo) {
             itables->cache = itable;
+            ((ITable** volatile*) itableCache)[slot] = &itables->table[i];
             return itable->table.table[index];
         }
     }
@@ -794,8 +828,46 @@ void _bcThrowClassCastExceptionArray(Env* env, Class* arrayClass, Object* o) {
 }
 
 Object* _bcAllocate(Env* env, ClassInfoHeader* header) {
+    Class* clazz = header->clazz;
+    // Fast path. Initialized concrete classes are allocated straight from the
+    // thread local free lists without pushing a gateway frame. Anything which
+    // may throw or run Java code is left to rvmAllocateObject().
+    if (clazz && CLASS_IS_STATE_INITIALIZED(clazz)
+            && !CLASS_IS_ABSTRACT(clazz) && !CLASS_IS_INTERFACE(clazz)) {
+        Object* obj = rvmAllocateMemoryForObjectFast(clazz);
+        if (obj) {
+            obj->clazz = clazz;
+            rvmCountAllocatedBytes(env, clazz->instanceDataSize);
+            return obj;
+        }
+    }
     ENTER;
-    Object* obj = rvmAllocateObject(env, header->clazz);
+    Object* obj = rvmAllocateObject(env, clazz);
+    LEAVE(obj);
+}
+
+/*
+ * Initializes an instance of clazz in memory reserved on the caller's stack.
+ * Used by the compiler for objects which never escape the method allocating
+ * them. Falls back to allocating on the heap if the class turns out to need
+ * special treatment by the GC or doesn't fit in size bytes.
+ */
+Object* _bcNewStackObject(Env* env, Class* clazz, Object* mem, jint size) {
+    ENTER;
+    Object* obj = NULL;
+    if (CLASS_IS_FINALIZABLE(clazz) || CLASS_IS_REFERENCE(clazz) || CLASS_IS_ABSTRACT(clazz)
+            || clazz->instanceDataSize > size) {
+        obj = rvmAllocateObject(env, clazz);
+    } else {
+        if (!CLASS_IS_STATE_INITIALIZED(clazz)) {
+            rvmInitialize(env, clazz);
+        }
+        if (!rvmExceptionOccurred(env)) {
+            memset(mem, 0, clazz->instanceDataSize);
+            mem->clazz = clazz;
+            obj = mem;
+        }
+    }
     LEAVE(obj);
 }
 
@@ -805,51 +877,81 @@ void _bcRegisterFinalizer(Env* env, Object* obj) {
     LEAVEV;
 }
 
+/*
+ * Allocates a primitive array of the specified class without pushing a
+ * gateway frame. Returns NULL if the caller has to use the slow path.
+ */
+static inline Array* newPrimitiveArrayFast(Env* env, Class* arrayClass, jint length) {
+    Array* array = rvmAllocateMemoryForArrayFast(arrayClass, length);
+    if (array) {
+        array->object.clazz = arrayClass;
+        array->length = length;
+        rvmCountAllocatedBytes(env, rvmGetArraySize(env, arrayClass, length));
+    }
+    return array;
+}
+
 BooleanArray* _bcNewBooleanArray(Env* env, jint length) {
+    BooleanArray* array = (BooleanArray*) newPrimitiveArrayFast(env, array_Z, length);
+    if (array) return array;
     ENTER;
-    BooleanArray* array = rvmNewBooleanArray(env, length);
+    array = rvmNewBooleanArray(env, length);
     LEAVE(array);
 }
 
 ByteArray* _bcNewByteArray(Env* env, jint length) {
+    ByteArray* array = (ByteArray*) newPrimitiveArrayFast(env, array_B, length);
+    if (array) return array;
     ENTER;
-    ByteArray* array = rvmNewByteArray(env, length);
+    array = rvmNewByteArray(env, length);
     LEAVE(array);
 }
 
 CharArray* _bcNewCharArray(Env* env, jint length) {
+    CharArray* array = (CharArray*) newPrimitiveArrayFast(env, array_C, length);
+    if (array) return array;
     ENTER;
-    CharArray* array = rvmNewCharArray(env, length);
+    array = rvmNewCharArray(env, length);
     LEAVE(array);
 }
 
 ShortArray* _bcNewShortArray(Env* env, jint length) {
+    ShortArray* array = (ShortArray*) newPrimitiveArrayFast(env, array_S, length);
+    if (array) return array;
     ENTER;
-    ShortArray* array = rvmNewShortArray(env, length);
+    array = rvmNewShortArray(env, length);
     LEAVE(array);
 }
 
 IntArray* _bcNewIntArray(Env* env, jint length) {
+    IntArray* array = (IntArray*) newPrimitiveArrayFast(env, array_I, length);
+    if (array) return array;
     ENTER;
-    IntArray* array = rvmNewIntArray(env, length);
+    array = rvmNewIntArray(env, length);
     LEAVE(array);
 }
 
 LongArray* _bcNewLongArray(Env* env, jint length) {
+    LongArray* array = (LongArray*) newPrimitiveArrayFast(env, array_J, length);
+    if (array) return array;
     ENTER;
-    LongArray* array = rvmNewLongArray(env, length);
+    array = rvmNewLongArray(env, length);
     LEAVE(array);
 }
 
 FloatArray* _bcNewFloatArray(Env* env, jint length) {
+    FloatArray* array = (FloatArray*) newPrimitiveArrayFast(env, array_F, length);
+    if (array) return array;
     ENTER;
-    FloatArray* array = rvmNewFloatArray(env, length);
+    array = rvmNewFloatArray(env, length);
     LEAVE(array);
 }
 
 DoubleArray* _bcNewDoubleArray(Env* env, jint length) {
+    DoubleArray* array = (DoubleArray*) newPrimitiveArrayFast(env, array_D, length);
+    if (array) return array;
     ENTER;
-    DoubleArray* array = rvmNewDoubleArray(env, length);
+    array = rvmNewDoubleArray(env, length);
     LEAVE(array);
 }
 
@@ -168,7 +168,7 @@ void readMethodInfo(void** p, MethodInfo* result) {
     void* linetable = NULL;
     if (!IS_ABSTRACT(access)) {
         impl = readPtr(p);
-        size = readInt(p);
+        size = *(jint*) readPtr(p);
         if (IS_SYNCHRONIZED(access)) synchronizedImpl = readPtr(p);
         if (!IS_NATIVE(access)) {
             linetable = readPtr(p);
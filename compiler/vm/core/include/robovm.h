@@ -62,6 +62,7 @@ extern "C" {
 #include "robovm/mutex.h"
 #include "robovm/monitor.h"
 #include "robovm/signal.h"
+#include "robovm/profiler.h"
 #include "robovm/hooks.h"
 #include "robovm/rt.h"
 #include "robovm/lazy_helpers.h"
@@ -83,6 +83,29 @@ static inline void* rvmAtomicStorePtr(void** ptr, void* newval) {
     }
 }
 
+/*
+ * Plain loads and stores with acquire/release ordering. Unlike
+ * rvmAtomicLoadPtr() these never write to the cache line and are suitable for
+ * read-mostly data shared by many threads.
+ */
+static inline void* rvmAtomicLoadAcquirePtr(void** ptr) {
+    return __atomic_load_n(ptr, __ATOMIC_ACQUIRE);
+}
+
+static inline void rvmAtomicStoreReleasePtr(void** ptr, void* newval) {
+    __atomic_store_n(ptr, newval, __ATOMIC_RELEASE);
+}
+
+/*
+ * Adds delta to a 64-bit value which is only ever written by the calling
+ * thread. Cheaper than a locked read-modify-write but unlike a plain += the
+ * store can't tear on 32-bit CPUs so concurrent rvmAtomicLoadLong() calls
+ * always see a complete value.
+ */
+static inline void rvmAtomicAddLongSingleWriter(jlong* ptr, jlong delta) {
+    __atomic_store_n(ptr, __atomic_load_n(ptr, __ATOMIC_RELAXED) + delta, __ATOMIC_RELAXED);
+}
+
 static inline void rvmAtomicSynchronize() {
     __sync_synchronize();
 }
@@ -168,6 +168,12 @@ extern BridgeMethod* rvmAddBridgeMethod(Env* env, Class* clazz, const char* name
 extern CallbackMethod* rvmAddCallbackMethod(Env* env, Class* clazz, const char* name, const char* desc, jint vitableIndex, jint access, jint size, void* impl, 
 		void* synchronizedImpl, void* linetable, void* callbackImpl, void* attributes);
 extern jboolean rvmRegisterClass(Env* env, Class* clazz);
+/*
+ * Registers a class without making it visible to class lookups. The caller
+ * must call rvmPublishClass() once it has finished setting up the class.
+ */
+extern jboolean rvmRegisterUnpublishedClass(Env* env, Class* clazz);
+extern jboolean rvmPublishClass(Env* env, Class* clazz);
 
 extern Class* rvmFindClass(Env* env, const char* className);
 extern Class* rvmFindClassInClasspathForLoader(Env* env, const char* className, Object* classLoader);
@@ -16,16 +16,30 @@
 #ifndef ROBOVM_MEMORY_H
 #define ROBOVM_MEMORY_H
 
+#define GC_PAUSE_HISTOGRAM_SIZE 24
+
+typedef struct GCCollectionStats {
+    jlong count;          // The value of GC_get_gc_no() after the collection
+    jlong startTime;      // System.nanoTime() when the collection started
+    jlong duration;       // Nanoseconds from start to end of the collection
+    jlong pauseTime;      // Nanoseconds the world was stopped
+    jlong allocatedBytes; // Bytes allocated since the previous collection
+    jlong heapSize;       // Heap size after the collection
+    jlong freeBytes;      // Free bytes in the heap after the collection
+} GCCollectionStats;
+
 extern jboolean rvmInitMemory(Env* env);
 extern Class* rvmAllocateMemoryForClass(Env* env, jint classDataSize);
 extern void rvmSetupGcDescriptor(Env* env, Class* clazz);
 extern Object* rvmAllocateMemoryForObject(Env* env, Class* clazz);
+extern Object* rvmAllocateMemoryForObjectFast(Class* clazz);
 extern jboolean rvmIsCriticalOutOfMemoryError(Env* env, Object* throwable);
 extern void rvmRegisterFinalizer(Env* env, Object* obj);
 extern void rvmRegisterReference(Env* env, Object* reference, Object* referent);
 extern void rvmRegisterDisappearingLink(Env* env, void** address, Object* obj);
 extern void rvmUnregisterDisappearingLink(Env* env, void** address);
 extern Array* rvmAllocateMemoryForArray(Env* env, Class* arrayClass, jint length);
+extern Array* rvmAllocateMemoryForArrayFast(Class* arrayClass, jint length);
 extern void* rvmAllocateMemory(Env* env, size_t size);
 extern void* rvmAllocateMemoryUncollectable(Env* env, size_t size);
 extern void* rvmAllocateMemoryAtomic(Env* env, size_t size);
@@ -47,6 +61,21 @@ extern Object* rvmNewDirectByteBuffer(Env* env, void* address, jlong capacity);
 extern void* rvmGetDirectBufferAddress(Env* env, Object* buf);
 extern jlong rvmGetDirectBufferCapacity(Env* env, Object* buf);
 extern void rvmGenerateHeapDump(Env* env);
+extern jint rvmGetGCMode(Env* env);
+extern jlong rvmGetGCStats(Env* env, GCCollectionStats* last, jlong* pauseHistogram, jlong* totalPauseTime, jlong* maxPauseTime);
+extern jlong rvmWaitForGC(Env* env, jlong count, jlong timeout);
+extern jlong rvmGetThreadAllocatedBytes(Env* env, Thread* thread);
+
+/*
+ * Adds size to the number of bytes allocated for Java objects by the current
+ * thread. Only ever written by the owning thread.
+ */
+static inline void rvmCountAllocatedBytes(Env* env, jlong size) {
+    Thread* thread = env->currentThread;
+    if (thread) {
+        rvmAtomicAddLongSingleWriter(&thread->allocatedBytes, size);
+    }
+}
 
 // Moves n 16-bit values from src to dest. src and dest must be 16-bit aligned.
 static inline void rvmMoveMemory16(void* dest, const void* src, size_t n) {
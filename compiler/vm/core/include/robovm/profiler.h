@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef ROBOVM_PROFILER_H
+#define ROBOVM_PROFILER_H
+
+extern jboolean rvmStartProfiler(Env* env, jint interval);
+extern void rvmStopProfiler(Env* env);
+extern jboolean rvmIsProfilerRunning(Env* env);
+extern void rvmResetProfiler(Env* env);
+extern void rvmGetProfilerStats(Env* env, jlong* samples, jlong* droppedSamples, jlong* time);
+extern jint rvmDumpProfile(Env* env, const char* path);
+extern void rvmShutdownProfiler(Env* env);
+
+#endif
+
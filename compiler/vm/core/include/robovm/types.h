@@ -214,6 +214,10 @@ struct Monitor {
   Thread*     waitSet;  /* threads currently waiting on this monitor */
   Monitor*    next;
   Mutex lock;
+
+  jint        spinLimit;        /* adaptive spin count before parking */
+  jint        contentionCount;  /* acquires which found the monitor owned */
+  jint        parkCount;        /* contended acquires which had to park */
 };
 
 struct Thread {
@@ -231,6 +235,7 @@ struct Thread {
   jint status;
   pthread_cond_t waitCond;
   sigset_t signalMask;
+  jlong allocatedBytes;
 };
 
 struct Array {
@@ -319,6 +324,15 @@ struct SystemProperty {
   SystemProperty* next;
 };
 
+/*
+ * Garbage collector modes. Selected using the GCMode option.
+ */
+typedef enum GCMode {
+    GC_MODE_DEFAULT = 0,
+    GC_MODE_INCREMENTAL,
+    GC_MODE_GENERATIONAL,
+} GCMode;
+
 typedef struct Options {
     char* mainClass;
     char** commandLineArgs;
@@ -326,6 +340,11 @@ typedef struct Options {
     jint logLevel;
     jlong maxHeapSize;
     jlong initialHeapSize;
+    jint internedStringsCacheSize;
+    jint gcMode;
+    jint gcMarkers;
+    char* profileFile;
+    jint profileInterval;
     jboolean enableGCHeapStats;
     jboolean enableHooks;
     jboolean waitForResume;
@@ -18,7 +18,6 @@
 #include <string.h>
 #include "utlist.h"
 #include "private.h"
-#include "uthash.h"
 
 #define LOG_TAG "core.class"
 
@@ -117,12 +116,25 @@ static Method* java_lang_Double_valueOf = NULL;
 
 static Mutex classLock;
 
+/*
+ * The table of loaded classes. Lookups don't take the class lock. Entries
+ * are only ever added, while holding the class lock, and are immutable once
+ * published. When the table grows a new table with copies of all entries is
+ * published and the old one is left to the GC. Threads still walking the old
+ * table keep it reachable through their stacks.
+ */
 typedef struct LoadedClassEntry {
-    const char* key;      // The class name
-    Class* clazz;
-    UT_hash_handle hh;
+    struct LoadedClassEntry* next;
+    uint32_t hash;
+    Class* clazz;         // The key is clazz->name
 } LoadedClassEntry;
-static LoadedClassEntry* loadedClasses = NULL;
+typedef struct LoadedClassTable {
+    uint32_t mask;        // Number of buckets - 1
+    uint32_t count;
+    LoadedClassEntry* buckets[0];
+} LoadedClassTable;
+#define LOADED_CLASSES_INITIAL_SIZE 1024
+static LoadedClassTable* loadedClasses = NULL;
 
 // Class id counter used for dynamically created classes. We assume
 // that linked in classes never have class ids above about 250 million.
@@ -134,26 +146,83 @@ static ITables emptyITables = {0, &emptyITable};
 static Class* findClassByDescriptor(Env* env, const char* desc, Object* classLoader, Class* (*loaderFunc)(Env*, const char*, Object*));
 static Class* findClass(Env* env, const char* className, Object* classLoader, Class* (*loaderFunc)(Env*, const char*, Object*));
 static Class* findBootClass(Env* env, const char* className);
+static jboolean registerClass(Env* env, Class* clazz, jint state, jboolean publish);
 
 inline uint32_t nextClassId(void) {
     return __sync_fetch_and_add(&classIdCounter, 1);
 }
 
+static inline uint32_t hashClassName(const char* className) {
+    // FNV-1a
+    uint32_t hash = 2166136261U;
+    const unsigned char* p;
+    for (p = (const unsigned char*) className; *p; p++) {
+        hash = (hash ^ *p) * 16777619U;
+    }
+    return hash;
+}
+
+static LoadedClassTable* allocateLoadedClassTable(Env* env, uint32_t size) {
+    return rvmAllocateMemory(env, sizeof(LoadedClassTable) + sizeof(LoadedClassEntry*) * size);
+}
+
 static Class* getLoadedClass(Env* env, const char* className) {
-    LoadedClassEntry* entry;
-    HASH_FIND_STR(loadedClasses, className, entry);
-    return entry ? entry->clazz : NULL;
+    uint32_t hash = hashClassName(className);
+    LoadedClassTable* table = rvmAtomicLoadAcquirePtr((void**) &loadedClasses);
+    LoadedClassEntry* entry = rvmAtomicLoadAcquirePtr((void**) &table->buckets[hash & table->mask]);
+    for (; entry != NULL; entry = entry->next) {
+        if (entry->hash == hash && !strcmp(entry->clazz->name, className)) {
+            return entry->clazz;
+        }
+    }
+    return NULL;
 }
 
+/*
+ * Grows the table of loaded classes. Must be called with the class lock held.
+ */
+static jboolean growLoadedClasses(Env* env) {
+    LoadedClassTable* old = loadedClasses;
+    uint32_t size = (old->mask + 1) * 2;
+    LoadedClassTable* table = allocateLoadedClassTable(env, size);
+    if (!table) return FALSE;
+    table->mask = size - 1;
+    table->count = old->count;
+    uint32_t i;
+    for (i = 0; i <= old->mask; i++) {
+        LoadedClassEntry* e;
+        for (e = old->buckets[i]; e != NULL; e = e->next) {
+            // Entries in the old table may be in use by readers and must not
+            // be relinked.
+            LoadedClassEntry* copy = rvmAllocateMemory(env, sizeof(LoadedClassEntry));
+            if (!copy) return FALSE;
+            copy->hash = e->hash;
+            copy->clazz = e->clazz;
+            copy->next = table->buckets[e->hash & table->mask];
+            table->buckets[e->hash & table->mask] = copy;
+        }
+    }
+    rvmAtomicStoreReleasePtr((void**) &loadedClasses, table);
+    return TRUE;
+}
+
+/*
+ * Adds a class to the table of loaded classes. Must be called with the class
+ * lock held. The class is visible to other threads once this returns.
+ */
 static jboolean addLoadedClass(Env* env, Class* clazz) {
-    // LoadedClassEntrys are allocated atomically. Classes are always GC roots 
-    // which means that the class and it's name will be reachable regardless of 
-    // whether this is allocated atomically or not.
-    LoadedClassEntry* entry = rvmAllocateMemoryAtomicUncollectable(env, sizeof(LoadedClassEntry));
+    if (loadedClasses->count >= loadedClasses->mask + 1) {
+        if (!growLoadedClasses(env)) return FALSE;
+    }
+    LoadedClassTable* table = loadedClasses;
+    LoadedClassEntry* entry = rvmAllocateMemory(env, sizeof(LoadedClassEntry));
     if (!entry) return FALSE;
-    entry->key = clazz->name;
+    entry->hash = hashClassName(clazz->name);
     entry->clazz = clazz;
-    HASH_ADD_KEYPTR(hh, loadedClasses, entry->key, strlen(entry->key), entry);
+    LoadedClassEntry** bucket = &table->buckets[entry->hash & table->mask];
+    entry->next = *bucket;
+    rvmAtomicStoreReleasePtr((void**) bucket, entry);
+    table->count++;
     return TRUE;
 }
 
@@ -240,16 +309,21 @@ static Class* createArrayClass(Env* env, Class* componentType) {
     clazz->_methods = NULL;
     if (!rvmAddInterface(env, clazz, java_lang_Cloneable)) return NULL;
     if (!rvmAddInterface(env, clazz, java_io_Serializable)) return NULL;
-    if (!rvmRegisterClass(env, clazz)) return NULL;
-
-    clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | CLASS_STATE_INITIALIZED;
+    if (!registerClass(env, clazz, CLASS_STATE_INITIALIZED, TRUE)) return NULL;
 
     return clazz;
 }
 
 static Class* findClass(Env* env, const char* className, Object* classLoader, Class* (*loaderFunc)(Env*, const char*, Object*)) {
-    obtainClassLock();
     Class* clazz = getLoadedClass(env, className);
+    if (clazz != NULL) {
+        return clazz;
+    }
+
+    obtainClassLock();
+    // Check again. Another thread may have loaded the class while we were
+    // waiting for the lock.
+    clazz = getLoadedClass(env, className);
     if (clazz != NULL) {
         releaseClassLock();
         return clazz;
@@ -543,6 +617,9 @@ jboolean rvmInitClasses(Env* env) {
         return FALSE;
     }
 
+    loadedClasses = allocateLoadedClassTable(env, LOADED_CLASSES_INITIAL_SIZE);
+    if (!loadedClasses) return FALSE;
+    loadedClasses->mask = LOADED_CLASSES_INITIAL_SIZE - 1;
     gcAddRoot(&loadedClasses);
 
     // Cache important classes in java.lang.
@@ -792,9 +869,7 @@ Class* rvmFindClassUsingLoader(Env* env, const char* className, Object* classLoa
 }
 
 Class* rvmFindLoadedClass(Env* env, const char* className, Object* classLoader) {
-    obtainClassLock();
     Class* clazz = getLoadedClass(env, className);
-    releaseClassLock();
     if (rvmExceptionOccurred(env)) return NULL;
     if (clazz && !CLASS_IS_STATE_INITIALIZED(clazz)) return NULL;
     return clazz;
@@ -1108,7 +1183,7 @@ Method* rvmGetMethods(Env* env, Class* clazz) {
     return clazz->_methods;
 }
 
-jboolean rvmRegisterClass(Env* env, Class* clazz) {
+static jboolean registerClass(Env* env, Class* clazz, jint state, jboolean publish) {
     assert(CLASS_IS_STATE_ALLOCATED(clazz));
 
     // We should now have enough of the class set up to build its GC descriptor
@@ -1118,22 +1193,39 @@ jboolean rvmRegisterClass(Env* env, Class* clazz) {
     // TODO: Verify the class hierarchy (class doesn't override final methods, changes public -> private, etc)
 
     obtainClassLock();
-    if (!addLoadedClass(env, clazz)) {
+    if (!rvmAddGlobalRef(env, (Object*) clazz)) {
         releaseClassLock();
         return FALSE;
     }
 
-    if (!rvmAddGlobalRef(env, (Object*) clazz)) {
+    clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | state;
+
+    // Lookups don't take the class lock so the class must be completely set
+    // up before it's added.
+    if (publish && !addLoadedClass(env, clazz)) {
         releaseClassLock();
         return FALSE;
     }
 
-    clazz->flags = (clazz->flags & (~CLASS_STATE_MASK)) | CLASS_STATE_LOADED;
-
     releaseClassLock();
     return TRUE;
 }
 
+jboolean rvmRegisterClass(Env* env, Class* clazz) {
+    return registerClass(env, clazz, CLASS_STATE_LOADED, TRUE);
+}
+
+jboolean rvmRegisterUnpublishedClass(Env* env, Class* clazz) {
+    return registerClass(env, clazz, CLASS_STATE_LOADED, FALSE);
+}
+
+jboolean rvmPublishClass(Env* env, Class* clazz) {
+    obtainClassLock();
+    jboolean result = addLoadedClass(env, clazz);
+    releaseClassLock();
+    return result;
+}
+
 void rvmInitialize(Env* env, Class* clazz) {
     assert(env->currentThread != NULL);
 
@@ -1574,9 +1666,13 @@ Object* rvmCloneObject(Env* env, Object* obj) {
 }
 
 void rvmIterateLoadedClasses(Env* env, jboolean (*f)(Env*, Class*, void*), void* data) {
-    LoadedClassEntry* entry;
-    for (entry = loadedClasses; entry != NULL; entry = entry->hh.next) {
-        if (!f(env, entry->clazz, data)) return;
+    LoadedClassTable* table = rvmAtomicLoadAcquirePtr((void**) &loadedClasses);
+    uint32_t i;
+    for (i = 0; i <= table->mask; i++) {
+        LoadedClassEntry* entry = rvmAtomicLoadAcquirePtr((void**) &table->buckets[i]);
+        for (; entry != NULL; entry = entry->next) {
+            if (!f(env, entry->clazz, data)) return;
+        }
     }
 }
 
@@ -15,8 +15,9 @@
  */
 #include <robovm.h>
 #include <string.h>
+#include "private.h"
 
-static Field* getField(Env* env, Class* clazz, char* name, char* desc) {
+static Field* searchField(Env* env, Class* clazz, char* name, char* desc) {
     Field* field = rvmGetFields(env, clazz);
     if (rvmExceptionCheck(env)) return NULL;
     for (; field != NULL; field = field->next) {
@@ -28,18 +29,28 @@ static Field* getField(Env* env, Class* clazz, char* name, char* desc) {
     Interface* interfaze = rvmGetInterfaces(env, clazz);
     if (rvmExceptionCheck(env)) return NULL;
     for (; interfaze != NULL; interfaze = interfaze->next) {
-        field = getField(env, interfaze->interfaze, name, desc);
+        field = searchField(env, interfaze->interfaze, name, desc);
         if (rvmExceptionCheck(env)) return NULL;
         if (field) return field;
     }
 
     if (clazz->superclass) {
-        return getField(env, clazz->superclass, name, desc);
+        return searchField(env, clazz->superclass, name, desc);
     }
 
     return NULL;
 }
 
+static Field* getField(Env* env, Class* clazz, char* name, char* desc) {
+    Field* field = memberCacheGet(clazz, name, desc, TRUE);
+    if (field) return field;
+    field = searchField(env, clazz, name, desc);
+    if (field) {
+        memberCachePut(clazz, field->name, field->desc, TRUE, field);
+    }
+    return field;
+}
+
 Field* rvmGetField(Env* env, Class* clazz, char* name, char* desc) {
     Field* field = getField(env, clazz, name, desc);
     if (rvmExceptionCheck(env)) return NULL;
@@ -149,6 +149,32 @@ void rvmParseOption(char* arg, Options* options) {
             }
             options->mainClass = s;
         }
+    } else if (startsWith(arg, "InternedStringsCacheSize=")) {
+        jint n = strtol(&arg[strlen("InternedStringsCacheSize=")], NULL, 10);
+        if (n > 0) {
+            options->internedStringsCacheSize = n;
+        }
+    } else if (startsWith(arg, "GCMode=")) {
+        char* mode = &arg[strlen("GCMode=")];
+        if (!strcmp(mode, "incremental")) {
+            options->gcMode = GC_MODE_INCREMENTAL;
+        } else if (!strcmp(mode, "generational")) {
+            options->gcMode = GC_MODE_GENERATIONAL;
+        } else {
+            options->gcMode = GC_MODE_DEFAULT;
+        }
+    } else if (startsWith(arg, "GCMarkers=")) {
+        jint n = strtol(&arg[strlen("GCMarkers=")], NULL, 10);
+        if (n > 0) {
+            options->gcMarkers = n;
+        }
+    } else if (startsWith(arg, "Profile=")) {
+        options->profileFile = strdup(&arg[strlen("Profile=")]);
+    } else if (startsWith(arg, "ProfileInterval=")) {
+        jint n = strtol(&arg[strlen("ProfileInterval=")], NULL, 10);
+        if (n > 0) {
+            options->profileInterval = n;
+        }
     } else if (startsWith(arg, "EnableGCHeapStats")) {
         options->enableGCHeapStats = TRUE;
     } else if (startsWith(arg, "EnableHooks")) {
@@ -377,6 +403,8 @@ Env* rvmStartup(Options* options) {
     if (!rvmInitExceptions(env)) return NULL;
     TRACE("Initializing signals");
     if (!rvmInitSignals(env)) return NULL;
+    TRACE("Initializing profiler");
+    if (!initProfiler(env, options)) return NULL;
     TRACE("Initializing JNI");
     if (!rvmInitJNI(env)) return NULL;
 
@@ -518,6 +546,7 @@ jboolean rvmDestroyVM(VM* vm) {
 }
 
 void rvmShutdown(Env* env, jint code) {
+    rvmShutdownProfiler(env);
     // TODO: Cleanup, stop threads.
     exit(code);
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include <robovm.h>
+#include <string.h>
+#include "private.h"
+
+/*
+ * Cache of successful method and field lookups keyed by the class the
+ * lookup started at and the name and descriptor looked up. A hit saves the
+ * walk over the member lists of the class, its superclasses and its
+ * interfaces. Classes never change once loaded so entries never have to be
+ * invalidated.
+ *
+ * Lookups don't take any lock. Entries are pushed onto the bucket lists using
+ * CAS and are never removed. Two threads adding the same entry concurrently
+ * results in a harmless duplicate.
+ */
+
+#define MEMBER_CACHE_SIZE 8192 // Must be a power of 2
+
+typedef struct MemberCacheEntry {
+    struct MemberCacheEntry* next;
+    uint32_t hash;
+    jboolean isField;
+    Class* clazz;
+    const char* name;
+    const char* desc;
+    void* member;
+} MemberCacheEntry;
+
+static MemberCacheEntry* memberCache[MEMBER_CACHE_SIZE];
+
+static inline uint32_t hashMember(Class* clazz, const char* name, const char* desc, jboolean isField) {
+    // FNV-1a
+    uint32_t h = 2166136261u;
+    const char* s;
+    for (s = name; *s; s++) {
+        h = (h ^ (uint8_t) *s) * 16777619u;
+    }
+    h = (h ^ (isField ? 1 : 2)) * 16777619u;
+    for (s = desc; *s; s++) {
+        h = (h ^ (uint8_t) *s) * 16777619u;
+    }
+    return h ^ (uint32_t) (((uintptr_t) clazz) >> 3);
+}
+
+void* memberCacheGet(Class* clazz, const char* name, const char* desc, jboolean isField) {
+    uint32_t hash = hashMember(clazz, name, desc, isField);
+    MemberCacheEntry* e = rvmAtomicLoadAcquirePtr((void**) &memberCache[hash & (MEMBER_CACHE_SIZE - 1)]);
+    for (; e != NULL; e = e->next) {
+        if (e->hash == hash && e->clazz == clazz && e->isField == isField
+                && !strcmp(e->name, name) && !strcmp(e->desc, desc)) {
+            return e->member;
+        }
+    }
+    return NULL;
+}
+
+void memberCachePut(Class* clazz, const char* name, const char* desc, jboolean isField, void* member) {
+    // The name and desc strings must outlive the entry. Callers pass the
+    // Method's or Field's own strings.
+    MemberCacheEntry* e = gcAllocateUncollectable(sizeof(MemberCacheEntry));
+    if (!e) return; // The cache is best effort
+    e->hash = hashMember(clazz, name, desc, isField);
+    e->isField = isField;
+    e->clazz = clazz;
+    e->name = name;
+    e->desc = desc;
+    e->member = member;
+    void** bucket = (void**) &memberCache[e->hash & (MEMBER_CACHE_SIZE - 1)];
+    do {
+        e->next = *bucket;
+    } while (!rvmAtomicCompareAndSwapPtr(bucket, e->next, e));
+}
@@ -16,6 +16,10 @@
 #include <robovm.h>
 #include <string.h>
 #include <stdint.h>
+#include <time.h>
+#if defined(DARWIN)
+#   include <mach/mach_time.h>
+#endif
 #include <gc/gc_mark.h>
 #include <gc/gc_gcj.h>
 #include "private.h"
@@ -51,6 +55,18 @@ static Class* java_nio_MemoryBlock = NULL;
 static InstanceField* java_nio_MemoryBlock_address = NULL;
 static VM* vm = NULL;
 
+// GC telemetry. Updated by onCollectionEvent().
+static pthread_mutex_t gcStatsLock = PTHREAD_MUTEX_INITIALIZER;
+static pthread_cond_t gcStatsCond = PTHREAD_COND_INITIALIZER;
+static GCCollectionStats gcCurrent;
+static GCCollectionStats gcLastCollection;
+static jlong gcCollectionCount = 0;
+static jlong gcStopWorldTime = 0;
+static jlong gcPauseHistogram[GC_PAUSE_HISTOGRAM_SIZE];
+static jlong gcTotalPauseTime = 0;
+static jlong gcMaxPauseTime = 0;
+static jint gcMode = GC_MODE_DEFAULT;
+
 // A shared OutOfMemoryError instance with an empty stack trace that we will use
 // when memory is so low that there's not even enough left to allocate a new 
 // OutOfMemoryError.
@@ -89,12 +105,23 @@ typedef struct HeapStat {
     jlong numberOfLiveBytes;
     UT_hash_handle hh;
 } HeapStat;
-static ReferentEntry* referents = NULL;
+/*
+ * The ReferentEntry hash is split into shards selected by the referent's
+ * address. Each shard has its own lock so that threads registering
+ * references and cleanup handlers for different objects don't contend.
+ * Must be a power of 2.
+ */
+#define REFERENT_SHARDS 64
+static ReferentEntry* referents[REFERENT_SHARDS];
 static uint32_t referentEntryGCKind;
 
 static RefTable globalRefs = {0};
 
-static Mutex referentsLock;
+// Padded to keep each lock on a cache line of its own
+typedef struct {
+    Mutex mutex;
+} __attribute__ ((aligned (64))) ReferentsLock;
+static ReferentsLock referentsLocks[REFERENT_SHARDS];
 static Mutex globalRefsLock;
 
 // The GC kind used when allocating Object arrays
@@ -454,11 +481,172 @@ void gcHeapDump(Env* env) {
     fprintf(stderr, "}\n");
 }
 
+/*
+ * Returns the current value of the same clock as System.nanoTime().
+ */
+jlong nanoTime() {
+#if defined(DARWIN)
+    static mach_timebase_info_data_t info;
+    if (info.denom == 0) {
+        mach_timebase_info(&info);
+    }
+    return (jlong) (mach_absolute_time() * info.numer / info.denom);
+#else
+    struct timespec now;
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return now.tv_sec * 1000000000LL + now.tv_nsec;
+#endif
+}
+
+static void recordPause(jlong pause) {
+    jlong micros = pause / 1000;
+    jint bucket = 0;
+    while (micros > 0 && bucket < GC_PAUSE_HISTOGRAM_SIZE - 1) {
+        micros >>= 1;
+        bucket++;
+    }
+    gcPauseHistogram[bucket]++;
+    gcTotalPauseTime += pause;
+    if (pause > gcMaxPauseTime) {
+        gcMaxPauseTime = pause;
+    }
+}
+
+/*
+ * Called by the GC with the allocation lock held. The world is stopped
+ * between GC_EVENT_PRE_STOP_WORLD and GC_EVENT_POST_START_WORLD so
+ * gcStatsLock must only be taken outside of that window.
+ */
+static void onCollectionEvent(GC_EventType event) {
+    switch (event) {
+    case GC_EVENT_START:
+        gcCurrent.startTime = nanoTime();
+        gcCurrent.pauseTime = 0;
+        gcCurrent.allocatedBytes = GC_get_bytes_since_gc();
+        break;
+    case GC_EVENT_PRE_STOP_WORLD:
+        gcStopWorldTime = nanoTime();
+        break;
+    case GC_EVENT_POST_START_WORLD:
+        if (gcStopWorldTime != 0) {
+            jlong pause = nanoTime() - gcStopWorldTime;
+            gcStopWorldTime = 0;
+            gcCurrent.pauseTime += pause;
+            pthread_mutex_lock(&gcStatsLock);
+            recordPause(pause);
+            pthread_mutex_unlock(&gcStatsLock);
+        }
+        break;
+    case GC_EVENT_END:
+        if (gcCurrent.startTime != 0) {
+            gcCurrent.count = GC_get_gc_no();
+            gcCurrent.duration = nanoTime() - gcCurrent.startTime;
+            gcCurrent.heapSize = GC_get_heap_size();
+            gcCurrent.freeBytes = GC_get_free_bytes();
+            pthread_mutex_lock(&gcStatsLock);
+            gcLastCollection = gcCurrent;
+            gcCollectionCount++;
+            pthread_cond_broadcast(&gcStatsCond);
+            pthread_mutex_unlock(&gcStatsLock);
+            gcCurrent.startTime = 0;
+        }
+        break;
+    default:
+        break;
+    }
+}
+
+jlong rvmGetGCStats(Env* env, GCCollectionStats* last, jlong* pauseHistogram, jlong* totalPauseTime, jlong* maxPauseTime) {
+    pthread_mutex_lock(&gcStatsLock);
+    jlong count = gcCollectionCount;
+    if (last) {
+        *last = gcLastCollection;
+    }
+    if (pauseHistogram) {
+        memcpy(pauseHistogram, gcPauseHistogram, sizeof(gcPauseHistogram));
+    }
+    if (totalPauseTime) {
+        *totalPauseTime = gcTotalPauseTime;
+    }
+    if (maxPauseTime) {
+        *maxPauseTime = gcMaxPauseTime;
+    }
+    pthread_mutex_unlock(&gcStatsLock);
+    return count;
+}
+
+jlong rvmWaitForGC(Env* env, jlong count, jlong timeout) {
+    struct timespec ts;
+#if defined(DARWIN)
+    struct timeval tv;
+    gettimeofday(&tv, NULL);
+    ts.tv_sec = tv.tv_sec;
+    ts.tv_nsec = tv.tv_usec * 1000;
+#else
+    clock_gettime(CLOCK_REALTIME, &ts);
+#endif
+    ts.tv_sec += timeout / 1000;
+    ts.tv_nsec += (timeout % 1000) * 1000000;
+    if (ts.tv_nsec >= 1000000000) {
+        ts.tv_sec++;
+        ts.tv_nsec -= 1000000000;
+    }
+    pthread_mutex_lock(&gcStatsLock);
+    while (gcCollectionCount == count) {
+        if (pthread_cond_timedwait(&gcStatsCond, &gcStatsLock, &ts) != 0) {
+            break;
+        }
+    }
+    count = gcCollectionCount;
+    pthread_mutex_unlock(&gcStatsLock);
+    return count;
+}
+
+jlong rvmGetThreadAllocatedBytes(Env* env, Thread* thread) {
+    return rvmAtomicLoadLong(&thread->allocatedBytes);
+}
+
+jint rvmGetGCMode(Env* env) {
+    return gcMode;
+}
+
+static void initGCMode(Options* options) {
+    if (options->gcMode == GC_MODE_DEFAULT) {
+        return;
+    }
+    // Compiled code treats all memory faults as NullPointerExceptions so the
+    // GC must not find dirty pages by write protecting the heap.
+    if (GC_incremental_protection_needs() != GC_PROTECTS_NONE) {
+        WARN("Incremental and generational GC modes aren't supported on this platform. Using the default mode.");
+        return;
+    }
+    GC_enable_incremental();
+    // GC_enable_incremental() silently does nothing if the GC has been built
+    // without incremental collection support.
+    if (!GC_is_incremental_mode()) {
+        WARN("Incremental and generational GC modes aren't supported by this build of the GC. Using the default mode.");
+        return;
+    }
+    if (options->gcMode == GC_MODE_GENERATIONAL) {
+        // Collect generationally but finish each collection in one go
+        GC_set_time_limit(GC_TIME_UNLIMITED);
+    }
+    gcMode = options->gcMode;
+}
+
 jboolean initGC(Options* options) {
     GC_set_no_dls(1);
     GC_set_java_finalization(1);
+    if (options->gcMarkers > 0) {
+        // Read by the GC when it starts its marker threads. An explicitly set
+        // GC_MARKERS environment variable takes precedence.
+        char markers[16];
+        snprintf(markers, sizeof(markers), "%d", options->gcMarkers);
+        setenv("GC_MARKERS", markers, 0);
+    }
     GC_INIT();
     GC_init_gcj_malloc(GC_GCJ_RESERVED_MARK_PROC_INDEX, NULL);
+    initGCMode(options);
     if (options->maxHeapSize > 0) {
         GC_set_max_heap_size(options->maxHeapSize);
     }
@@ -482,8 +670,10 @@ jboolean initGC(Options* options) {
     memset(&fakeClass, 0, sizeof(Class));
     fakeClass.gcDescriptor = (void*) ((sizeof(Class) << GC_DS_TAG_BITS) | GC_DS_LENGTH);
 
-    if (rvmInitMutex(&referentsLock) != 0) {
-        return FALSE;
+    for (int i = 0; i < REFERENT_SHARDS; i++) {
+        if (rvmInitMutex(&referentsLocks[i].mutex) != 0) {
+            return FALSE;
+        }
     }
     if (rvmInitMutex(&globalRefsLock) != 0) {
         return FALSE;
@@ -495,6 +685,7 @@ jboolean initGC(Options* options) {
     if (options->enableGCHeapStats) {
         GC_set_start_callback(logGcHeapStats);
     }
+    GC_set_on_collection_event(onCollectionEvent);
 
     return TRUE;
 }
@@ -713,20 +904,32 @@ static void enqueueFinalizerReferences(Env* env, Object** list, Object** cleared
 
 static void _finalizeObject(GC_PTR addr, GC_PTR client_data);
 
+/*
+ * Returns the index of the referents shard the specified object belongs to.
+ */
+static inline uint32_t getReferentShard(Object* o) {
+    // Objects are at least 8 byte aligned. Mix in higher bits to spread
+    // objects allocated in the same block over all shards.
+    uintptr_t a = ((uintptr_t) o) >> 3;
+    return (uint32_t) (a ^ (a >> 7) ^ (a >> 13)) & (REFERENT_SHARDS - 1);
+}
+
 static void finalizeObject(Env* env, Object* obj) {
 //    TRACEF("finalizeObject: %p (%s)\n", obj, obj->clazz->name);
 
-    rvmLockMutex(&referentsLock);
+    uint32_t shard = getReferentShard(obj);
+    Mutex* lock = &referentsLocks[shard].mutex;
+    rvmLockMutex(lock);
     void* key = (void*) GC_HIDE_POINTER(obj);
     ReferentEntry* referentEntry;
-    HASH_FIND_PTR(referents, &key, referentEntry);
+    HASH_FIND_PTR(referents[shard], &key, referentEntry);
 
     assert(referentEntry != NULL);
 
     if (referentEntry->references == NULL) {
         // The object is not referenced by any type of reference and can never be resurrected.
-        HASH_DEL(referents, referentEntry);
-        rvmUnlockMutex(&referentsLock);
+        HASH_DEL(referents[shard], referentEntry);
+        rvmUnlockMutex(lock);
         // Run all cleanup handlers registered for the object
         CleanupHandlerList* l = referentEntry->cleanupHandlers;
         while (l) {
@@ -772,7 +975,7 @@ static void finalizeObject(Env* env, Object* obj) {
     // next time it gets finalized we know it will never be resurrected.
     GC_REGISTER_FINALIZER_NO_ORDER(obj, _finalizeObject, NULL, NULL, NULL);
 
-    rvmUnlockMutex(&referentsLock);
+    rvmUnlockMutex(lock);
 
     if (clearedReferences != NULL) {
         rvmCallVoidClassMethod(env, java_lang_ref_ReferenceQueue, java_lang_ref_ReferenceQueue_add, clearedReferences);
@@ -801,28 +1004,32 @@ void rvmRegisterFinalizer(Env* env, Object* obj) {
 
 /**
  * Returns the ReferentEntry for the specified object or creates one and adds
- * it to the referents hash if none exists. referentsLock MUST be held.
+ * it to the specified referents shard if none exists. The shard's lock MUST
+ * be held.
  */
-static ReferentEntry* getReferentEntryForObject(Env* env, Object* o) {
+static ReferentEntry* getReferentEntryForObject(Env* env, uint32_t shard, Object* o) {
     void* key = (void*) GC_HIDE_POINTER(o); // Hide the pointer from the GC so that the key doesn't prevent the object from being GCed.
     ReferentEntry* referentEntry;
-    HASH_FIND_PTR(referents, &key, referentEntry);
+    HASH_FIND_PTR(referents[shard], &key, referentEntry);
     if (!referentEntry) {
         // Object is not in the hashtable. Add it.
         referentEntry = allocateMemoryOfKind(env, sizeof(ReferentEntry), referentEntryGCKind);
         if (!referentEntry) return NULL; // OOM thrown
         referentEntry->key = key;
-        HASH_ADD_PTR(referents, key, referentEntry);
+        HASH_ADD_PTR(referents[shard], key, referentEntry);
     }
     return referentEntry;
 }
 
 void registerCleanupHandler(Env* env, Object* object, CleanupHandler handler) {
-    rvmLockMutex(&referentsLock);
+    // Allocate before taking the lock to keep the critical section short
     CleanupHandlerList* l = rvmAllocateMemory(env, sizeof(CleanupHandlerList));
-    if (!l) goto done; // OOM thrown
+    if (!l) return; // OOM thrown
     l->handler = handler;
-    ReferentEntry* referentEntry = getReferentEntryForObject(env, object);
+    uint32_t shard = getReferentShard(object);
+    Mutex* lock = &referentsLocks[shard].mutex;
+    rvmLockMutex(lock);
+    ReferentEntry* referentEntry = getReferentEntryForObject(env, shard, object);
     if (!referentEntry) goto done;
     // Add the handler to the object's list of cleanup handlers
     LL_PREPEND(referentEntry->cleanupHandlers, l);
@@ -830,18 +1037,20 @@ void registerCleanupHandler(Env* env, Object* object, CleanupHandler handler) {
     GC_REGISTER_FINALIZER_NO_ORDER(object, _finalizeObject, NULL, NULL, NULL);
 
 done:
-    rvmUnlockMutex(&referentsLock);
+    rvmUnlockMutex(lock);
 }
 
 void rvmRegisterReference(Env* env, Object* reference, Object* referent) {
     if (referent) {
         // Add 'reference' to the references list for 'referent' in the referents hashtable
-        rvmLockMutex(&referentsLock);
-
         ReferenceList* l = rvmAllocateMemory(env, sizeof(ReferenceList));
-        if (!l) goto done; // OOM thrown
+        if (!l) return; // OOM thrown
         l->reference = reference;
-        ReferentEntry* referentEntry = getReferentEntryForObject(env, referent);
+
+        uint32_t shard = getReferentShard(referent);
+        Mutex* lock = &referentsLocks[shard].mutex;
+        rvmLockMutex(lock);
+        ReferentEntry* referentEntry = getReferentEntryForObject(env, shard, referent);
         if (!referentEntry) goto done;
         // Add the reference to the referent's list of references
         LL_PREPEND(referentEntry->references, l);
@@ -849,7 +1058,7 @@ void rvmRegisterReference(Env* env, Object* reference, Object* referent) {
         GC_REGISTER_FINALIZER_NO_ORDER(referent, _finalizeObject, NULL, NULL, NULL);
 
 done:
-        rvmUnlockMutex(&referentsLock);
+        rvmUnlockMutex(lock);
     }
 }
 
@@ -864,7 +1073,7 @@ void rvmUnregisterDisappearingLink(Env* env, void** address) {
 jboolean rvmInitMemory(Env* env) {
     vm = env->vm;
 
-    gcAddRoot(&referents);
+    GC_add_roots(referents, referents + REFERENT_SHARDS);
 
     java_lang_ref_Reference_referent = rvmGetInstanceField(env, java_lang_ref_Reference, "referent", "Ljava/lang/Object;");
     if (!java_lang_ref_Reference_referent) return FALSE;
@@ -998,9 +1207,37 @@ Object* rvmAllocateMemoryForObject(Env* env, Class* clazz) {
         rvmThrowOutOfMemoryError(env);
         return NULL;
     }
+    rvmCountAllocatedBytes(env, clazz->instanceDataSize);
     return m;
 }
 
+/*
+ * Allocates memory for an instance of the specified class from the calling
+ * thread's local GC free lists. Unlike rvmAllocateMemoryForObject() this
+ * never forces a collection and never throws. Returns NULL if the memory
+ * couldn't be allocated. The caller must then fall back to
+ * rvmAllocateMemoryForObject().
+ */
+Object* rvmAllocateMemoryForObjectFast(Class* clazz) {
+    return (Object*) GC_gcj_malloc(clazz->instanceDataSize, clazz);
+}
+
+/*
+ * Same as rvmAllocateMemoryForObjectFast() but for arrays of primitive
+ * types. Returns NULL if the array couldn't be allocated for any reason
+ * including a negative length or a too large size.
+ */
+Array* rvmAllocateMemoryForArrayFast(Class* arrayClass, jint length) {
+    if (length < 0) {
+        return NULL;
+    }
+    jlong size = rvmGetArraySize(NULL, arrayClass, length);
+    if (size > 0xffffffffLL) {
+        return NULL;
+    }
+    return (Array*) GC_gcj_malloc((size_t) size, arrayClass);
+}
+
 Array* rvmAllocateMemoryForArray(Env* env, Class* arrayClass, jint length) {
     jlong size = rvmGetArraySize(env, arrayClass, length);
     if (size > 0xffffffffLL) {
@@ -1023,6 +1260,7 @@ Array* rvmAllocateMemoryForArray(Env* env, Class* arrayClass, jint length) {
         rvmThrowOutOfMemoryError(env);
         return NULL;
     }
+    rvmCountAllocatedBytes(env, size);
     return m;
 }
 
@@ -40,6 +40,12 @@ static ObjectArray* empty_java_lang_StackTraceElement_array = NULL;
 // frames. dumpThreadStackTrace() assumes MAX_CALL_STACK_LENGTH.
 static CallStack* shared_callStack = NULL;
 
+// Direct mapped cache of the Methods found by rvmFindMethodAtAddress() indexed by a hash of the address.
+// A hit is verified against the bounds of the cached Method so entries never have to be invalidated and
+// can be read and updated without locking. Methods are never freed. Must be a power of 2.
+#define METHOD_AT_ADDRESS_CACHE_SIZE 4096
+static Method* methodAtAddressCache[METHOD_AT_ADDRESS_CACHE_SIZE];
+
 static inline void obtainNativeLibsLock() {
     rvmLockMutex(&nativeLibsLock);
 }
@@ -67,7 +73,7 @@ static Method* findMethod(Env* env, Class* clazz, const char* name, const char*
     return NULL;
 }
 
-static Method* getMethod(Env* env, Class* clazz, const char* name, const char* desc) {
+static Method* searchMethod(Env* env, Class* clazz, const char* name, const char* desc) {
     if (!strcmp("<init>", name) || !strcmp("<clinit>", name)) {
         // Constructors and static initializers are not inherited so we shouldn't check with the superclasses.
         return findMethod(env, clazz, name, desc);
@@ -88,7 +94,7 @@ static Method* getMethod(Env* env, Class* clazz, const char* name, const char* d
         Interface* interfaze = rvmGetInterfaces(env, c);
         if (rvmExceptionCheck(env)) return NULL;
         for (; interfaze != NULL; interfaze = interfaze->next) {
-            Method* method = getMethod(env, interfaze->interfaze, name, desc);
+            Method* method = searchMethod(env, interfaze->interfaze, name, desc);
             if (rvmExceptionCheck(env)) return NULL;
             if (method) return method;
         }
@@ -99,12 +105,22 @@ static Method* getMethod(Env* env, Class* clazz, const char* name, const char* d
          * Class is an interface so check with java.lang.Object.
          * TODO: Should we really do this? Does the JNI GetMethodID() function do this?
          */
-        return getMethod(env, java_lang_Object, name, desc);
+        return searchMethod(env, java_lang_Object, name, desc);
     }
 
     return NULL;
 }
 
+static Method* getMethod(Env* env, Class* clazz, const char* name, const char* desc) {
+    Method* method = memberCacheGet(clazz, name, desc, FALSE);
+    if (method) return method;
+    method = searchMethod(env, clazz, name, desc);
+    if (method) {
+        memberCachePut(clazz, method->name, method->desc, FALSE, method);
+    }
+    return method;
+}
+
 jboolean rvmInitMethods(Env* env) {
     if (rvmInitMutex(&nativeLibsLock) != 0) {
         return FALSE;
@@ -174,15 +190,27 @@ Method* rvmGetInstanceMethod(Env* env, Class* clazz, const char* name, const cha
     return method;
 }
 
+static inline jint methodAtAddressCacheIndex(void* address) {
+    uintptr_t a = (uintptr_t) address;
+    return (jint) ((a >> 2) ^ (a >> 14)) & (METHOD_AT_ADDRESS_CACHE_SIZE - 1);
+}
+
 Method* rvmFindMethodAtAddress(Env* env, void* address) {
+    jint index = methodAtAddressCacheIndex(address);
+    Method* method = ((Method* volatile*) methodAtAddressCache)[index];
+    if (method && address >= method->impl && address < method->impl + method->size) {
+        return method;
+    }
+
     Class* clazz = env->vm->options->findClassAt(env, address);
     if (!clazz) return NULL;
-    Method* method = rvmGetMethods(env, clazz);
+    method = rvmGetMethods(env, clazz);
     if (rvmExceptionCheck(env)) return NULL;
     for (; method != NULL; method = method->next) {
         void* start = method->impl;
         void* end = start + method->size;
         if (start && address >= start && address < end) {
+            rvmAtomicStoreReleasePtr((void**) &methodAtAddressCache[index], method);
             return method;
         }
     }
@@ -322,13 +350,18 @@ static inline jint getLineTableEntry(void* table, jint entrySize, jint index) {
 }
 
 static jint getLinesIndex(void* addressOffsets, jint addressOffsetSize, jint size, jint frameOffset) {
-    for (jint i = 0; i < size; i++) {
-        jint entry = getLineTableEntry(addressOffsets, addressOffsetSize, i);
-        if (frameOffset < entry) {
-            return i - 1;
+    // The address offsets are sorted. Find the last one <= frameOffset.
+    jint low = 0;
+    jint high = size;
+    while (low < high) {
+        jint mid = (low + high) >> 1;
+        if (frameOffset < getLineTableEntry(addressOffsets, addressOffsetSize, mid)) {
+            high = mid;
+        } else {
+            low = mid + 1;
         }
     }
-    return size - 1;
+    return low - 1;
 }
 
 static jint getLineNumber(CallStackFrame* frame) {
@@ -41,6 +41,11 @@
 #include <sys/time.h>
 #include <errno.h>
 #include <assert.h>
+#include <limits.h>
+#if defined(LINUX)
+#   include <sys/syscall.h>
+#   include <linux/futex.h>
+#endif
 
 #include <robovm.h>
 #include "private.h"
@@ -128,8 +133,12 @@ static inline int android_atomic_acquire_cas(LW_TYPE old_value, LW_TYPE new_valu
  * lock encodes its state.  When cleared, the lock is in the "thin"
  * state and its bits are formatted as follows:
  *
- *    [31 ---- 19] [18 ---- 3] [2 ---- 1] [0]
- *     lock count   thread id  hash state  0
+ *    [31] [30 ---- 19] [18 ---- 3] [2 ---- 1] [0]
+ *     C    lock count   thread id  hash state  0
+ *
+ * The C bit is set by threads which have given up spinning on a thin lock
+ * owned by another thread and are about to park. A thread releasing or
+ * inflating a thin lock with the C bit set must wake the parked threads.
  *
  * When set, the lock is in the "fat" state and its bits are formatted
  * as follows:
@@ -184,10 +193,16 @@ static inline int android_atomic_acquire_cas(LW_TYPE old_value, LW_TYPE new_valu
  * Lock recursion count field.  Contains a count of the numer of times
  * a lock has been recursively acquired.
  */
-#define LW_LOCK_COUNT_MASK 0x1fff
+#define LW_LOCK_COUNT_MASK 0xfff
 #define LW_LOCK_COUNT_SHIFT 19
 #define LW_LOCK_COUNT(x) (((x) >> LW_LOCK_COUNT_SHIFT) & LW_LOCK_COUNT_MASK)
 
+/*
+ * Lock contention flag.  Set when there are threads parked waiting for
+ * a thin lock to be released.
+ */
+#define LW_LOCK_CONTENDED ((LW_TYPE) 1 << 31)
+
 /*
  * Returns TRUE if the lock has been fattened.
  */
@@ -210,7 +225,107 @@ static inline int android_atomic_acquire_cas(LW_TYPE old_value, LW_TYPE new_valu
 static Monitor* threadSleepMonitor;
 static void freeMonitorCleanupHandler(Env* env, Object* object);
 
+/*
+ * Bounds of the number of times a thread spins on a lock owned by another
+ * thread before it parks.  The actual limit adapts to how often spinning
+ * has paid off recently: it doubles when the lock was acquired while
+ * spinning and halves when the thread had to park.  Spinning is disabled
+ * on uniprocessors.
+ */
+#define MIN_SPIN_LIMIT 16
+#define MAX_SPIN_LIMIT 4096
+static jint maxSpinLimit = MAX_SPIN_LIMIT;
+/* Spin limit for thin locks.  Updated without synchronization. */
+static jint thinLockSpinLimit = MAX_SPIN_LIMIT / 16;
+
+static inline jint increaseSpinLimit(jint limit) {
+    return limit < maxSpinLimit / 2 ? limit * 2 : maxSpinLimit;
+}
+
+static inline jint decreaseSpinLimit(jint limit) {
+    return limit > MIN_SPIN_LIMIT * 2 ? limit / 2 : (maxSpinLimit > 0 ? MIN_SPIN_LIMIT : 0);
+}
+
+/*
+ * Tells the CPU that we're in a spin loop.
+ */
+static inline void spinPause(void) {
+#if defined(RVM_X86) || defined(RVM_X86_64)
+    __asm__ __volatile__ ("pause" : : : "memory");
+#elif defined(RVM_THUMBV7) || defined(RVM_ARM64)
+    __asm__ __volatile__ ("yield" : : : "memory");
+#else
+    __asm__ __volatile__ ("" : : : "memory");
+#endif
+}
+
+#if defined(LINUX)
+/*
+ * Parks the calling thread until the lock word at thinp no longer equals
+ * thin.  May return spuriously.  The futex operates on the low 32 bits of
+ * the lock word which hold the entire thin lock (64-bit Linux targets are
+ * little endian).
+ */
+static void parkOnThinLock(volatile LW_TYPE* thinp, LW_TYPE thin) {
+    syscall(SYS_futex, (volatile u4*) thinp, FUTEX_WAIT_PRIVATE, (u4) thin, NULL, NULL, 0);
+}
+
+/*
+ * Wakes all threads parked on the lock word at thinp.
+ */
+static void unparkThinLockWaiters(volatile LW_TYPE* thinp) {
+    syscall(SYS_futex, (volatile u4*) thinp, FUTEX_WAKE_PRIVATE, INT_MAX, NULL, NULL, 0);
+}
+
+static void initParking(void) {
+}
+#else
+/*
+ * No futexes on this platform.  Threads park on a condition variable
+ * picked by hashing the address of the lock word.
+ */
+#define PARKING_LOTS 64
+typedef struct {
+    pthread_mutex_t mutex;
+    pthread_cond_t cond;
+} ParkingLot;
+static ParkingLot parkingLots[PARKING_LOTS];
+
+static inline ParkingLot* getParkingLot(volatile LW_TYPE* thinp) {
+    return &parkingLots[((uintptr_t) thinp >> 3) % PARKING_LOTS];
+}
+
+static void parkOnThinLock(volatile LW_TYPE* thinp, LW_TYPE thin) {
+    ParkingLot* lot = getParkingLot(thinp);
+    pthread_mutex_lock(&lot->mutex);
+    if (*thinp == thin) {
+        pthread_cond_wait(&lot->cond, &lot->mutex);
+    }
+    pthread_mutex_unlock(&lot->mutex);
+}
+
+static void unparkThinLockWaiters(volatile LW_TYPE* thinp) {
+    ParkingLot* lot = getParkingLot(thinp);
+    pthread_mutex_lock(&lot->mutex);
+    pthread_cond_broadcast(&lot->cond);
+    pthread_mutex_unlock(&lot->mutex);
+}
+
+static void initParking(void) {
+    jint i;
+    for (i = 0; i < PARKING_LOTS; i++) {
+        pthread_mutex_init(&parkingLots[i].mutex, NULL);
+        pthread_cond_init(&parkingLots[i].cond, NULL);
+    }
+}
+#endif
+
 jboolean rvmInitMonitors(Env* env) {
+    if (sysconf(_SC_NPROCESSORS_ONLN) <= 1) {
+        maxSpinLimit = 0;
+        thinLockSpinLimit = 0;
+    }
+    initParking();
     threadSleepMonitor = rvmCreateMonitor(env, NULL);
     return TRUE;
 }
@@ -229,6 +344,7 @@ Monitor* rvmCreateMonitor(Env* env, Object* obj) {
         rvmAbort("Misaligned monitor: %p", mon);
     }
     mon->obj = obj;
+    mon->spinLimit = thinLockSpinLimit;
     rvmInitMutex(&mon->lock);
 
     if (obj) {
@@ -330,15 +446,41 @@ static void freeMonitorCleanupHandler(Env* env, Object* object) {
  */
 static void lockMonitor(Env* env, Thread* self, Monitor* mon) {
     jint oldStatus;
+    jint spins, spinLimit;
+    jboolean acquired;
 
     if (mon->owner == self) {
         mon->lockCount++;
         return;
     }
     if (rvmTryLockMutex(&mon->lock) != 0) {
-        oldStatus = rvmChangeThreadStatus(env, self, THREAD_MONITOR);
-        rvmLockMutex(&mon->lock);
-        rvmChangeThreadStatus(env, self, oldStatus);
+        /*
+         * Contended.  Spin for a while hoping that the owner releases
+         * the lock soon.  Only retry the mutex when the monitor looks
+         * unowned to keep the cache line quiet.
+         */
+        acquired = FALSE;
+        spinLimit = mon->spinLimit;
+        for (spins = 0; spins < spinLimit; spins++) {
+            spinPause();
+            if (*(Thread* volatile*) &mon->owner == NULL && rvmTryLockMutex(&mon->lock) == 0) {
+                acquired = TRUE;
+                break;
+            }
+        }
+        if (!acquired) {
+            oldStatus = rvmChangeThreadStatus(env, self, THREAD_MONITOR);
+            rvmLockMutex(&mon->lock);
+            rvmChangeThreadStatus(env, self, oldStatus);
+        }
+        /* We hold the mutex so the counters can be updated safely. */
+        mon->contentionCount++;
+        if (acquired) {
+            mon->spinLimit = increaseSpinLimit(mon->spinLimit);
+        } else {
+            mon->parkCount++;
+            mon->spinLimit = decreaseSpinLimit(mon->spinLimit);
+        }
     }
     mon->owner = self;
     assert(mon->lockCount == 0);
@@ -697,9 +839,10 @@ static void notifyAllMonitor(Env* env, Thread* self, Monitor* mon) {
  * Changes the shape of a monitor from thin to fat, preserving the
  * internal lock state.  The calling thread must own the lock.
  */
-static void inflateMonitor(Env* env, Thread *self, Object* obj) {
+static Monitor* inflateMonitor(Env* env, Thread *self, Object* obj) {
+    volatile LW_TYPE *thinp = &obj->lock;
     Monitor *mon;
-    LW_TYPE thin;
+    LW_TYPE thin, fat;
 
     assert(self != NULL);
     assert(obj != NULL);
@@ -708,13 +851,21 @@ static void inflateMonitor(Env* env, Thread *self, Object* obj) {
     /* Allocate and acquire a new monitor. */
     mon = rvmCreateMonitor(env, obj);
     lockMonitor(env, self, mon);
-    /* Propagate the lock state. */
-    thin = obj->lock;
-    mon->lockCount = LW_LOCK_COUNT(thin);
-    thin &= LW_HASH_STATE_MASK << LW_HASH_STATE_SHIFT;
-    thin |= (LW_TYPE)mon | LW_SHAPE_FAT;
-    /* Publish the updated lock word. */
-    android_atomic_release_store(thin, (LW_TYPE *)&obj->lock);
+    /*
+     * Propagate the lock state and publish the updated lock word.  Waiting
+     * threads may set the contention flag concurrently so we have to CAS.
+     */
+    do {
+        thin = *thinp;
+        mon->lockCount = LW_LOCK_COUNT(thin);
+        fat = thin & (LW_HASH_STATE_MASK << LW_HASH_STATE_SHIFT);
+        fat |= (LW_TYPE)mon | LW_SHAPE_FAT;
+    } while (android_atomic_cas(thin, fat, (LW_TYPE*)thinp) != 0);
+    if (thin & LW_LOCK_CONTENDED) {
+        /* Let the parked threads block on the monitor instead. */
+        unparkThinLockWaiters(thinp);
+    }
+    return mon;
 }
 
 /*
@@ -727,10 +878,9 @@ void rvmLockObject(Env* env, Object* obj) {
     Thread* self = env->currentThread;
     volatile LW_TYPE *thinp;
     jint oldStatus;
-    struct timespec tm;
-    long sleepDelayNs;
-    long minSleepDelayNs = 1000000;  /* 1 millisecond */
-    long maxSleepDelayNs = 1000000000;  /* 1 second */
+    jint spins, spinLimit;
+    jboolean parked;
+    Monitor* mon;
     LW_TYPE thin, newThin;
     u4 threadId;
 
@@ -748,10 +898,11 @@ retry:
         if (LW_LOCK_OWNER(thin) == threadId) {
             /*
              * The calling thread owns the lock.  Increment the
-             * value of the recursion count field.
+             * value of the recursion count field.  This has to be
+             * atomic as other threads may set the contention flag.
              */
-            obj->lock += 1 << LW_LOCK_COUNT_SHIFT;
-            if (LW_LOCK_COUNT(obj->lock) == LW_LOCK_COUNT_MASK) {
+            newThin = __sync_add_and_fetch(thinp, (LW_TYPE) 1 << LW_LOCK_COUNT_SHIFT);
+            if (LW_LOCK_COUNT(newThin) == LW_LOCK_COUNT_MASK) {
                 /*
                  * The reacquisition limit has been reached.  Inflate
                  * the lock so the next acquire will not overflow the
@@ -783,9 +934,13 @@ retry:
              */
             oldStatus = rvmChangeThreadStatus(env, self, THREAD_MONITOR);
             /*
-             * Spin until the thin lock is released or inflated.
+             * Spin until the thin lock is released or inflated.  If
+             * that takes too long we set the contention flag and park
+             * until the owner releases or inflates the lock.
              */
-            sleepDelayNs = 0;
+            spins = 0;
+            spinLimit = thinLockSpinLimit;
+            parked = FALSE;
             for (;;) {
                 thin = *thinp;
                 /*
@@ -808,28 +963,25 @@ retry:
                              */
                             break;
                         }
+                    } else if (spins < spinLimit) {
+                        /*
+                         * The lock has not been released.  Spin a
+                         * little longer.
+                         */
+                        spins++;
+                        spinPause();
+                    } else if ((thin & LW_LOCK_CONTENDED) == 0) {
+                        /*
+                         * Tell the owner that it has to wake us up
+                         * when it releases the lock.
+                         */
+                        android_atomic_cas(thin, thin | LW_LOCK_CONTENDED, (LW_TYPE *)thinp);
                     } else {
                         /*
-                         * The lock has not been released.  Yield so
-                         * the owning thread can run.
+                         * Park until the lock word changes.
                          */
-                        if (sleepDelayNs == 0) {
-                            sched_yield();
-                            sleepDelayNs = minSleepDelayNs;
-                        } else {
-                            tm.tv_sec = 0;
-                            tm.tv_nsec = sleepDelayNs;
-                            nanosleep(&tm, NULL);
-                            /*
-                             * Prepare the next delay value.  Wrap to
-                             * avoid once a second polls for eternity.
-                             */
-                            if (sleepDelayNs < maxSleepDelayNs / 2) {
-                                sleepDelayNs *= 2;
-                            } else {
-                                sleepDelayNs = minSleepDelayNs;
-                            }
-                        }
+                        parked = TRUE;
+                        parkOnThinLock(thinp, thin);
                     }
                 } else {
                     /*
@@ -845,15 +997,21 @@ retry:
             }
             TRACEF("(%d) spin on lock done %p: %#x (%#x) %#x",
                  threadId, &obj->lock, 0, *thinp, thin);
+            thinLockSpinLimit = parked ? decreaseSpinLimit(spinLimit) : increaseSpinLimit(spinLimit);
             /*
              * We have acquired the thin lock.  Let the VM know that
              * we are no longer waiting.
              */
             rvmChangeThreadStatus(env, self, oldStatus);
             /*
-             * Fatten the lock.
+             * Fatten the lock right away.  Any further contention will
+             * be handled by the monitor.
              */
-            inflateMonitor(env, self, obj);
+            mon = inflateMonitor(env, self, obj);
+            mon->contentionCount++;
+            if (parked) {
+                mon->parkCount++;
+            }
             TRACEF("(%d) lock %p fattened", threadId, &obj->lock);
         }
     } else {
@@ -872,16 +1030,18 @@ retry:
  */
 jboolean rvmUnlockObject(Env* env, Object* obj) {
     Thread* self = env->currentThread;
+    volatile LW_TYPE *thinp;
     LW_TYPE thin;
 
     assert(self != NULL);
     assert(self->status == THREAD_RUNNING);
     assert(obj != NULL);
+    thinp = &obj->lock;
     /*
      * Cache the lock word as its value can change while we are
      * examining its state.
      */
-    thin = *(volatile LW_TYPE *)&obj->lock;
+    thin = *thinp;
     if (LW_SHAPE(thin) == LW_SHAPE_THIN) {
         /*
          * The lock is thin.  We must ensure that the lock is owned
@@ -889,8 +1049,9 @@ jboolean rvmUnlockObject(Env* env, Object* obj) {
          */
         if (LW_LOCK_OWNER(thin) == self->threadId) {
             /*
-             * We are the lock owner.  It is safe to update the lock
-             * without CAS as lock ownership guards the lock itself.
+             * We are the lock owner.  Lock ownership guards the lock
+             * itself but waiting threads may set the contention flag
+             * so all updates have to be atomic.
              */
             if (LW_LOCK_COUNT(thin) == 0) {
                 /*
@@ -898,14 +1059,19 @@ jboolean rvmUnlockObject(Env* env, Object* obj) {
                  * case.  Unlock by clearing all bits except for the
                  * hash state.
                  */
-                thin &= (LW_HASH_STATE_MASK << LW_HASH_STATE_SHIFT);
-                android_atomic_release_store(thin, (LW_TYPE*)&obj->lock);
+                while (android_atomic_cas(thin, thin & (LW_HASH_STATE_MASK << LW_HASH_STATE_SHIFT),
+                        (LW_TYPE*)thinp) != 0) {
+                    thin = *thinp;
+                }
+                if (thin & LW_LOCK_CONTENDED) {
+                    unparkThinLockWaiters(thinp);
+                }
             } else {
                 /*
                  * The object was recursively acquired.  Decrement the
                  * lock recursion count field.
                  */
-                obj->lock -= 1 << LW_LOCK_COUNT_SHIFT;
+                __sync_sub_and_fetch(thinp, (LW_TYPE) 1 << LW_LOCK_COUNT_SHIFT);
             }
         } else {
             /*
@@ -42,6 +42,7 @@ extern void* gcAllocateUncollectable(size_t size);
 extern void gcFree(void* ptr);
 extern void* allocateMemoryOfKind(Env* env, size_t size, uint32_t kind);
 extern void registerCleanupHandler(Env* env, Object* object, CleanupHandler handler);
+extern jlong nanoTime();
 
 /* unwind.c */
 typedef struct Frame {
@@ -67,6 +68,14 @@ extern CallStack* captureCallStackFromFrame(Env* env, Frame* fp);
 
 /* signal.c */
 extern void dumpThreadStackTrace(Env* env, Thread* thread, CallStack* callStack);
+extern jboolean installProfilerSignal(void (*handler)(Env*, Frame*));
+
+/* profiler.c */
+extern jboolean initProfiler(Env* env, Options* options);
+
+/* membercache.c */
+extern void* memberCacheGet(Class* clazz, const char* name, const char* desc, jboolean isField);
+extern void memberCachePut(Class* clazz, const char* name, const char* desc, jboolean isField, void* member);
 
 /* class.c */
 extern uint32_t nextClassId();
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include <robovm.h>
+#include <errno.h>
+#include <string.h>
+#include <sys/time.h>
+#include <unistd.h>
+#include "private.h"
+#include "uthash.h"
+
+#define LOG_TAG "core.profiler"
+
+/*
+ * Sampling CPU profiler. A process wide ITIMER_PROF timer makes the kernel
+ * send SIGPROF to the thread which is running when the timer expires. The
+ * signal handler captures the thread's Java call stack into a free slot of
+ * the sample buffer without locking or allocating. A background thread
+ * periodically moves the captured samples into a hash table of unique call
+ * stacks. The table is written in the collapsed stack format understood by
+ * flame graph tools when the profile is dumped.
+ */
+
+#define DEFAULT_PROFILER_INTERVAL 10000 // 10ms
+#define MIN_PROFILER_INTERVAL 1000 // 1ms
+#define PROFILER_MAX_DEPTH 64
+// Must be a power of 2
+#define PROFILER_BUFFER_SIZE 256
+#define DRAIN_INTERVAL 50000 // 50ms
+
+#define SAMPLE_FREE 0
+#define SAMPLE_WRITING 1
+#define SAMPLE_READY 2
+
+typedef struct Sample {
+    jint state;
+    CallStack* callStack;
+} Sample;
+
+typedef struct StackEntry {
+    jlong count;
+    jint length;
+    void** pcs; // The key
+    Method** methods; // Only set for ProxyMethod frames
+    UT_hash_handle hh;
+} StackEntry;
+
+static Sample* samples = NULL;
+static jint nextSample = 0;
+static jlong sampleCount = 0;
+static jlong droppedSampleCount = 0;
+static jlong samplingTime = 0;
+
+static Mutex profilerLock;
+static StackEntry* stacks = NULL;
+static pthread_cond_t runningCond = PTHREAD_COND_INITIALIZER;
+static jboolean running = FALSE;
+static jboolean drainThreadStarted = FALSE;
+static char* profileFile = NULL;
+
+static void addSample(Env* env, Frame* fp) {
+    jlong start = nanoTime();
+    jint index = __sync_fetch_and_add(&nextSample, 1) & (PROFILER_BUFFER_SIZE - 1);
+    Sample* sample = &samples[index];
+    if (!rvmAtomicCompareAndSwapInt(&sample->state, SAMPLE_FREE, SAMPLE_WRITING)) {
+        // The drain thread hasn't caught up
+        __atomic_fetch_add(&droppedSampleCount, 1, __ATOMIC_RELAXED);
+        return;
+    }
+    sample->callStack->length = 0;
+    captureCallStack(env, fp, sample->callStack, PROFILER_MAX_DEPTH);
+    __atomic_store_n(&sample->state, SAMPLE_READY, __ATOMIC_RELEASE);
+    __atomic_fetch_add(&sampleCount, 1, __ATOMIC_RELAXED);
+    __atomic_fetch_add(&samplingTime, nanoTime() - start, __ATOMIC_RELAXED);
+}
+
+static void addStack(CallStack* callStack) {
+    size_t keylen = callStack->length * sizeof(void*);
+    void* pcs[PROFILER_MAX_DEPTH];
+    for (jint i = 0; i < callStack->length; i++) {
+        pcs[i] = callStack->frames[i].pc;
+    }
+    StackEntry* entry = NULL;
+    HASH_FIND(hh, stacks, pcs, keylen, entry);
+    if (!entry) {
+        entry = malloc(sizeof(StackEntry) + keylen * 2);
+        if (!entry) {
+            return;
+        }
+        entry->count = 0;
+        entry->length = callStack->length;
+        entry->pcs = (void**) (entry + 1);
+        entry->methods = (Method**) (entry->pcs + callStack->length);
+        for (jint i = 0; i < callStack->length; i++) {
+            entry->pcs[i] = callStack->frames[i].pc;
+            entry->methods[i] = callStack->frames[i].method;
+        }
+        HASH_ADD_KEYPTR(hh, stacks, entry->pcs, keylen, entry);
+    }
+    entry->count++;
+}
+
+/*
+ * Moves the ready samples into the stacks hash. Must be called with
+ * profilerLock held.
+ */
+static void drainSamples() {
+    for (jint i = 0; i < PROFILER_BUFFER_SIZE; i++) {
+        Sample* sample = &samples[i];
+        if (__atomic_load_n(&sample->state, __ATOMIC_ACQUIRE) == SAMPLE_READY) {
+            addStack(sample->callStack);
+            __atomic_store_n(&sample->state, SAMPLE_FREE, __ATOMIC_RELEASE);
+        }
+    }
+}
+
+static void* drainLoop(void* arg) {
+    rvmLockMutex(&profilerLock);
+    while (TRUE) {
+        while (!running) {
+            pthread_cond_wait(&runningCond, &profilerLock);
+        }
+        rvmUnlockMutex(&profilerLock);
+        usleep(DRAIN_INTERVAL);
+        rvmLockMutex(&profilerLock);
+        drainSamples();
+    }
+    return NULL;
+}
+
+static jboolean setTimer(jint interval) {
+    struct itimerval timer;
+    timer.it_interval.tv_sec = interval / 1000000;
+    timer.it_interval.tv_usec = interval % 1000000;
+    timer.it_value = timer.it_interval;
+    return setitimer(ITIMER_PROF, &timer, NULL) == 0 ? TRUE : FALSE;
+}
+
+jboolean rvmStartProfiler(Env* env, jint interval) {
+    if (interval <= 0) {
+        interval = DEFAULT_PROFILER_INTERVAL;
+    }
+    if (interval < MIN_PROFILER_INTERVAL) {
+        interval = MIN_PROFILER_INTERVAL;
+    }
+    rvmLockMutex(&profilerLock);
+    if (running) {
+        rvmUnlockMutex(&profilerLock);
+        return TRUE;
+    }
+    if (!samples) {
+        // Allocated once and never freed. The samples don't reference any
+        // heap objects.
+        Sample* s = rvmAllocateMemoryAtomicUncollectable(env, sizeof(Sample) * PROFILER_BUFFER_SIZE);
+        if (!s) goto error;
+        for (jint i = 0; i < PROFILER_BUFFER_SIZE; i++) {
+            s[i].callStack = rvmAllocateMemoryAtomicUncollectable(env,
+                    sizeof(CallStack) + sizeof(CallStackFrame) * PROFILER_MAX_DEPTH);
+            if (!s[i].callStack) goto error;
+        }
+        samples = s;
+        if (!installProfilerSignal(addSample)) {
+            rvmThrowInternalErrorErrno(env, errno);
+            goto error;
+        }
+    }
+    if (!drainThreadStarted) {
+        pthread_t drainThread;
+        int err = pthread_create(&drainThread, NULL, drainLoop, NULL);
+        if (err != 0) {
+            rvmThrowInternalErrorErrno(env, err);
+            goto error;
+        }
+        pthread_detach(drainThread);
+        drainThreadStarted = TRUE;
+    }
+    if (!setTimer(interval)) {
+        rvmThrowInternalErrorErrno(env, errno);
+        goto error;
+    }
+    running = TRUE;
+    pthread_cond_broadcast(&runningCond);
+    rvmUnlockMutex(&profilerLock);
+    return TRUE;
+
+error:
+    rvmUnlockMutex(&profilerLock);
+    return FALSE;
+}
+
+void rvmStopProfiler(Env* env) {
+    rvmLockMutex(&profilerLock);
+    if (running) {
+        setTimer(0);
+        running = FALSE;
+        drainSamples();
+    }
+    rvmUnlockMutex(&profilerLock);
+}
+
+jboolean rvmIsProfilerRunning(Env* env) {
+    return running;
+}
+
+void rvmResetProfiler(Env* env) {
+    rvmLockMutex(&profilerLock);
+    if (samples) {
+        drainSamples();
+    }
+    StackEntry* entry;
+    StackEntry* tmp;
+    HASH_ITER(hh, stacks, entry, tmp) {
+        HASH_DEL(stacks, entry);
+        free(entry);
+    }
+    __atomic_store_n(&sampleCount, 0, __ATOMIC_RELAXED);
+    __atomic_store_n(&droppedSampleCount, 0, __ATOMIC_RELAXED);
+    __atomic_store_n(&samplingTime, 0, __ATOMIC_RELAXED);
+    rvmUnlockMutex(&profilerLock);
+}
+
+void rvmGetProfilerStats(Env* env, jlong* samples, jlong* droppedSamples, jlong* time) {
+    *samples = __atomic_load_n(&sampleCount, __ATOMIC_RELAXED);
+    *droppedSamples = __atomic_load_n(&droppedSampleCount, __ATOMIC_RELAXED);
+    *time = __atomic_load_n(&samplingTime, __ATOMIC_RELAXED);
+}
+
+static void writeFrame(Env* env, FILE* f, void* pc, Method* method) {
+    CallStackFrame frame = {pc, NULL, method, 0};
+    if (!rvmResolveCallStackFrame(env, &frame)) {
+        fputs("[unknown]", f);
+        return;
+    }
+    for (const char* s = frame.method->clazz->name; *s; s++) {
+        fputc(*s == '/' ? '.' : *s, f);
+    }
+    fputc('.', f);
+    fputs(frame.method->name, f);
+}
+
+/*
+ * Writes the samples collected so far to the specified file. Returns 0 on
+ * success or an errno value.
+ */
+jint rvmDumpProfile(Env* env, const char* path) {
+    FILE* f = fopen(path, "w");
+    if (!f) {
+        return errno;
+    }
+    rvmLockMutex(&profilerLock);
+    if (samples) {
+        drainSamples();
+    }
+    StackEntry* entry;
+    for (entry = stacks; entry != NULL; entry = entry->hh.next) {
+        // Samples are captured leaf first
+        for (jint i = entry->length - 1; i >= 0; i--) {
+            writeFrame(env, f, entry->pcs[i], entry->methods[i]);
+            if (i > 0) {
+                fputc(';', f);
+            }
+        }
+        fprintf(f, " %lld\n", (long long) entry->count);
+    }
+    rvmUnlockMutex(&profilerLock);
+    if (fclose(f) != 0) {
+        return errno;
+    }
+    return 0;
+}
+
+void rvmShutdownProfiler(Env* env) {
+    if (!profileFile) {
+        return;
+    }
+    rvmStopProfiler(env);
+    jint err = rvmDumpProfile(env, profileFile);
+    if (err != 0) {
+        WARNF("Failed to write profile to %s: %s", profileFile, strerror(err));
+    }
+}
+
+jboolean initProfiler(Env* env, Options* options) {
+    if (rvmInitMutex(&profilerLock) != 0) {
+        return FALSE;
+    }
+    if (options->profileFile) {
+        profileFile = options->profileFile;
+        if (!rvmStartProfiler(env, options->profileInterval)) {
+            return FALSE;
+        }
+    }
+    return TRUE;
+}
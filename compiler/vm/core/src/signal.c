@@ -46,6 +46,7 @@ static inline int sem_post(sem_t* sem) {
 #define LOG_TAG "core.signal"
 
 #define DUMP_THREAD_STACK_TRACE_SIGNAL SIGUSR1
+#define PROFILER_SIGNAL SIGPROF
 // The signal used in libcore's AsynchronousSocketCloseMonitor.cpp
 #if defined(__APPLE__)
 #define BLOCKED_THREAD_SIGNAL SIGUSR2
@@ -84,10 +85,12 @@ static sem_t dumpThreadStackTraceCallSemaphore;
 static struct sigaction sigbusFallback;
 #endif
 static struct sigaction sigsegvFallback;
+static void (*profilerCallback)(Env*, Frame*) = NULL;
 
 static void signalHandler_npe_so_nochaining(int signum, siginfo_t* info, void* context);
 static void signalHandler_npe_so_chaining(int signum, siginfo_t* info, void* context);
 static void signalHandler_dump_thread(int signum, siginfo_t* info, void* context);
+static void signalHandler_profile(int signum, siginfo_t* info, void* context);
 static jboolean installNoChainingSignals(Env* env);
 
 #if defined(DARWIN)
@@ -457,6 +460,62 @@ static void signalHandler_npe_so_chaining(int signum, siginfo_t* info, void* con
     }
 }
 
+// Returns TRUE if the frame pointer chain starting at fp reaches the frame of
+// the most recent GatewayFrame. Java code calls some C functions (GC fast
+// paths, leaf natives) without pushing a GatewayFrame and those may be built
+// without frame pointers so the interrupted frame pointer can be garbage.
+// Only addresses within the thread's stack are dereferenced.
+static jboolean isFrameChainWalkable(Env* env, Frame* fp) {
+    if (!env->gatewayFrames) {
+        // No gateway frame bounds the chain, e.g. while the thread is
+        // attaching or detaching
+        return FALSE;
+    }
+    void* low = env->currentThread->stackAddr;
+    void* high = env->gatewayFrames->frameAddress;
+    while ((void*) fp >= low && (void*) fp < high && ((uintptr_t) fp & (sizeof(void*) - 1)) == 0) {
+        Frame* prev = fp->prev;
+        if (prev <= fp) {
+            return FALSE;
+        }
+        fp = prev;
+    }
+    return (void*) fp == high ? TRUE : FALSE;
+}
+
+// Delivered to the thread which was running when the profiling timer expired.
+// Passes the thread's Java call stack to the profiler. Threads not attached
+// to the VM are ignored.
+static void signalHandler_profile(int signum, siginfo_t* info, void* context) {
+    int savedErrno = errno;
+    Env* env = rvmGetEnv();
+    if (env && env->currentThread) {
+        Frame fakeFrame;
+        if (rvmIsNonNativeFrame(env)) {
+            fakeFrame.prev = (Frame*) getFramePointer((ucontext_t*) context);
+            fakeFrame.returnAddress = getPC((ucontext_t*) context);
+            // Drop the sample if it can't be unwound safely
+            if (isFrameChainWalkable(env, fakeFrame.prev)) {
+                profilerCallback(env, &fakeFrame);
+            }
+        } else if (env->gatewayFrames) {
+            // In native code. Attribute the sample to the Java method which
+            // called into native code. See signalHandler_dump_thread().
+            fakeFrame = *(Frame*) env->gatewayFrames->frameAddress;
+            profilerCallback(env, &fakeFrame);
+        }
+    }
+    errno = savedErrno;
+}
+
+jboolean installProfilerSignal(void (*handler)(Env*, Frame*)) {
+    profilerCallback = handler;
+    struct sigaction sa = create_sigaction(&signalHandler_profile);
+    // Don't let the profiler make system calls fail with EINTR
+    sa.sa_flags |= SA_RESTART;
+    return installSignalHandlerIfNeeded(PROFILER_SIGNAL, sa, NULL) == 0 ? TRUE : FALSE;
+}
+
 static void unlockDumpThreadStackTraceCall() {
     sem_post(&dumpThreadStackTraceCallSemaphore);
 }
@@ -17,7 +17,6 @@
 #include <string.h>
 #include <stddef.h>
 #include "private.h"
-#include "uthash.h"
 
 #define LOG_TAG "core.string"
 
@@ -25,23 +24,54 @@ static uint32_t cacheEntryGCKind;
 static const jchar EMPTY_JCHARS = 0;
 
 // TODO: Restrict the number of bytes stored in the cache instead of the number of String objects.
-#define MAX_CACHE_SIZE 10000
+#define DEFAULT_MAX_CACHE_SIZE 10000
+// Upper limit for the InternedStringsCacheSize option. Keeps the bucket array size within 32 bits.
+#define MAX_MAX_CACHE_SIZE (1 << 24)
 
 // GC descriptor specifying which words in a CacheEntry that should be scanned 
-// for heap pointers. The hh.hashv value in particular must not be scanned since
-// it often can be mistaken for a pointer.
+// for heap pointers. The hash and referenced values must not be scanned since
+// they can be mistaken for pointers.
 #define CACHE_ENTRY_GC_BITMAP (MAKE_GC_BITMAP(offsetof(CacheEntry, key)) \
                               |MAKE_GC_BITMAP(offsetof(CacheEntry, string)) \
-                              |MAKE_GC_BITMAP(offsetof(CacheEntry, hh.next)))
+                              |MAKE_GC_BITMAP(offsetof(CacheEntry, next)))
 
 typedef struct CacheEntry {
     const char* key; // The string in modified UTF-8
     Object* string;  // The java.lang.String object.
-    UT_hash_handle hh;
+    struct CacheEntry* next;
+    uint32_t hash;
+    jboolean referenced; // Set on every hit, cleared by the clock hand
 } CacheEntry;
-static CacheEntry* internedStrings = NULL;
+
+/*
+ * The interned strings cache is a hash table with a fixed number of buckets
+ * which is read without locking. Entries are linked into and unlinked from
+ * the bucket lists using release stores while holding internedStringsLock.
+ * An unlinked entry keeps its next pointer so concurrent readers traversing
+ * it can continue.
+ *
+ * When the cache is full an entry is evicted using the CLOCK algorithm: the
+ * clock hand sweeps the entries in insertion order, clearing their referenced
+ * flags, and evicts the first entry which hasn't been referenced since the
+ * hand last passed it.
+ */
+static CacheEntry** internedStrings = NULL;
+static uint32_t internedStringsMask;
+static CacheEntry** clockEntries = NULL; // The entries in clock order
+static jint clockHand = 0;
+static jint internedStringsCount = 0;
+static jint maxCacheSize;
 static Mutex internedStringsLock;
 
+// Hit and miss counters striped over cache lines to keep lock-free lookups
+// from contending on the counters.
+#define STAT_STRIPES 16
+typedef struct {
+    jlong hits;
+    jlong misses;
+} __attribute__ ((aligned (64))) CacheStats;
+static CacheStats internedStringsStats[STAT_STRIPES];
+
 static inline void obtainInternedStringsLock() {
     rvmLockMutex(&internedStringsLock);
 }
@@ -50,28 +80,55 @@ static inline void releaseInternedStringsLock() {
     rvmUnlockMutex(&internedStringsLock);
 }
 
+static inline uint32_t hashString(const char* s) {
+    // FNV-1a
+    uint32_t h = 2166136261u;
+    for (; *s; s++) {
+        h = (h ^ (uint8_t) *s) * 16777619u;
+    }
+    return h;
+}
+
+static inline void countLookup(Env* env, jboolean hit) {
+    CacheStats* stats = &internedStringsStats[(((uintptr_t) env) >> 6) & (STAT_STRIPES - 1)];
+    __atomic_fetch_add(hit ? &stats->hits : &stats->misses, 1, __ATOMIC_RELAXED);
+}
+
 /**
- * Finds an interned string in the interned strings key. If found the string
- * will be "touched", i.e. marked as most recently used. The internedStringsLock
- * MUST be held when calling this function.
+ * Finds an interned string in the interned strings cache. If found the string
+ * will be marked as referenced. Doesn't require the internedStringsLock.
  */
-static Object* findInternedString(Env* env, const char* s) {
-    CacheEntry* cacheEntry;
-    HASH_FIND_STR(internedStrings, s, cacheEntry);
-    if (cacheEntry) {
-        // Touch the string
-        HASH_DELETE(hh, internedStrings, cacheEntry);
-        HASH_ADD_KEYPTR(hh, internedStrings, cacheEntry->key, strlen(cacheEntry->key), cacheEntry);
-        return cacheEntry->string;
+static Object* findInternedString(Env* env, const char* s, uint32_t hash) {
+    CacheEntry* cacheEntry = rvmAtomicLoadAcquirePtr((void**) &internedStrings[hash & internedStringsMask]);
+    for (; cacheEntry != NULL; cacheEntry = rvmAtomicLoadAcquirePtr((void**) &cacheEntry->next)) {
+        if (cacheEntry->hash == hash && !strcmp(cacheEntry->key, s)) {
+            // Only write when needed to keep the cache line shared
+            if (!cacheEntry->referenced) {
+                cacheEntry->referenced = TRUE;
+            }
+            return cacheEntry->string;
+        }
     }
     return NULL;
 }
 
+/**
+ * Unlinks an entry from its bucket list. The internedStringsLock MUST be held
+ * when calling this function.
+ */
+static void removeInternedString(CacheEntry* cacheEntry) {
+    CacheEntry** prev = &internedStrings[cacheEntry->hash & internedStringsMask];
+    while (*prev != cacheEntry) {
+        prev = &(*prev)->next;
+    }
+    rvmAtomicStoreReleasePtr((void**) prev, cacheEntry->next);
+}
+
 /**
  * Adds a string to the cache of interned string. The string must not already be
  * interned.  The internedStringsLock MUST be held when calling this function.
  */
-static jboolean addInternedString(Env* env, const char* s,  Object* string) {
+static jboolean addInternedString(Env* env, const char* s, uint32_t hash, Object* string) {
     CacheEntry* cacheEntry = allocateMemoryOfKind(env, sizeof(CacheEntry), cacheEntryGCKind);
     if (!cacheEntry) {
         return FALSE;
@@ -79,18 +136,25 @@ static jboolean addInternedString(Env* env, const char* s,  Object* string) {
 
     cacheEntry->key = s;
     cacheEntry->string = string;
-    HASH_ADD_KEYPTR(hh, internedStrings, cacheEntry->key, strlen(cacheEntry->key), cacheEntry);
-
-    // prune the cache to MAX_CACHE_SIZE
-    if (HASH_COUNT(internedStrings) >= MAX_CACHE_SIZE) {
-        CacheEntry* tmpEntry;
-        HASH_ITER(hh, internedStrings, cacheEntry, tmpEntry) {
-            // prune the first entry (loop is based on insertion order so this deletes the oldest item)
-            HASH_DELETE(hh, internedStrings, cacheEntry);
-            break;
+    cacheEntry->hash = hash;
+
+    if (internedStringsCount < maxCacheSize) {
+        clockEntries[internedStringsCount++] = cacheEntry;
+    } else {
+        // Evict the first entry not referenced since the clock hand last passed it
+        while (clockEntries[clockHand]->referenced) {
+            clockEntries[clockHand]->referenced = FALSE;
+            clockHand = (clockHand + 1) % maxCacheSize;
         }
+        removeInternedString(clockEntries[clockHand]);
+        clockEntries[clockHand] = cacheEntry;
+        clockHand = (clockHand + 1) % maxCacheSize;
     }
 
+    CacheEntry** bucket = &internedStrings[hash & internedStringsMask];
+    cacheEntry->next = *bucket;
+    rvmAtomicStoreReleasePtr((void**) bucket, cacheEntry);
+
     return TRUE;
 }
 
@@ -208,7 +272,26 @@ jboolean rvmInitStrings(Env* env) {
         return FALSE;
     }
 
-    gcAddRoot(&internedStrings);
+    maxCacheSize = env->vm->options->internedStringsCacheSize;
+    if (maxCacheSize <= 0) {
+        maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+    } else if (maxCacheSize > MAX_MAX_CACHE_SIZE) {
+        WARNF("InternedStringsCacheSize %d is too large, using %d", maxCacheSize, MAX_MAX_CACHE_SIZE);
+        maxCacheSize = MAX_MAX_CACHE_SIZE;
+    }
+    // Use at least twice as many buckets as entries
+    uint64_t buckets = 1;
+    while (buckets < (uint64_t) maxCacheSize * 2) {
+        buckets <<= 1;
+    }
+    internedStringsMask = (uint32_t) (buckets - 1);
+    internedStrings = gcAllocateUncollectable(sizeof(CacheEntry*) * buckets);
+    clockEntries = gcAllocateUncollectable(sizeof(CacheEntry*) * maxCacheSize);
+    if (!internedStrings || !clockEntries) {
+        return FALSE;
+    }
+    memset(internedStrings, 0, sizeof(CacheEntry*) * buckets);
+    memset(clockEntries, 0, sizeof(CacheEntry*) * maxCacheSize);
     cacheEntryGCKind = gcNewDirectBitmapKind(CACHE_ENTRY_GC_BITMAP);
 
     return TRUE;
@@ -254,22 +337,27 @@ Object* rvmNewInternedStringUTF(Env* env, const char* s, jint length) {
     if (length == 0) s = "";
     if (!s) return NULL;
 
-    obtainInternedStringsLock();
-
     // Check the cache first.
-    Object* string = findInternedString(env, s);
-    if (!string) {
-        length = (length == -1) ? getUnicodeLengthOfUtf8(s) : length;
-        CharArray* value = rvmNewCharArray(env, length);
-        if (value) {
-            utf8ToUnicode(value->values, s);
-            Object* str = newString(env, value, 0, length);
-            if (str && addInternedString(env, s, str)) {
-                string = str;
-            }
-        }
+    uint32_t hash = hashString(s);
+    Object* string = findInternedString(env, s, hash);
+    countLookup(env, string != NULL);
+    if (string) {
+        return string;
     }
 
+    length = (length == -1) ? getUnicodeLengthOfUtf8(s) : length;
+    CharArray* value = rvmNewCharArray(env, length);
+    if (!value) return NULL;
+    utf8ToUnicode(value->values, s);
+    Object* str = newString(env, value, 0, length);
+    if (!str) return NULL;
+
+    obtainInternedStringsLock();
+    // Another thread may have added the string while we weren't holding the lock
+    string = findInternedString(env, s, hash);
+    if (!string && addInternedString(env, s, hash, str)) {
+        string = str;
+    }
     releaseInternedStringsLock();
 
     return string;
@@ -278,26 +366,41 @@ Object* rvmNewInternedStringUTF(Env* env, const char* s, jint length) {
 Object* rvmInternString(Env* env, Object* str) {
     if (!str) return NULL;
 
-    obtainInternedStringsLock();
-
-    Object* string = NULL;
-
     char* s = rvmGetStringUTFChars(env, str);
-    if (s) {
-        // Check the cache first.
-        string = findInternedString(env, s);
-        if (!string) {
-            if (addInternedString(env, s, str)) {
-                string = str;
-            }
-        }
+    if (!s) return NULL;
+
+    // Check the cache first.
+    uint32_t hash = hashString(s);
+    Object* string = findInternedString(env, s, hash);
+    countLookup(env, string != NULL);
+    if (string) {
+        return string;
     }
 
+    obtainInternedStringsLock();
+    // Another thread may have added the string while we weren't holding the lock
+    string = findInternedString(env, s, hash);
+    if (!string && addInternedString(env, s, hash, str)) {
+        string = str;
+    }
     releaseInternedStringsLock();
 
     return string;
 }
 
+void rvmGetInternedStringsCacheStats(Env* env, jlong* hits, jlong* misses, jint* size) {
+    jlong h = 0;
+    jlong m = 0;
+    jint i;
+    for (i = 0; i < STAT_STRIPES; i++) {
+        h += __atomic_load_n(&internedStringsStats[i].hits, __ATOMIC_RELAXED);
+        m += __atomic_load_n(&internedStringsStats[i].misses, __ATOMIC_RELAXED);
+    }
+    *hits = h;
+    *misses = m;
+    *size = __atomic_load_n(&internedStringsCount, __ATOMIC_RELAXED);
+}
+
 jint rvmGetStringLength(Env* env, Object* str) {
     return rvmRTGetStringLength(env, str);
 }
@@ -91,4 +91,59 @@ jlong Java_org_robovm_rt_GC_getTimeLimit(Env* env, Class* c) {
 
 void Java_org_robovm_rt_GC_setTimeLimit(Env* env, Class* c, jlong value) {
     GC_call_with_alloc_lock((void*)GC_set_time_limit, value);
-}
\ No newline at end of file
+}
+
+jint Java_org_robovm_rt_GC_getMode(Env* env, Class* c) {
+    return rvmGetGCMode(env);
+}
+
+jint Java_org_robovm_rt_GC_getParallelMarkers(Env* env, Class* c) {
+    return GC_get_parallel();
+}
+
+jlong Java_org_robovm_rt_GC_getLastCollection0(Env* env, Class* c, LongArray* values) {
+    GCCollectionStats stats;
+    jlong count = rvmGetGCStats(env, &stats, NULL, NULL, NULL);
+    if (values) {
+        values->values[0] = stats.count;
+        values->values[1] = stats.startTime;
+        values->values[2] = stats.duration;
+        values->values[3] = stats.pauseTime;
+        values->values[4] = stats.allocatedBytes;
+        values->values[5] = stats.heapSize;
+        values->values[6] = stats.freeBytes;
+    }
+    return count;
+}
+
+void Java_org_robovm_rt_GC_getPauseHistogram0(Env* env, Class* c, LongArray* histogram) {
+    rvmGetGCStats(env, NULL, histogram->values, NULL, NULL);
+}
+
+jint Java_org_robovm_rt_GC_getPauseHistogramSize(Env* env, Class* c) {
+    return GC_PAUSE_HISTOGRAM_SIZE;
+}
+
+jlong Java_org_robovm_rt_GC_getTotalPauseTime(Env* env, Class* c) {
+    jlong totalPauseTime = 0;
+    rvmGetGCStats(env, NULL, NULL, &totalPauseTime, NULL);
+    return totalPauseTime;
+}
+
+jlong Java_org_robovm_rt_GC_getMaxPauseTime(Env* env, Class* c) {
+    jlong maxPauseTime = 0;
+    rvmGetGCStats(env, NULL, NULL, NULL, &maxPauseTime);
+    return maxPauseTime;
+}
+
+jlong Java_org_robovm_rt_GC_waitForCollection(Env* env, Class* c, jlong count, jlong timeout) {
+    return rvmWaitForGC(env, count, timeout);
+}
+
+jlong Java_org_robovm_rt_GC_getAllocatedBytes(Env* env, Class* c, Object* threadObj) {
+    rvmLockThreadsList();
+    Thread* thread = rvmRTGetNativeThread(env, threadObj);
+    jlong allocatedBytes = thread ? rvmGetThreadAllocatedBytes(env, thread) : 0;
+    rvmUnlockThreadsList();
+    return allocatedBytes;
+}
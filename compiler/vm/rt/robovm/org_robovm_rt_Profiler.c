@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include <robovm.h>
+
+jboolean Java_org_robovm_rt_Profiler_start(Env* env, Class* c, jint interval) {
+    return rvmStartProfiler(env, interval);
+}
+
+void Java_org_robovm_rt_Profiler_stop(Env* env, Class* c) {
+    rvmStopProfiler(env);
+}
+
+jboolean Java_org_robovm_rt_Profiler_isRunning(Env* env, Class* c) {
+    return rvmIsProfilerRunning(env);
+}
+
+void Java_org_robovm_rt_Profiler_reset(Env* env, Class* c) {
+    rvmResetProfiler(env);
+}
+
+jlong Java_org_robovm_rt_Profiler_getSampleCount(Env* env, Class* c) {
+    jlong samples, droppedSamples, time;
+    rvmGetProfilerStats(env, &samples, &droppedSamples, &time);
+    return samples;
+}
+
+jlong Java_org_robovm_rt_Profiler_getDroppedSampleCount(Env* env, Class* c) {
+    jlong samples, droppedSamples, time;
+    rvmGetProfilerStats(env, &samples, &droppedSamples, &time);
+    return droppedSamples;
+}
+
+jlong Java_org_robovm_rt_Profiler_getSamplingTime(Env* env, Class* c) {
+    jlong samples, droppedSamples, time;
+    rvmGetProfilerStats(env, &samples, &droppedSamples, &time);
+    return time;
+}
+
+jint Java_org_robovm_rt_Profiler_dump0(Env* env, Class* c, Object* path) {
+    char* s = rvmGetStringUTFChars(env, path);
+    if (!s) return 0;
+    return rvmDumpProfile(env, s);
+}
@@ -343,6 +343,44 @@ Object* Java_org_robovm_rt_VM_newStringNoCopy(Env* env, Class* c, CharArray* val
     return rvmNewStringNoCopy(env, value, offset, length);
 }
 
+jint Java_org_robovm_rt_VM_strlen(Env* env, Class* c, jlong address) {
+    return (jint) strlen((const char*) LONG_TO_PTR(address));
+}
+
+jint Java_org_robovm_rt_VM_strnlen(Env* env, Class* c, jlong address, jint maxLength) {
+    const char* s = (const char*) LONG_TO_PTR(address);
+    const char* end = memchr(s, 0, (size_t) maxLength);
+    return end ? (jint) (end - s) : maxLength;
+}
+
+Object* Java_org_robovm_rt_VM_newStringLatin1(Env* env, Class* c, jlong address, jint length, jboolean asciiOnly) {
+    const unsigned char* s = (const unsigned char*) LONG_TO_PTR(address);
+    if (asciiOnly) {
+        jint i;
+        for (i = 0; i < length; i++) {
+            if (s[i] & 0x80) {
+                return NULL;
+            }
+        }
+    }
+    return rvmNewStringAscii(env, (const char*) s, length);
+}
+
+jboolean Java_org_robovm_rt_VM_getStringLatin1Chars(Env* env, Class* c, Object* str, jlong address, jint length, jboolean asciiOnly) {
+    const jchar* chars = rvmGetStringChars(env, str);
+    unsigned char* dest = (unsigned char*) LONG_TO_PTR(address);
+    jchar max = asciiOnly ? 0x7f : 0xff;
+    jint i;
+    for (i = 0; i < length; i++) {
+        jchar ch = chars[i];
+        if (ch > max) {
+            return FALSE;
+        }
+        dest[i] = (unsigned char) ch;
+    }
+    return TRUE;
+}
+
 jlong Java_org_robovm_rt_VM_getArrayValuesAddress(Env* env, Class* c, Array* array) {
     if (array->object.clazz == array_Z) {
         return PTR_TO_LONG(((BooleanArray*) array)->values);
@@ -447,3 +485,24 @@ ObjectArray* Java_org_robovm_rt_VM_listClasses0(Env* env, Class* c, Class* insta
 void Java_org_robovm_rt_VM_generateHeapDump(Env* env, Class* c) {
     rvmGenerateHeapDump(env);
 }
+
+jlong Java_org_robovm_rt_VM_internedStringsCacheHits(Env* env, Class* c) {
+    jlong hits, misses;
+    jint size;
+    rvmGetInternedStringsCacheStats(env, &hits, &misses, &size);
+    return hits;
+}
+
+jlong Java_org_robovm_rt_VM_internedStringsCacheMisses(Env* env, Class* c) {
+    jlong hits, misses;
+    jint size;
+    rvmGetInternedStringsCacheStats(env, &hits, &misses, &size);
+    return misses;
+}
+
+jint Java_org_robovm_rt_VM_internedStringsCacheSize(Env* env, Class* c) {
+    jlong hits, misses;
+    jint size;
+    rvmGetInternedStringsCacheStats(env, &hits, &misses, &size);
+    return size;
+}
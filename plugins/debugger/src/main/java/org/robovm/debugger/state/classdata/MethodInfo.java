@@ -102,7 +102,7 @@ public class MethodInfo extends BaseModifiersInfo {
         long linetable = 0;
         if (!isAbstract()) {
             implPtr = reader.readPointer(true);
-            methodCodeSize = reader.readInt32(true);
+            methodCodeSize = reader.readInt32(reader.readPointer(true));
             if (isSynchronized())
                 synchronizedImpl = reader.readPointer(true);
             if (!isNative()) {
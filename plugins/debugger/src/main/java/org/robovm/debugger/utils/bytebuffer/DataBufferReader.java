@@ -84,6 +84,20 @@ public interface DataBufferReader extends DataBuffer {
         return Integer.toUnsignedLong(readInt32());
     }
 
+    /**
+     * peeks int32 at position, doesn't change current pos
+     *
+     * @param at offset to read int32 at
+     * @return int32 read at specified offset
+     */
+    default int readInt32(long at) {
+        long savedPosition = position();
+        setPosition(at);
+        int v = readInt32();
+        setPosition(savedPosition);
+        return v;
+    }
+
     long readLong();
 
     float readFloat();